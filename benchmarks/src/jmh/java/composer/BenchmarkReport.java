@@ -0,0 +1,100 @@
+/**
+ * Prints the results of a JMH run as a table for each benchmark, showing how its throughput and allocation scale with its input
+ */
+
+package composer;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+public class BenchmarkReport
+{
+
+	/**
+	 * This method reads the JSON results written by JMH (with -rf json), and prints a table for each benchmark with a row for each
+	 * input. The Mozart files are listed first, then the synthetic files in order of increasing size, with the time taken for each of
+	 * their notes, which stays the same as the files grow if a stage scales linearly. The allocation columns are only filled in if
+	 * the benchmarks were run with -prof gc. The Mozart files have a single track and no tempo events, so only the synthetic rows
+	 * measure merging tracks and scaling the tempo.
+	 *
+	 * @param args		the path of the results file
+	 * @throws IOException
+	 */
+	@SuppressWarnings("unchecked")
+	public static void main(String[] args) throws IOException
+	{
+		File resultsFile = new File(args.length > 0 ? args[0] : "benchmarks/build/results/jmh/results.json");
+		List<Object> results = (List<Object>) Json.parse(new String(Files.readAllBytes(resultsFile.toPath()), "UTF-8"));
+
+		// group the results by the name of the benchmark method
+		TreeMap<String, List<Map<String, Object>>> benchmarks = new TreeMap<String, List<Map<String, Object>>>();
+		for (Object result : results)
+		{
+			Map<String, Object> map = (Map<String, Object>) result;
+			String name = (String) map.get("benchmark");
+			benchmarks.computeIfAbsent(name.substring(name.lastIndexOf('.') + 1), key -> new ArrayList<Map<String, Object>>()).add(map);
+		}
+
+		for (Map.Entry<String, List<Map<String, Object>>> benchmark : benchmarks.entrySet())
+		{
+			List<Map<String, Object>> rows = benchmark.getValue();
+			rows.sort(Comparator.comparingLong((Map<String, Object> row) -> notes(input(row))).thenComparing(row -> input(row)));
+
+			String unit = (String) ((Map<String, Object>) rows.get(0).get("primaryMetric")).get("scoreUnit");
+			System.out.println(benchmark.getKey());
+			System.out.printf("  %-20s %14s %12s %12s %14s %12s%n", "input", unit, "error", "MB/s", "bytes/op", "ns/note");
+			for (Map<String, Object> row : rows)
+			{
+				Map<String, Object> primary = (Map<String, Object>) row.get("primaryMetric");
+				double score = number(primary.get("score"));
+				long notes = notes(input(row));
+				System.out.printf("  %-20s %14.2f %12.2f %12s %14s %12s%n", input(row), score, number(primary.get("scoreError")),
+						secondary(row, "gc.alloc.rate"), secondary(row, "gc.alloc.rate.norm"),
+						notes == 0 ? "" : String.format("%.1f", 1e9 / score / notes));
+			}
+			System.out.println();
+		}
+
+		System.out.println("The Mozart files have 48 ticks per quarter note, a single track and no tempo events, so merging tracks, changing");
+		System.out.println("the resolution and scaling the tempo are only measured by the synthetic inputs (480 ticks per quarter note, a");
+		System.out.println("tempo track and two tracks of notes).");
+	}
+
+	@SuppressWarnings("unchecked")
+	private static String input(Map<String, Object> row)
+	{
+		Map<String, Object> params = (Map<String, Object>) row.get("params");
+		return params == null ? "" : String.valueOf(params.get("input"));
+	}
+
+	/**
+	 * This method returns the number of notes of a synthetic input, or 0 for a Mozart file.
+	 */
+	private static long notes(String input)
+	{
+		return input.startsWith(FileConverterBenchmark.SYNTHETIC) ? Long.parseLong(input.substring(FileConverterBenchmark.SYNTHETIC.length())) : 0;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static String secondary(Map<String, Object> row, String metric)
+	{
+		Map<String, Object> secondaries = (Map<String, Object>) row.get("secondaryMetrics");
+		if (secondaries == null || !secondaries.containsKey(metric))
+			return "";
+		return String.format("%.1f", number(((Map<String, Object>) secondaries.get(metric)).get("score")));
+	}
+
+	/**
+	 * This method returns a number from the results, which JMH writes as the string "NaN" when it is unknown.
+	 */
+	private static double number(Object value)
+	{
+		return value instanceof Double ? (Double) value : Double.NaN;
+	}
+
+}
@@ -0,0 +1,190 @@
+/**
+ * Measures each stage of FileConverter on the Mozart MIDI files and on synthetic files of increasing size
+ */
+
+package composer;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import javax.sound.midi.*;
+import org.openjdk.jmh.annotations.*;
+
+@State(Scope.Thread)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class FileConverterBenchmark
+{
+
+	public static final String SYNTHETIC = "synthetic-";   // the start of an input that is generated instead of read from a file
+
+	/**
+	 * The file in other/midi-files (or the folder given by the composer.midiFolder property) to convert, or "synthetic-" followed
+	 * by the number of notes of a generated file. The synthetic inputs show how each stage scales with the size of its input, and
+	 * are the only inputs with several tracks of notes and tempo changes.
+	 */
+	@Param({"mz_311_1.mid", "mz_311_2.mid", "mz_311_3.mid", "mz_330_1.mid", "mz_330_2.mid", "mz_330_3.mid", "mz_331_1.mid",
+			"mz_331_2.mid", "mz_331_3.mid", "mz_332_1.mid", "mz_332_2.mid", "mz_332_3.mid", "mz_333_1.mid", "mz_333_2.mid",
+			"mz_333_3.mid", "mz_545_1.mid", "mz_545_2.mid", "mz_545_3.mid", "mz_570_1.mid", "mz_570_2.mid", "mz_570_3.mid",
+			"synthetic-1000", "synthetic-10000", "synthetic-100000", "synthetic-1000000"})
+	public String input;
+
+	private final FileConverter converter = new FileConverter();
+
+	private File folder;   // a temporary folder holding the synthetic MIDI file and the text file that midiFile() reads
+	private File outputFolder;   // a temporary folder for the files written by the benchmarks
+	private File midiFile;
+	private File textFile;
+	private String text;
+
+	private Sequence scratch;   // the sequence in which the javax.sound.midi stages create their tracks
+	private ArrayList<Track> activeTracks;
+	private Track tempoTrack;
+	private ArrayList<int[]> tempos;
+	private List<NoteEventBuffer> activeBuffers;
+	private TempoMap tempoMap;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException, InvalidMidiDataException
+	{
+		folder = Files.createTempDirectory("composer-bench").toFile();
+		outputFolder = new File(folder, "out");
+		outputFolder.mkdir();
+
+		if (input.startsWith(SYNTHETIC))
+		{
+			midiFile = new File(folder, input + ".mid");
+			MidiSystem.write(syntheticSequence(Integer.parseInt(input.substring(SYNTHETIC.length())), 42), 1, midiFile);
+		}
+		else
+		{
+			midiFile = new File(System.getProperty("composer.midiFolder", "other/midi-files"), input);
+		}
+
+		// the inputs of the javax.sound.midi stages, found the same way as before textFile() used an SmfReader
+		Sequence sequence = MidiSystem.getSequence(midiFile);
+		scratch = new Sequence(sequence.getDivisionType(), sequence.getResolution());
+		activeTracks = new ArrayList<Track>();
+		for (Track track : sequence.getTracks())
+			if (FileConverter.noteFound(track))
+				activeTracks.add(track);
+		tempoTrack = FileConverter.tempoTrack(sequence);
+		if (tempoTrack == null)   // tempos() then finds no tempo events, as for a file played at the default tempo
+			tempoTrack = sequence.getTracks()[0];
+		tempos = FileConverter.tempos(tempoTrack);
+
+		// the inputs of the stages that textFile() uses
+		SmfReader reader = new SmfReader();
+		reader.read(midiFile);
+		activeBuffers = reader.getActiveTracks();
+		tempoMap = reader.getTempoMap();
+
+		textFile = converter.textFile(midiFile, folder);
+		text = new String(Files.readAllBytes(textFile.toPath()));
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown()
+	{
+		delete(folder);
+	}
+
+	@Benchmark
+	public File textFile() throws IOException, InvalidMidiDataException
+	{
+		return converter.textFile(midiFile, outputFolder);
+	}
+
+	@Benchmark
+	public NoteEventBuffer sortedTrack()
+	{
+		return FileConverter.sortedTrack(activeBuffers, tempoMap);
+	}
+
+	@Benchmark
+	public Track sortedTrackOfTracks() throws InvalidMidiDataException
+	{
+		Track track = FileConverter.sortedTrack(activeTracks, scratch, tempos);
+		scratch.deleteTrack(track);   // keep scratch from growing on every call
+		return track;
+	}
+
+	@Benchmark
+	public Track changeRes()
+	{
+		Track track = FileConverter.changeRes(activeTracks.get(0), scratch);
+		scratch.deleteTrack(track);
+		return track;
+	}
+
+	@Benchmark
+	public ArrayList<int[]> tempos()
+	{
+		return FileConverter.tempos(tempoTrack);
+	}
+
+	@Benchmark
+	public File midiFile() throws IOException, InvalidMidiDataException
+	{
+		return converter.midiFile(textFile, outputFolder);
+	}
+
+	@Benchmark
+	public String validString()
+	{
+		return FileConverter.validString(text);
+	}
+
+	/**
+	 * This method generates a sequence with a resolution of 480 ticks per quarter note: a tempo track that changes tempo every 64
+	 * quarter notes, and two tracks of notes (the right and left hand) that end their notes with a velocity of 0, as the Mozart files
+	 * do. Unlike this sequence, the Mozart files have 48 ticks per quarter note, a single track and no tempo events, so the synthetic
+	 * inputs are the only ones that merge tracks, change the resolution or scale the tempo. The same count and seed always generate
+	 * the same sequence.
+	 *
+	 * @param count		the number of notes
+	 * @param seed		the seed of the random numbers used to pick the notes
+	 * @return the generated sequence
+	 * @throws InvalidMidiDataException
+	 */
+	public static Sequence syntheticSequence(int count, long seed) throws InvalidMidiDataException
+	{
+		Random random = new Random(seed);
+		Sequence sequence = new Sequence(Sequence.PPQ, 480);
+		Track tempoTrack = sequence.createTrack();
+		Track[] hands = {sequence.createTrack(), sequence.createTrack()};
+
+		long[] ticks = new long[2];
+		for (int i = 0; i < count; i++)
+		{
+			int hand = i & 1;
+			int pitch = (hand == 0 ? 72 : 48) + random.nextInt(24);   // two octaves for each hand, from the C below middle C
+			long length = 120 * (1 + random.nextInt(4));
+			hands[hand].add(new MidiEvent(new ShortMessage(ShortMessage.NOTE_ON, hand, pitch, 40 + random.nextInt(60)), ticks[hand]));
+			hands[hand].add(new MidiEvent(new ShortMessage(ShortMessage.NOTE_ON, hand, pitch, 0), ticks[hand] + length));
+			if (random.nextInt(3) != 0)   // otherwise the next note of this hand is played at the same time, as part of a chord
+				ticks[hand] += length;
+		}
+
+		for (long tick = 0; tick <= Math.max(ticks[0], ticks[1]); tick += 480 * 64)
+		{
+			int tempo = 400000 + random.nextInt(200000);
+			byte[] data = {(byte) (tempo >> 16), (byte) (tempo >> 8), (byte) tempo};
+			tempoTrack.add(new MidiEvent(new MetaMessage(81, data, 3), tick));
+		}
+
+		return sequence;
+	}
+
+	private static void delete(File file)
+	{
+		File[] children = file.listFiles();
+		if (children != null)
+			for (File child : children)
+				delete(child);
+		file.delete();
+	}
+
+}
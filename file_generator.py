@@ -6,37 +6,67 @@ tf.enable_eager_execution()
 import numpy as np
 import os
 import glob
+import json
 import time
 
 
 # READ AND PROCESS THE TEXT IN THE TEXT FILES
 
-# combine text files in txt-training into one text file called txt-file.txt
-with open('txt_file.txt', 'w') as outfile:
-    for file in  glob.glob(os.path.join('txt-training', '*.txt')):
-        with open(file) as infile:
-            outfile.write(infile.read())
+def corpus_is_current():
+    # the corpus built by CorpusBuilder.java is out of date if a file has been added to, removed from or changed in the folder it was
+    # built from (as recorded in corpus.info) since corpus.idx was written
+    info = {}
+    if os.path.exists(os.path.join('corpus', 'corpus.info')):
+        for line in open(os.path.join('corpus', 'corpus.info')):
+            if '=' in line:
+                key, value = line.rstrip('\n').split('=', 1)
+                info[key] = value
+    source = info.get('source') or 'txt-training'
+    files = glob.glob(os.path.join(source, '*' + (info.get('source_extension') or '.txt')))
+    if 'source_files' in info and len(files) != int(info['source_files']):
+        return False
+    built = os.path.getmtime(os.path.join('corpus', 'corpus.idx'))
+    return all(os.path.getmtime(file) <= built for file in files)
+
+use_corpus = os.path.exists(os.path.join('corpus', 'corpus.idx'))
+if use_corpus and not corpus_is_current():
+    print('WARNING: the corpus is older than the training files, so they are read again instead. '
+          'Run CorpusBuilder.java again to update it.')
+    use_corpus = False
+
+if use_corpus:
+    # use the corpus built by CorpusBuilder.java, which has already combined the text files and found the index of every character
+    vocab = [chr(int(line.split('\t')[1])) for line in open(os.path.join('corpus', 'vocab.tsv')) if not line.startswith('#')]
+    text_as_int = np.fromfile(os.path.join('corpus', 'corpus.idx'), dtype=np.uint8).astype(np.int64)
+else:
+    # combine text files in txt-training into one text file called txt-file.txt
+    with open('txt_file.txt', 'w') as outfile:
+        for file in  glob.glob(os.path.join('txt-training', '*.txt')):
+            with open(file) as infile:
+                outfile.write(infile.read())
 
-path_to_file = 'txt_file.txt'
+    path_to_file = 'txt_file.txt'
 
-# read and decode text file
-text = open(path_to_file, 'rb').read().decode(encoding='utf-8')
+    # read and decode text file
+    text = open(path_to_file, 'rb').read().decode(encoding='utf-8')
 
-# get the unique characters in the file
-vocab = sorted(set(text))
+    # get the unique characters in the file
+    vocab = sorted(set(text))
+    text_as_int = None
 
 # create a mapping from unique characters to indices, and vice versa
 char2idx = {u:i for i, u in enumerate(vocab)}
 idx2char = np.array(vocab)
 
-# text as a series of integers, according to the maps
-text_as_int = np.array([char2idx[c] for c in text])
+if text_as_int is None:
+    # text as a series of integers, according to the maps
+    text_as_int = np.array([char2idx[c] for c in text])
 
 
 # CREATE TRAINING EXAMPLES AND TARGETS
 
 seq_length = 100   # the number of characters for each training example
-examples_per_epoch = len(text)//seq_length
+examples_per_epoch = len(text_as_int)//seq_length
 
 # convert the text vector into a stream of character indices
 char_dataset = tf.data.Dataset.from_tensor_slices(text_as_int)
@@ -130,6 +160,37 @@ model = build_model(vocab_size, embedding_dim, rnn_units, batch_size=1)
 model.load_weights(tf.train.latest_checkpoint(checkpoint_dir))
 model.build(tf.TensorShape([1, None]))
 
+# export the weights for MidiGenerator.java, which generates MIDI files from the model without TensorFlow
+def export_model(model, folder):
+    if not os.path.exists(folder):
+        os.makedirs(folder)
+
+    # write an array as raw little-endian 32-bit floats, and return its entry for the descriptor
+    def export(name, array):
+        array = np.asarray(array, dtype='<f4')
+        array.tofile(os.path.join(folder, name + '.bin'))
+        return {'file': name + '.bin', 'shape': list(array.shape)}
+
+    embedding_layer, gru_layer, dense_layer = model.layers
+    kernel, recurrent_kernel, bias = gru_layer.get_weights()
+    reset_after = bias.size == 6 * rnn_units   # CuDNNGRU keeps a separate bias for the recurrent kernel
+    dense_kernel, dense_bias = dense_layer.get_weights()
+
+    descriptor = {
+        'format': 1,
+        'vocabulary': [ord(c) for c in vocab],
+        'embedding': export('embedding', embedding_layer.get_weights()[0]),
+        'gru': [{'units': rnn_units, 'reset_after': bool(reset_after),
+                 'kernel': export('gru_0_kernel', kernel),
+                 'recurrent_kernel': export('gru_0_recurrent_kernel', recurrent_kernel),
+                 'bias': export('gru_0_bias', bias.reshape(2 if reset_after else 1, 3 * rnn_units))}],
+        'dense': {'kernel': export('dense_kernel', dense_kernel), 'bias': export('dense_bias', dense_bias)}
+    }
+    with open(os.path.join(folder, 'model.json'), 'w') as outfile:
+        json.dump(descriptor, outfile)
+
+export_model(model, 'java-model')
+
 def generate_text(model, start_string):
   # Evaluation step (generating text using the learned model)
   
@@ -0,0 +1,208 @@
+/**
+ * Passes notes on to a NoteSink that runs on its own thread, through a bounded queue
+ */
+
+package composer;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+public class AsyncNoteSink implements NoteSink, Closeable
+{
+
+	public static final int DEFAULT_BATCH_SIZE = 1024;
+	public static final int DEFAULT_BATCHES = 4;
+
+	private static final int ADVANCE = -1;   // the note value of a queued call to advance()
+	private static final int END = -2;   // the note value of a queued call to end()
+
+	private final NoteSink sink;
+	private final BlockingQueue<Batch> full;   // the batches waiting to be passed to sink, in order
+	private final BlockingQueue<Batch> empty;   // the batches that can be filled again
+	private Batch batch;   // the batch being filled (only used by the thread that calls note(), advance() and end())
+
+	private final Thread consumer;
+	private volatile Throwable error = null;   // why sink stopped early, or null
+
+	/**
+	 * Creates an AsyncNoteSink with 4 batches of 1024 calls each.
+	 *
+	 * @param sink		the NoteSink that receives the notes, on the thread of this AsyncNoteSink
+	 */
+	public AsyncNoteSink(NoteSink sink)
+	{
+		this(sink, DEFAULT_BATCH_SIZE, DEFAULT_BATCHES);
+	}
+
+	/**
+	 * Creates an AsyncNoteSink and starts the thread that passes the notes to sink. The calls are queued in batches, so the two threads
+	 * only meet once for each batch instead of once for each note, and no more batches are ever created, so note() blocks while they are
+	 * all full, and the memory used stays the same however long the piece is. A batch is passed on once it is full, or at the end
+	 * of the piece, so a batch size of 1 passes every note on as soon as it arrives (for a ReceiverSink that plays the notes live).
+	 *
+	 * @param sink			the NoteSink that receives the notes, on the thread of this AsyncNoteSink
+	 * @param batchSize		the number of calls in each batch
+	 * @param batches		the number of batches (at least 2, so one can be filled while the other is passed on)
+	 */
+	public AsyncNoteSink(NoteSink sink, int batchSize, int batches)
+	{
+		if (batchSize < 1 || batches < 2)
+			throw new IllegalArgumentException("There must be at least 2 batches of at least 1 call");
+
+		this.sink = sink;
+		full = new ArrayBlockingQueue<Batch>(batches);
+		empty = new ArrayBlockingQueue<Batch>(batches);
+		for (int i = 1; i < batches; i++)
+			empty.add(new Batch(batchSize));
+		batch = new Batch(batchSize);
+
+		consumer = new Thread(this::consume, "AsyncNoteSink");
+		consumer.setDaemon(true);
+		consumer.start();
+	}
+
+	public void note(long tick, int note, int length) throws IOException
+	{
+		add(tick, note, length);
+	}
+
+	public void advance(long tick) throws IOException
+	{
+		add(tick, ADVANCE, 0);
+	}
+
+	/**
+	 * This method passes the rest of the queued calls on, and waits until sink has ended the piece.
+	 */
+	public void end(long tick) throws IOException
+	{
+		add(tick, END, 0);
+		if (batch.size > 0)   // the batch is passed on by add() if the end filled it
+			pass();
+		try
+		{
+			consumer.join();
+		}
+		catch (InterruptedException e)
+		{
+			close();
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while the end of the piece was being passed on", e);
+		}
+		if (error != null)
+			throw new IOException("The notes could not be passed on", error);
+	}
+
+	/**
+	 * This method stops the thread at once, without passing on the calls that are still queued. It is used when the piece cannot be
+	 * finished, such as when the source of the notes fails.
+	 */
+	public void close()
+	{
+		consumer.interrupt();
+		try
+		{
+			consumer.join();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void add(long tick, int note, int length) throws IOException
+	{
+		if (error != null)
+			throw new IOException("The notes could not be passed on", error);
+
+		int i = batch.size++;
+		batch.ticks[i] = tick;
+		batch.notes[i] = note;
+		batch.lengths[i] = length;
+		if (batch.size == batch.ticks.length)
+			pass();
+	}
+
+	/**
+	 * This method queues the batch being filled, and waits for an empty batch to fill next.
+	 */
+	private void pass() throws IOException
+	{
+		try
+		{
+			full.put(batch);
+			batch = empty.take();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting to queue a note", e);
+		}
+	}
+
+	/**
+	 * This method is run by the thread of this AsyncNoteSink. It passes the calls of each batch to sink, and gives the batch back to be
+	 * filled again. If sink fails, the rest of the batches are still given back without being passed on, so the other thread never
+	 * waits for an empty batch, and finds the error the next time it adds a call.
+	 */
+	private void consume()
+	{
+		try
+		{
+			while (true)
+			{
+				Batch next = full.take();
+				for (int i = 0; i < next.size; i++)
+				{
+					if (error != null)
+						break;
+					try
+					{
+						if (next.notes[i] == ADVANCE)
+							sink.advance(next.ticks[i]);
+						else if (next.notes[i] == END)
+							sink.end(next.ticks[i]);
+						else
+							sink.note(next.ticks[i], next.notes[i], next.lengths[i]);
+					}
+					catch (Throwable e)
+					{
+						error = e;
+					}
+				}
+
+				boolean ended = next.size > 0 && next.notes[next.size-1] == END;
+				next.size = 0;
+				empty.put(next);
+				if (ended)
+					return;
+			}
+		}
+		catch (InterruptedException e)
+		{
+			// stopped by close()
+		}
+	}
+
+	/**
+	 * Holds the arguments of a batch of calls, with the note value of a call to advance() or end() set to ADVANCE or END.
+	 */
+	private static class Batch
+	{
+
+		private final long[] ticks;
+		private final int[] notes;
+		private final int[] lengths;
+		private int size = 0;
+
+		private Batch(int capacity)
+		{
+			ticks = new long[capacity];
+			notes = new int[capacity];
+			lengths = new int[capacity];
+		}
+
+	}
+
+}
@@ -0,0 +1,210 @@
+/**
+ * Converts many files at once on several threads
+ */
+
+package composer;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+public class BatchConverter
+{
+
+	/**
+	 * A single conversion, such as FileConverter.textFile() or FileConverter.midiFile().
+	 */
+	public interface Conversion
+	{
+		File convert(FileConverter converter, File input, File folder) throws Exception;
+	}
+
+	public static final Conversion TEXT = FileConverter::textFile;
+	public static final Conversion TEXT_REST_RUNS = (converter, input, folder) -> converter.textFile(input, folder, true);
+	public static final Conversion MIDI = FileConverter::midiFile;
+	public static final Conversion MIDI_REST_RUNS = (converter, input, folder) -> converter.midiFile(input, folder, true);
+	public static final Conversion TOKENS = FileConverter::tokenFile;
+
+	private final ExecutorService executor;
+	private final boolean ownsExecutor;
+	private final Semaphore permits;
+
+	// a FileConverter keeps information about its most recent conversion, so each worker thread gets its own
+	private final ThreadLocal<FileConverter> converters;
+
+	/**
+	 * Creates a BatchConverter that runs the conversions on its own ForkJoinPool.
+	 *
+	 * @param threads		the number of files that are converted at the same time
+	 */
+	public BatchConverter(int threads)
+	{
+		this(new ForkJoinPool(threads), threads, true);
+	}
+
+	/**
+	 * Creates a BatchConverter that runs the conversions on executor (for example, on Java 21 or later, an executor that starts a
+	 * virtual thread for each task, which the Java 11 build cannot create itself), but never runs more than maxConcurrent conversions at
+	 * the same time. Long pieces are only encoded in chunks if executor is a ForkJoinPool, which then encodes the chunks as well.
+	 *
+	 * @param executor			the ExecutorService that runs the conversions
+	 * @param maxConcurrent		the number of files that are converted at the same time
+	 */
+	public BatchConverter(ExecutorService executor, int maxConcurrent)
+	{
+		this(executor, maxConcurrent, false);
+	}
+
+	private BatchConverter(ExecutorService executor, int maxConcurrent, boolean ownsExecutor)
+	{
+		if (maxConcurrent < 1)
+			throw new IllegalArgumentException("maxConcurrent must be at least 1");
+
+		this.executor = executor;
+		this.ownsExecutor = ownsExecutor;
+		permits = new Semaphore(maxConcurrent);
+
+		// long pieces are encoded in chunks on the same pool as the files, so the chunks never add threads of their own, and on the
+		// calling thread if the executor is not a ForkJoinPool, since the threads of any other executor cannot be shared that way
+		ForkJoinPool pool = executor instanceof ForkJoinPool ? (ForkJoinPool) executor : null;
+		converters = ThreadLocal.withInitial(() -> new FileConverter(pool));
+	}
+
+	/**
+	 * This method converts every file in inputs into a new file in folder, and waits for all of them to finish. A file that cannot be
+	 * converted does not stop the others; its error is recorded in its result instead.
+	 *
+	 * @param inputs		the files to convert
+	 * @param folder		the parent folder of the converted files
+	 * @param conversion	the conversion to apply to each file
+	 * @return the result of each conversion, in the same order as inputs
+	 * @throws InterruptedException
+	 */
+	public List<ConversionResult> convert(File[] inputs, File folder, Conversion conversion) throws InterruptedException
+	{
+		return convert(inputs, folder, conversion, null);
+	}
+
+	/**
+	 * This method converts every file in inputs whose converted file in folder is not up to date according to manifest, and records
+	 * each new conversion in manifest. The content of each input is hashed on the worker threads, so unchanged files cost one read.
+	 * The manifest is not saved by this method.
+	 *
+	 * @param inputs		the files to convert
+	 * @param folder		the parent folder of the converted files
+	 * @param conversion	the conversion to apply to each file
+	 * @param manifest		the manifest of folder, or null to convert every file
+	 * @return the result of each conversion, in the same order as inputs
+	 * @throws InterruptedException
+	 */
+	public List<ConversionResult> convert(File[] inputs, File folder, Conversion conversion, ConversionManifest manifest) throws InterruptedException
+	{
+		List<Future<ConversionResult>> futures = new ArrayList<Future<ConversionResult>>();
+		for (File input : inputs)
+			futures.add(executor.submit(() -> convertOne(input, folder, conversion, manifest)));
+
+		List<ConversionResult> results = new ArrayList<ConversionResult>();
+		for (int i = 0; i < inputs.length; i++)
+		{
+			try
+			{
+				results.add(futures.get(i).get());
+			}
+			catch (ExecutionException e)   // convertOne() records its own errors, so this only happens if it was interrupted
+			{
+				results.add(new ConversionResult(inputs[i], null, 0, 0, e.getCause()));
+			}
+		}
+
+		return results;
+	}
+
+	/**
+	 * This method shuts down the executor if it was created by this BatchConverter.
+	 */
+	public void shutdown()
+	{
+		if (ownsExecutor)
+			executor.shutdown();
+	}
+
+	/**
+	 * This method prints a line for each result, followed by the number of files converted and the total time, and the time spent in
+	 * each stage of the conversions (added up over all the threads).
+	 *
+	 * @param results		the results of a batch
+	 * @param wallNanos		the time the whole batch took (in nanoseconds)
+	 */
+	public static void printReport(List<ConversionResult> results, long wallNanos)
+	{
+		int failed = 0;
+		int skipped = 0;
+		long events = 0;
+		long[] stageNanos = new long[ConversionMetrics.STAGES.length];
+		for (ConversionResult result : results)
+		{
+			System.out.println(result);
+			if (result.isSkipped())
+				skipped++;
+			else if (result.succeeded())
+				events += result.getEventCount();
+			else
+				failed++;
+
+			if (result.getMetrics() != null)
+				for (int stage = 0; stage < stageNanos.length; stage++)
+					stageNanos[stage] += result.getMetrics().getStageNanos(stage);
+		}
+
+		System.out.printf("%d files converted, %d up to date, %d failed, %d events in %.1f s%n",
+			results.size() - failed - skipped, skipped, failed, events, wallNanos / 1e9);
+
+		// list the stages that took any time, such as "read 41.2 ms, sort 12.0 ms, encode 80.3 ms, write 3.1 ms"
+		StringBuilder stages = new StringBuilder();
+		for (int stage = 0; stage < stageNanos.length; stage++)
+			if (stageNanos[stage] > 0)
+				stages.append(stages.length() == 0 ? "" : ", ").append(String.format("%s %.1f ms", ConversionMetrics.STAGES[stage], stageNanos[stage] / 1e6));
+		if (stages.length() > 0)
+			System.out.println(stages);
+	}
+
+	private ConversionResult convertOne(File input, File folder, Conversion conversion, ConversionManifest manifest) throws InterruptedException
+	{
+		permits.acquire();
+		try
+		{
+			FileConverter converter = converters.get();
+			long start = System.nanoTime();
+			try
+			{
+				String hash = null;
+				if (manifest != null)
+				{
+					hash = ConversionManifest.hash(input);
+					if (manifest.isCurrent(input, hash))
+						return ConversionResult.skipped(input, manifest.output(input), System.nanoTime() - start);
+				}
+
+				File output = conversion.convert(converter, input, folder);
+
+				if (manifest != null)
+					manifest.record(input, hash, output);
+
+				return new ConversionResult(input, output, System.nanoTime() - start, converter.getEventCount(), converter.getMetrics().copy());
+			}
+			catch (Exception e)
+			{
+				return new ConversionResult(input, null, System.nanoTime() - start, 0, e);
+			}
+		}
+		finally
+		{
+			permits.release();
+		}
+	}
+
+}
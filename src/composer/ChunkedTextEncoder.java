@@ -0,0 +1,282 @@
+/**
+ * Encodes the sorted note events of a single long piece as text on several threads, producing the same text as a TickEncoder
+ */
+
+package composer;
+import java.io.CharArrayWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+public class ChunkedTextEncoder
+{
+
+	public static final int DEFAULT_CHUNK_EVENTS = 1 << 16;   // the number of events in each chunk
+
+	private final ForkJoinPool pool;
+	private final int chunkEvents;
+
+	private long noteCount = 0;
+	private long tickCount = 0;
+
+	/**
+	 * Creates a ChunkedTextEncoder.
+	 *
+	 * @param pool				the pool that encodes the chunks
+	 * @param chunkEvents		the number of events in each chunk (a chunk is extended to the end of its last tick)
+	 */
+	public ChunkedTextEncoder(ForkJoinPool pool, int chunkEvents)
+	{
+		if (chunkEvents < 1)
+			throw new IllegalArgumentException("chunkEvents must be at least 1");
+
+		this.pool = pool;
+		this.chunkEvents = chunkEvents;
+	}
+
+	/**
+	 * This method returns true if events are long enough to be worth splitting into chunks, which is when they fill at least two chunks
+	 * and the pool has more than one thread.
+	 *
+	 * @param events		the sorted note events of a piece
+	 * @return true if encode() should be used instead of a TickEncoder
+	 */
+	public boolean worthSplitting(NoteEventBuffer events)
+	{
+		return pool.getParallelism() > 1 && events.size() >= 2L * chunkEvents;
+	}
+
+	/**
+	 * This method writes events as text, in exactly the same way as passing them to a TickEncoder that writes to a TextSink. The
+	 * events are split into chunks of whole ticks, and the work is done in three passes:
+	 * <br>
+	 * 1.	In parallel, each chunk pairs its note on events with the first note off event of the same note after them in the chunk,
+	 * 		which gives the length of most notes. For each note value, the chunk remembers the tick of its first note off event, and
+	 * 		the notes that are still open at its end.
+	 * <br>
+	 * 2.	In order, the notes left open by each chunk are ended by the first note off event of their note value in a later chunk,
+	 * 		or given a length of 1 if there is none, as TickEncoder does. This only visits the notes that cross a chunk boundary.
+	 * <br>
+	 * 3.	In parallel, each chunk writes the text of its ticks (starting with the rests after the last note of the chunk before it)
+	 * 		into its own buffer, and the buffers are written to writer in order, followed by the rests up to the last tick.
+	 * <br>
+	 * PRECONDITION:	events are sorted as returned by FileConverter.sortedTrack(), and hold only note on events
+	 *
+	 * @param events		the sorted note events of a piece
+	 * @param writer		the Writer that the text is written to
+	 * @param restRuns		true to write runs of empty ticks as rest runs
+	 * @throws IOException
+	 */
+	public void encode(final NoteEventBuffer events, Writer writer, final boolean restRuns) throws IOException
+	{
+		// split the events into chunks that end at the end of a tick
+		int[] bounds = new int[events.size() / chunkEvents + 2];
+		int chunks = 0;
+		while (bounds[chunks] < events.size())
+		{
+			int bound = Math.min(bounds[chunks] + chunkEvents, events.size());
+			while (bound < events.size() && events.tick(bound) == events.tick(bound - 1))
+				bound++;
+			bounds[++chunks] = bound;
+		}
+
+		final long[] lengths = new long[events.size()];   // the length of each note on event (-1 until it is known)
+		final int[] nextOpen = new int[events.size()];   // the next open note with the same note value in the same chunk, or -1
+		final long[][] firstOffs = new long[chunks][];
+		final int[][] openHeads = new int[chunks][];
+		final long[] lastNoteTicks = new long[chunks];   // the tick of the last note on event of each chunk, or -1
+
+		// 1. pair the notes with their ends within each chunk
+		runChunks(chunks, chunk ->
+		{
+			long[] firstOff = new long[128];
+			int[] openHead = new int[128];
+			Arrays.fill(firstOff, -1);
+			Arrays.fill(openHead, -1);
+			long lastNoteTick = -1;
+
+			for (int i = bounds[chunk]; i < bounds[chunk + 1]; i++)
+			{
+				int note = events.pitch(i) - 12;   // get note (note: subtract octave)
+				long tick = events.tick(i);
+				if (events.velocity(i) != 0)
+				{
+					lengths[i] = -1;
+					nextOpen[i] = openHead[note];
+					openHead[note] = i;
+					lastNoteTick = tick;
+				}
+				else
+				{
+					if (firstOff[note] < 0)
+						firstOff[note] = tick;
+					for (int open = openHead[note]; open >= 0; open = nextOpen[open])
+						lengths[open] = tick - events.tick(open);
+					openHead[note] = -1;
+				}
+			}
+
+			firstOffs[chunk] = firstOff;
+			openHeads[chunk] = openHead;
+			lastNoteTicks[chunk] = lastNoteTick;
+		});
+
+		// 2. end the notes that cross chunk boundaries, keeping the open notes of each note value as a list of per-chunk chains
+		List<List<Integer>> carried = new ArrayList<List<Integer>>();
+		for (int note = 0; note < 128; note++)
+			carried.add(new ArrayList<Integer>());
+		for (int chunk = 0; chunk < chunks; chunk++)
+		{
+			for (int note = 0; note < 128; note++)
+			{
+				List<Integer> chains = carried.get(note);
+				if (firstOffs[chunk][note] >= 0)
+				{
+					setLengths(events, lengths, nextOpen, chains, firstOffs[chunk][note]);
+					chains.clear();
+				}
+				if (openHeads[chunk][note] >= 0)
+					chains.add(openHeads[chunk][note]);
+			}
+		}
+		for (List<Integer> chains : carried)
+			setLengths(events, lengths, nextOpen, chains, -1);   // notes that were never ended are given a length of 1
+
+		// find where each chunk starts writing: just after the last note of the chunks before it
+		final long[] starts = new long[chunks];
+		long written = 0;
+		for (int chunk = 0; chunk < chunks; chunk++)
+		{
+			starts[chunk] = written;
+			if (lastNoteTicks[chunk] >= 0)
+				written = lastNoteTicks[chunk] + 1;
+		}
+
+		// 3. write the text of each chunk into its own buffer
+		final CharArrayWriter[] texts = new CharArrayWriter[chunks];
+		final long[] notes = new long[chunks];
+		runChunks(chunks, chunk ->
+		{
+			CharArrayWriter text = new CharArrayWriter();
+			long chunkWritten = starts[chunk];
+			try (TextSink sink = new TextSink(text, restRuns))
+			{
+				int i = bounds[chunk];
+				int end = bounds[chunk + 1];
+				while (i < end)
+				{
+					// write the notes of the tick of event i, if it has any
+					long tick = events.tick(i);
+					boolean notesInTick = false;
+					for (; i < end && events.tick(i) == tick; i++)
+					{
+						if (events.velocity(i) == 0)
+							continue;
+						if (!notesInTick && tick > chunkWritten)
+							sink.rests(tick - chunkWritten);
+						notesInTick = true;
+						sink.note(events.pitch(i) - 12, lengths[i]);
+						notes[chunk]++;
+					}
+					if (notesInTick)
+					{
+						sink.endTick();
+						chunkWritten = tick + 1;
+					}
+				}
+			}
+			texts[chunk] = text;
+		});
+
+		// stitch the chunks together, and write the rests up to the last tick of the piece
+		noteCount = 0;
+		for (int chunk = 0; chunk < chunks; chunk++)
+		{
+			texts[chunk].writeTo(writer);
+			texts[chunk] = null;
+			noteCount += notes[chunk];
+		}
+		long lastTick = events.lastTick();
+		TextSink sink = new TextSink(writer, restRuns);
+		if (lastTick >= written)
+			sink.rests(lastTick + 1 - written);
+		sink.flush();
+		tickCount = Math.max(written, lastTick + 1);
+	}
+
+	/**
+	 * @return the number of notes written by the most recent call to encode()
+	 */
+	public long getNoteCount()
+	{
+		return noteCount;
+	}
+
+	/**
+	 * @return the number of ticks written by the most recent call to encode()
+	 */
+	public long getTickCount()
+	{
+		return tickCount;
+	}
+
+	/**
+	 * This method sets the length of every note in the chains of open notes to its distance from offTick, or to 1 if offTick is -1.
+	 */
+	private static void setLengths(NoteEventBuffer events, long[] lengths, int[] nextOpen, List<Integer> chains, long offTick)
+	{
+		for (int head : chains)
+			for (int open = head; open >= 0; open = nextOpen[open])
+				lengths[open] = offTick < 0 ? 1 : offTick - events.tick(open);
+	}
+
+	/**
+	 * A pass over a single chunk.
+	 */
+	private interface ChunkTask
+	{
+		void run(int chunk) throws IOException;
+	}
+
+	/**
+	 * This method runs task for every chunk on the pool, and waits for all of them to finish.
+	 */
+	private void runChunks(int chunks, ChunkTask task) throws IOException
+	{
+		List<ForkJoinTask<?>> tasks = new ArrayList<ForkJoinTask<?>>();
+		for (int chunk = 0; chunk < chunks; chunk++)
+		{
+			final int c = chunk;
+			tasks.add(pool.submit(() ->
+			{
+				task.run(c);
+				return null;
+			}));
+		}
+
+		for (ForkJoinTask<?> t : tasks)
+		{
+			try
+			{
+				t.get();
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while encoding", e);
+			}
+			catch (ExecutionException e)
+			{
+				if (e.getCause() instanceof IOException)
+					throw (IOException) e.getCause();
+				throw new IOException(e.getCause());
+			}
+		}
+	}
+
+}
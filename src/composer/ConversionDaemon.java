@@ -0,0 +1,414 @@
+/**
+ * Keeps converting the files that appear in the training and generated folders, and reports its status over HTTP
+ */
+
+package composer;
+import com.sun.net.httpserver.HttpServer;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+public class ConversionDaemon implements Closeable
+{
+
+	public static final int DEFAULT_PORT = 8765;
+	public static final long DEFAULT_QUIET_MILLIS = 50;   // how long a file must stay unchanged before it is converted
+	public static final int RECENT_COUNT = 20;   // the number of recent conversions listed in the status
+
+	/**
+	 * A folder that is watched, and where and how its files are converted.
+	 */
+	private static class Watch
+	{
+		final File input;
+		final File output;
+		final String extension;   // only the files ending in this extension are converted
+		final BatchConverter.Conversion conversion;
+		final ConversionManifest manifest;
+
+		Watch(File input, File output, String extension, BatchConverter.Conversion conversion, ConversionManifest manifest)
+		{
+			this.input = input;
+			this.output = output;
+			this.extension = extension;
+			this.conversion = conversion;
+			this.manifest = manifest;
+		}
+	}
+
+	/**
+	 * A file that has changed, and is converted once it has stopped changing.
+	 */
+	private static class Pending
+	{
+		final Watch watch;
+		final long firstSeen;   // when the first change was seen (in nanoseconds)
+		long lastChange;   // when the most recent change was seen (in nanoseconds)
+		long length;   // the length and modification time of the file when it last changed
+		long modified;
+
+		Pending(Watch watch, long now)
+		{
+			this.watch = watch;
+			firstSeen = now;
+			lastChange = now;
+		}
+	}
+
+	private final FileConverter converter = new FileConverter();   // only used by the thread that runs run(), so it stays warm
+	private final WatchService watchService;
+	private final Map<WatchKey, Watch> watches = new HashMap<WatchKey, Watch>();
+	private final Map<File, Pending> pending = new LinkedHashMap<File, Pending>();
+	private final long quietNanos;
+	private volatile boolean running = true;
+
+	// the status, read by the threads of the HTTP server
+	private final long startMillis = System.currentTimeMillis();
+	private long converted = 0;
+	private long upToDate = 0;
+	private long failed = 0;
+	private volatile int pendingCount = 0;   // the size of pending, which is only used by the thread that runs run()
+	private final ArrayDeque<String> recent = new ArrayDeque<String>();   // JSON objects describing the most recent conversions
+
+	/**
+	 * Creates a ConversionDaemon that does not watch any folder yet.
+	 *
+	 * @param quietMillis		how long a file must stay unchanged (in milliseconds) before it is converted, so files that are
+	 * 							still being written are not converted halfway through
+	 * @throws IOException
+	 */
+	public ConversionDaemon(long quietMillis) throws IOException
+	{
+		watchService = FileSystems.getDefault().newWatchService();
+		quietNanos = TimeUnit.MILLISECONDS.toNanos(quietMillis);
+	}
+
+	/**
+	 * This method starts watching input, and queues every file in it that is not up to date according to the manifest of output.
+	 * Whenever a file ending in extension is created or changed in input, it is converted into a file in output once it has stopped
+	 * changing.
+	 *
+	 * @param input			the folder to watch
+	 * @param output		the parent folder of the converted files
+	 * @param extension		the extension of the files to convert (such as ".mid")
+	 * @param conversion	the conversion to apply to each file
+	 * @param version		the version of the conversion, as used by ConversionManifest
+	 * @throws IOException
+	 */
+	public void watch(File input, File output, String extension, BatchConverter.Conversion conversion, String version) throws IOException
+	{
+		input.mkdirs();
+		output.mkdirs();
+		Watch watch = new Watch(input, output, extension, conversion, ConversionManifest.load(output, version));
+
+		WatchKey key = input.toPath().register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+		watches.put(key, watch);
+		scan(watch, System.nanoTime());
+	}
+
+	/**
+	 * This method waits for files to change and converts them, until stop() is called. A file is converted once it has not changed
+	 * for the quiet period and its length and modification time are the same as at its last watch event.
+	 *
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	public void run() throws IOException, InterruptedException
+	{
+		while (running)
+		{
+			// the watch service is closed by stop(), which can happen at any point of the loop, so any call to it can throw
+			try
+			{
+				// wait for the next change, or until the next pending file may be ready
+				long wait = pending.isEmpty() ? TimeUnit.MILLISECONDS.toNanos(500) : nextDeadline() - System.nanoTime();
+				WatchKey key = wait > 0 ? watchService.poll(wait, TimeUnit.NANOSECONDS) : watchService.poll();
+
+				long now = System.nanoTime();
+				while (key != null && running)
+				{
+					Watch watch = watches.get(key);
+					for (WatchEvent<?> event : key.pollEvents())
+					{
+						if (event.kind() == StandardWatchEventKinds.OVERFLOW)   // some events were lost, so check every file
+							scan(watch, now);
+						else
+							changed(watch, watch.input.toPath().resolve((Path) event.context()).toFile(), now);
+					}
+					key.reset();
+					key = watchService.poll();
+				}
+
+				convertReady(now);
+			}
+			catch (ClosedWatchServiceException e)
+			{
+				break;
+			}
+		}
+	}
+
+	/**
+	 * This method makes run() return after the conversion it is working on, if any.
+	 */
+	public void stop()
+	{
+		running = false;
+		try
+		{
+			watchService.close();
+		}
+		catch (IOException e)
+		{
+			// the watch service is no longer needed anyway
+		}
+	}
+
+	/**
+	 * This method stops the daemon, if it has not been stopped, and saves the manifest of every folder it watched, so it can be called
+	 * once run() has returned or thrown.
+	 */
+	public void close() throws IOException
+	{
+		stop();
+		for (Watch watch : watches.values())
+			watch.manifest.save();
+	}
+
+	/**
+	 * @return a JSON object holding the uptime, the number of files converted, up to date and failed, the number of files waiting to
+	 * be converted, and the most recent conversions with their latency (the time from the first change to the converted file)
+	 */
+	public synchronized String status()
+	{
+		StringBuilder json = new StringBuilder();
+		json.append("{\"uptime_s\": ").append((System.currentTimeMillis() - startMillis) / 1000)
+			.append(", \"converted\": ").append(converted)
+			.append(", \"up_to_date\": ").append(upToDate)
+			.append(", \"failed\": ").append(failed)
+			.append(", \"pending\": ").append(pendingCount)
+			.append(", \"recent\": [");
+		Iterator<String> it = recent.iterator();
+		while (it.hasNext())
+			json.append(it.next()).append(it.hasNext() ? ", " : "");
+		json.append("]}\n");
+		return json.toString();
+	}
+
+	/**
+	 * This method queues every file in the folder of watch.
+	 */
+	private void scan(Watch watch, long now)
+	{
+		File[] files = watch.input.listFiles();
+		if (files != null)
+			for (File file : files)
+				changed(watch, file, now);
+	}
+
+	/**
+	 * This method records that file has changed, so its quiet period starts again.
+	 */
+	private void changed(Watch watch, File file, long now)
+	{
+		String name = file.getName();
+		if (!name.endsWith(watch.extension) || name.startsWith("."))   // skip hidden and temporary files
+			return;
+
+		Pending entry = pending.get(file);
+		if (entry == null)
+		{
+			entry = new Pending(watch, now);
+			pending.put(file, entry);
+		}
+		entry.lastChange = now;
+		entry.length = file.length();
+		entry.modified = file.lastModified();
+		pendingCount = pending.size();
+	}
+
+	private long nextDeadline()
+	{
+		long deadline = Long.MAX_VALUE;
+		for (Pending entry : pending.values())
+			deadline = Math.min(deadline, entry.lastChange + quietNanos);
+		return deadline;
+	}
+
+	/**
+	 * This method converts every pending file whose quiet period has passed. If its length or modification time changed since its last
+	 * watch event (a change can be made without its event reaching this thread in time), its quiet period starts again instead.
+	 */
+	private void convertReady(long now)
+	{
+		List<File> ready = new ArrayList<File>();
+		for (Map.Entry<File, Pending> entry : pending.entrySet())
+		{
+			File file = entry.getKey();
+			Pending value = entry.getValue();
+			if (now - value.lastChange < quietNanos)
+				continue;
+
+			long length = file.length();
+			long modified = file.lastModified();
+			if (length != value.length || modified != value.modified)
+			{
+				value.length = length;
+				value.modified = modified;
+				value.lastChange = now;
+			}
+			else
+			{
+				ready.add(file);
+			}
+		}
+
+		for (File file : ready)
+		{
+			if (!running)   // stopped, so leave the rest pending
+				break;
+			Pending entry = pending.remove(file);
+			pendingCount = pending.size();
+			if (file.exists())
+				convert(file, entry);
+		}
+	}
+
+	/**
+	 * This method converts file with the warm FileConverter, unless the manifest shows that it has not changed since it was last
+	 * converted, and records the result in the status.
+	 */
+	private void convert(File file, Pending entry)
+	{
+		Watch watch = entry.watch;
+		long start = System.nanoTime();
+		String outcome;
+		try
+		{
+			String hash = ConversionManifest.hash(file);
+			if (watch.manifest.isCurrent(file, hash))
+			{
+				synchronized (this)
+				{
+					upToDate++;
+				}
+				return;
+			}
+
+			File output = watch.conversion.convert(converter, file, watch.output);
+			watch.manifest.record(file, hash, output);
+			watch.manifest.save();
+			outcome = "\"output\": " + MetricsReport.quote(output.getPath());
+			synchronized (this)
+			{
+				converted++;
+			}
+		}
+		catch (Exception e)
+		{
+			outcome = "\"error\": " + MetricsReport.quote(String.valueOf(e));
+			synchronized (this)
+			{
+				failed++;
+			}
+		}
+
+		long end = System.nanoTime();
+		String line = String.format(Locale.ROOT, "{\"file\": %s, %s, \"convert_ms\": %.3f, \"latency_ms\": %.3f}",
+				MetricsReport.quote(file.getPath()), outcome, (end - start) / 1e6, (end - entry.firstSeen) / 1e6);
+		System.out.println(line);
+		synchronized (this)
+		{
+			recent.addFirst(line);
+			if (recent.size() > RECENT_COUNT)
+				recent.removeLast();
+		}
+	}
+
+	public static void main(String[] args) throws IOException, InterruptedException
+	{
+		// "--port=<port>" sets the port of the status endpoint on localhost (0 turns it off), "--quiet-ms=<ms>" sets how long a file
+		// must stay unchanged before it is converted, and "--rest-runs" writes and reads text files with rest runs
+		int port = DEFAULT_PORT;
+		long quietMillis = DEFAULT_QUIET_MILLIS;
+		boolean restRuns = false;
+		for (String arg : args)
+		{
+			if (arg.startsWith("--port="))
+				port = Integer.parseInt(arg.substring("--port=".length()));
+			else if (arg.startsWith("--quiet-ms="))
+				quietMillis = Long.parseLong(arg.substring("--quiet-ms=".length()));
+			else if (arg.equals("--rest-runs"))
+				restRuns = true;
+		}
+
+		// convert the training MIDI files into training text files, and the generated text files into MIDI files
+		final ConversionDaemon daemon = new ConversionDaemon(quietMillis);
+		String prefix = restRuns ? "-rest-runs-" : "-";
+		daemon.watch(new File("midi-training"), new File("txt-training"), ".mid",
+				restRuns ? BatchConverter.TEXT_REST_RUNS : BatchConverter.TEXT, "text" + prefix + FileConverter.FORMAT_VERSION);
+		daemon.watch(new File("txt-files"), new File("midi-files"), ".txt",
+				restRuns ? BatchConverter.MIDI_REST_RUNS : BatchConverter.MIDI, "midi" + prefix + FileConverter.FORMAT_VERSION);
+
+		// "GET /status" returns the status of the daemon, and "POST /stop" stops it
+		HttpServer server = null;
+		if (port != 0)
+		{
+			server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+			server.createContext("/status", exchange ->
+			{
+				byte[] body = daemon.status().getBytes(StandardCharsets.UTF_8);
+				exchange.getResponseHeaders().set("Content-Type", "application/json");
+				exchange.sendResponseHeaders(200, body.length);
+				try (OutputStream out = exchange.getResponseBody())
+				{
+					out.write(body);
+				}
+			});
+			server.createContext("/stop", exchange ->
+			{
+				boolean post = exchange.getRequestMethod().equals("POST");
+				exchange.sendResponseHeaders(post ? 204 : 405, -1);
+				exchange.close();
+				if (post)
+					daemon.stop();
+			});
+			server.start();
+			System.out.println("Status at http://localhost:" + server.getAddress().getPort() + "/status");
+		}
+
+		// the server is stopped however run() ends, since its thread would otherwise keep the program running
+		System.out.println("Watching \"midi-training\" and \"txt-files\".");
+		try
+		{
+			daemon.run();
+		}
+		finally
+		{
+			if (server != null)
+				server.stop(0);
+			daemon.close();
+		}
+	}
+
+}
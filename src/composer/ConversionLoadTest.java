@@ -0,0 +1,320 @@
+/**
+ * Converts a corpus of synthetic MIDI files to text and back, and reports the throughput, peak heap and correctness of each conversion
+ */
+
+package composer;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+public class ConversionLoadTest
+{
+
+	public static void main(String[] args) throws IOException, InterruptedException
+	{
+		// the number of files converted at the same time can be given as an argument (all cores are used by default), along with
+		// "--files=" (the number of MIDI files to generate), "--tracks=", "--notes=" (the number of notes in each track), "--polyphony=",
+		// "--ppq=" (the resolution), "--tempo-density=" (tempo changes per quarter note), "--overlap=" (the chance a note is struck again
+		// while it is playing), "--missing-offs=" (the chance a note is never ended), "--seed=", and "--rest-runs"
+		int threads = Runtime.getRuntime().availableProcessors();
+		int fileCount = 100;
+		long seed = 1;
+		boolean restRuns = false;
+		SyntheticMidi generator = new SyntheticMidi();
+		generator.setPitchRange(SyntheticMidi.LOWEST_PITCH + 12, SyntheticMidi.HIGHEST_PITCH);   // see below
+		for (String arg : args)
+		{
+			if (arg.startsWith("--files="))
+				fileCount = Integer.parseInt(arg.substring("--files=".length()));
+			else if (arg.startsWith("--tracks="))
+				generator.setTracks(Integer.parseInt(arg.substring("--tracks=".length())));
+			else if (arg.startsWith("--notes="))
+				generator.setNotesPerTrack(Integer.parseInt(arg.substring("--notes=".length())));
+			else if (arg.startsWith("--polyphony="))
+				generator.setPolyphony(Integer.parseInt(arg.substring("--polyphony=".length())));
+			else if (arg.startsWith("--ppq="))
+				generator.setResolution(Integer.parseInt(arg.substring("--ppq=".length())));
+			else if (arg.startsWith("--tempo-density="))
+				generator.setTempoDensity(Double.parseDouble(arg.substring("--tempo-density=".length())));
+			else if (arg.startsWith("--overlap="))
+				generator.setOverlapRate(Double.parseDouble(arg.substring("--overlap=".length())));
+			else if (arg.startsWith("--missing-offs="))
+				generator.setMissingOffRate(Double.parseDouble(arg.substring("--missing-offs=".length())));
+			else if (arg.startsWith("--seed="))
+				seed = Long.parseLong(arg.substring("--seed=".length()));
+			else if (arg.equals("--rest-runs"))
+				restRuns = true;
+			else
+				threads = Integer.parseInt(arg);
+		}
+
+		// create new directory called "load-test", with a folder for the files of each step of the round trip
+		File loadTest = new File("load-test");
+		File midiFolder = emptyFolder(new File(loadTest, "midi"));
+		File textFolder = emptyFolder(new File(loadTest, "txt"));
+		File midiOutFolder = emptyFolder(new File(loadTest, "midi-out"));
+		File textOutFolder = emptyFolder(new File(loadTest, "txt-out"));
+
+		// generate the MIDI files, each from its own seed so the corpus does not depend on the number of threads
+		System.out.printf("%-10s %8s %10s %12s %10s %10s %12s %10s%n", "step", "files", "time (s)", "files/s", "MB/s", "events/s",
+				"peak heap", "failed");
+		File[] midiFiles = new File[fileCount];
+		long[] noteCounts = new long[fileCount];
+		ExecutorService executor = new ForkJoinPool(threads);
+		resetPeakHeap();
+		long start = System.nanoTime();
+		try
+		{
+			List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+			for (int i = 0; i < fileCount; i++)
+			{
+				int file = i;
+				long fileSeed = seed * 1000003 + i;
+				midiFiles[i] = new File(midiFolder, String.format("synthetic_%06d.mid", i));
+				tasks.add(() ->
+				{
+					noteCounts[file] = generator.write(midiFiles[file], fileSeed);
+					return null;
+				});
+			}
+			for (Future<Void> future : executor.invokeAll(tasks))
+				future.get();
+		}
+		catch (ExecutionException e)
+		{
+			throw new IOException("A MIDI file could not be generated", e.getCause());
+		}
+		finally
+		{
+			executor.shutdown();
+		}
+		printStep("generate", fileCount, System.nanoTime() - start, size(midiFiles), Arrays.stream(noteCounts).sum() * 2, 0);
+
+		// convert the MIDI files to text, the text back to MIDI, and that MIDI to text again
+		BatchConverter batchConverter = new BatchConverter(threads);
+		List<ConversionResult> texts = convert(batchConverter, "text", midiFiles, textFolder,
+				restRuns ? BatchConverter.TEXT_REST_RUNS : BatchConverter.TEXT);
+		List<ConversionResult> midis = convert(batchConverter, "midi", outputs(texts), midiOutFolder,
+				restRuns ? BatchConverter.MIDI_REST_RUNS : BatchConverter.MIDI);
+		List<ConversionResult> textsOut = convert(batchConverter, "text again", outputs(midis), textOutFolder,
+				restRuns ? BatchConverter.TEXT_REST_RUNS : BatchConverter.TEXT);
+		batchConverter.shutdown();
+
+		// the round trip is correct if the text has every generated note, and the MIDI file written from it gives the same text again,
+		// an octave lower: the text of a note is its MIDI number minus an octave, but midiFile() writes the note of the text as its MIDI
+		// number, so every note comes back an octave lower (which is why the notes are generated at least an octave above the lowest
+		// note that sortedTrack() keeps), and without the empty ticks at the end (a note off event that ends no note, such as the second
+		// end of two notes of the same value that overlap, still adds empty ticks to the end of the text, but is not in the MIDI file)
+		int correct = 0;
+		List<String> problems = new ArrayList<String>();
+		for (int i = 0; i < fileCount; i++)
+		{
+			File text = texts.get(i).getOutput();
+			File textOut = new File(textOutFolder, midiFiles[i].getName().replace(".mid", ".txt"));
+			if (text == null || !textOut.isFile())
+			{
+				problems.add(midiFiles[i].getName() + " could not be converted");
+				continue;
+			}
+
+			byte[] textBytes = Files.readAllBytes(text.toPath());
+			long notes = countNotes(textBytes);
+			if (notes != noteCounts[i])
+				problems.add(String.format("%s has %d notes in its text, but %d were generated", midiFiles[i].getName(), notes, noteCounts[i]));
+			else if (longestNote(textBytes) > TokenVocabulary.MAX_DURATION)
+				problems.add(String.format("%s has a note of %d ticks, which is too long for the text format", midiFiles[i].getName(),
+						longestNote(textBytes)));
+			else if (!Arrays.equals(withoutRests(octaveLower(textBytes)), withoutRests(Files.readAllBytes(textOut.toPath()))))
+				problems.add(midiFiles[i].getName() + " does not give the same text after it is converted to MIDI and back");
+			else
+				correct++;
+		}
+
+		for (String problem : problems.subList(0, Math.min(problems.size(), 10)))
+			System.out.println(problem);
+		if (problems.size() > 10)
+			System.out.println("... and " + (problems.size() - 10) + " more");
+		System.out.printf("%d of %d files converted to text and back without changing%n", correct, fileCount);
+	}
+
+	/**
+	 * This method converts inputs with a BatchConverter, and prints the throughput and peak heap of the step.
+	 */
+	private static List<ConversionResult> convert(BatchConverter batchConverter, String step, File[] inputs, File folder,
+			BatchConverter.Conversion conversion) throws InterruptedException
+	{
+		System.gc();
+		resetPeakHeap();
+		long start = System.nanoTime();
+		List<ConversionResult> results = batchConverter.convert(inputs, folder, conversion);
+		long nanos = System.nanoTime() - start;
+
+		long events = 0;
+		int failed = 0;
+		for (ConversionResult result : results)
+		{
+			if (result.succeeded())
+				events += result.getEventCount();
+			else
+				failed++;
+		}
+		printStep(step, inputs.length, nanos, size(inputs), events, failed);
+		return results;
+	}
+
+	private static void printStep(String step, int files, long nanos, long bytes, long events, int failed)
+	{
+		double seconds = nanos / 1e9;
+		System.out.printf("%-10s %8d %10.2f %12.1f %10.1f %10.0f %9.1f MB %10d%n", step, files, seconds, files / seconds,
+				bytes / 1e6 / seconds, events / seconds, peakHeap() / 1e6, failed);
+	}
+
+	/**
+	 * @return the outputs of results, with a file that does not exist in place of each output that failed, so the files of the next step
+	 * stay in the same order
+	 */
+	private static File[] outputs(List<ConversionResult> results)
+	{
+		File[] outputs = new File[results.size()];
+		for (int i = 0; i < outputs.length; i++)
+		{
+			ConversionResult result = results.get(i);
+			outputs[i] = result.getOutput() != null ? result.getOutput() : new File(result.getInput().getPath() + ".failed");
+		}
+		return outputs;
+	}
+
+	/**
+	 * @return the number of notes in text, which is the number of ticks that have notes plus the number of exclamation marks
+	 */
+	private static long countNotes(byte[] text)
+	{
+		long notes = 0;
+		boolean tickStart = true;
+		for (byte b : text)
+		{
+			if (tickStart && b != '~' && b != ' ')
+				notes++;
+			else if (b == '!')
+				notes++;
+			tickStart = b == ' ';
+		}
+		return notes;
+	}
+
+	/**
+	 * @return text with the character of every note moved down an octave
+	 */
+	private static byte[] octaveLower(byte[] text)
+	{
+		byte[] lower = text.clone();
+		boolean noteStart = true;   // true if the next character starts a note (or a rest)
+		for (int i = 0; i < lower.length; i++)
+		{
+			byte b = lower[i];
+			if (noteStart && b != '~')
+				lower[i] -= 12;
+			noteStart = b == ' ' || b == '!';
+		}
+		return lower;
+	}
+
+	/**
+	 * @return text without the empty ticks at its end
+	 */
+	private static byte[] withoutRests(byte[] text)
+	{
+		int end = text.length;
+		while (end > 0 && text[end-1] == ' ')
+		{
+			// find the start of the last tick, and stop if it has notes
+			int start = end - 1;
+			while (start > 0 && text[start-1] != ' ')
+				start--;
+			if (text[start] != '~')
+				break;
+			end = start;
+		}
+		return Arrays.copyOf(text, end);
+	}
+
+	/**
+	 * @return the length of the longest note in text (in ticks)
+	 */
+	private static long longestNote(byte[] text)
+	{
+		long longest = 0;
+		long length = -1;   // the length of the note being read, or -1 if the characters are not the digits of a note
+		boolean noteStart = true;
+		for (byte b : text)
+		{
+			if (b == ' ' || b == '!')
+			{
+				longest = Math.max(longest, length);
+				length = -1;
+			}
+			else if (noteStart)
+				length = b == '~' ? -1 : 0;
+			else if (length >= 0)
+				length = length * 10 + b - '0';
+			noteStart = b == ' ' || b == '!';
+		}
+		return longest;
+	}
+
+	private static long size(File[] files)
+	{
+		long size = 0;
+		for (File file : files)
+			size += file.length();
+		return size;
+	}
+
+	/**
+	 * This method starts measuring the peak size of the heap again.
+	 */
+	private static void resetPeakHeap()
+	{
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+			if (pool.getType() == MemoryType.HEAP)
+				pool.resetPeakUsage();
+	}
+
+	/**
+	 * @return the most memory used in the heap since resetPeakHeap() was called (in bytes), added up over the memory pools of the heap,
+	 * each of which may have reached its peak at a different time
+	 */
+	private static long peakHeap()
+	{
+		long peak = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+			if (pool.getType() == MemoryType.HEAP)
+				peak += pool.getPeakUsage().getUsed();
+		return peak;
+	}
+
+	/**
+	 * This method creates folder if it does not exist, and deletes the files in it from a previous run.
+	 */
+	private static File emptyFolder(File folder) throws IOException
+	{
+		folder.mkdirs();
+		File[] files = folder.listFiles();
+		if (files != null)
+			for (File file : files)
+				Files.delete(file.toPath());
+		return folder;
+	}
+
+}
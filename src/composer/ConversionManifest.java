@@ -0,0 +1,187 @@
+/**
+ * Records which files in a folder were converted from which sources, so unchanged sources are not converted again
+ */
+
+package composer;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class ConversionManifest
+{
+
+	public static final String FILE_NAME = ".manifest";   // does not end in .txt or .mid, so it is never picked up as a source
+
+	private final File folder;
+	private final String version;
+	private final Map<String, String[]> entries = new ConcurrentHashMap<String, String[]>();   // source name -> {hash, version, output name}
+
+	private ConversionManifest(File folder, String version)
+	{
+		this.folder = folder;
+		this.version = version;
+	}
+
+	/**
+	 * This method reads the manifest in folder, or creates an empty one if folder does not have a manifest yet. Each line of the manifest
+	 * holds the name of a source file, the SHA-256 hash of its content, the version of the converter that converted it, and the name of
+	 * the converted file, separated by tabs.
+	 *
+	 * @param folder		the folder holding the converted files
+	 * @param version		the current version of the conversion (sources converted by any other version are converted again)
+	 * @return the manifest of folder
+	 * @throws IOException
+	 */
+	public static ConversionManifest load(File folder, String version) throws IOException
+	{
+		ConversionManifest manifest = new ConversionManifest(folder, version);
+
+		File file = new File(folder, FILE_NAME);
+		if (file.exists())
+		{
+			try (BufferedReader br = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8))
+			{
+				String line;
+				while ((line = br.readLine()) != null)
+				{
+					String[] fields = line.split("\t");
+					if (fields.length == 4 && !line.startsWith("#"))
+						manifest.entries.put(fields[0], new String[] {fields[1], fields[2], fields[3]});
+				}
+			}
+		}
+
+		return manifest;
+	}
+
+	/**
+	 * This method returns true if source has already been converted by the current version of the converter, its content has not changed
+	 * since then, and the converted file still exists.
+	 *
+	 * @param source		the source file
+	 * @param hash			the hash of the content of source, as returned by hash()
+	 * @return true if source does not need to be converted again
+	 */
+	public boolean isCurrent(File source, String hash)
+	{
+		String[] entry = entries.get(source.getName());
+		return entry != null && entry[0].equals(hash) && entry[1].equals(version) && new File(folder, entry[2]).exists();
+	}
+
+	/**
+	 * @return the converted file recorded for source, or null if there is none
+	 */
+	public File output(File source)
+	{
+		String[] entry = entries.get(source.getName());
+		return entry == null ? null : new File(folder, entry[2]);
+	}
+
+	/**
+	 * This method records that source has been converted into output by the current version of the converter. It can be called from
+	 * several threads at once.
+	 *
+	 * @param source		the source file
+	 * @param hash			the hash of the content of source, as returned by hash()
+	 * @param output		the converted file
+	 */
+	public void record(File source, String hash, File output)
+	{
+		entries.put(source.getName(), new String[] {hash, version, output.getName()});
+	}
+
+	/**
+	 * This method deletes the converted files whose sources are no longer among sources (along with the TickIndex of each one, if it
+	 * has one), and removes them from the manifest.
+	 *
+	 * @param sources		all the current source files
+	 * @return the number of converted files that were deleted
+	 */
+	public int removeStale(File[] sources)
+	{
+		Set<String> names = new HashSet<String>();
+		for (File source : sources)
+			names.add(source.getName());
+
+		int removed = 0;
+		for (String name : entries.keySet())
+		{
+			if (!names.contains(name))
+			{
+				File output = new File(folder, entries.remove(name)[2]);
+				if (output.delete())
+					removed++;
+				TickIndex.indexFile(output).delete();   // the tick index written next to a text file, if there is one
+			}
+		}
+
+		return removed;
+	}
+
+	/**
+	 * This method writes the manifest to folder. The manifest is written to a temporary file first, so an interrupted run never leaves
+	 * a partial manifest behind.
+	 *
+	 * @throws IOException
+	 */
+	public void save() throws IOException
+	{
+		File temp = new File(folder, FILE_NAME + ".tmp");
+		try (BufferedWriter bw = Files.newBufferedWriter(temp.toPath(), StandardCharsets.UTF_8))
+		{
+			bw.write("# source\thash\tversion\toutput\n");
+			for (Map.Entry<String, String[]> entry : new TreeMap<String, String[]>(entries).entrySet())
+			{
+				String[] fields = entry.getValue();
+				bw.write(entry.getKey() + "\t" + fields[0] + "\t" + fields[1] + "\t" + fields[2] + "\n");
+			}
+		}
+		Files.move(temp.toPath(), new File(folder, FILE_NAME).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * This method returns the SHA-256 hash of the content of file as a hexadecimal String.
+	 *
+	 * @param file		the file to hash
+	 * @return the hash of file
+	 * @throws IOException
+	 */
+	public static String hash(File file) throws IOException
+	{
+		MessageDigest digest;
+		try
+		{
+			digest = MessageDigest.getInstance("SHA-256");
+		}
+		catch (NoSuchAlgorithmException e)
+		{
+			throw new IllegalStateException(e);   // every Java platform is required to support SHA-256
+		}
+
+		byte[] buffer = new byte[65536];
+		try (InputStream in = Files.newInputStream(file.toPath()))
+		{
+			int n;
+			while ((n = in.read(buffer)) > 0)
+				digest.update(buffer, 0, n);
+		}
+
+		StringBuilder hex = new StringBuilder();
+		for (byte b : digest.digest())
+			hex.append(String.format("%02x", b));
+		return hex.toString();
+	}
+
+}
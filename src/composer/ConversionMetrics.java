@@ -0,0 +1,250 @@
+/**
+ * Measures the time taken by each stage of a conversion and counts what it read and wrote
+ */
+
+package composer;
+import java.io.File;
+import java.io.IOException;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+public class ConversionMetrics
+{
+
+	// the stages of a conversion
+	public static final int READ = 0;   // reading the note and tempo events of a MIDI file
+	public static final int SORT = 1;   // merging the tracks and converting their ticks
+	public static final int ENCODE = 2;   // pairing the notes with their ends and passing the ticks to a TickSink
+	public static final int DECODE = 3;   // reading the notes of a text or token file
+	public static final int WRITE = 4;   // writing the converted file (the part that is not done while encoding)
+	public static final String[] STAGES = {"read", "sort", "encode", "decode", "write"};
+
+	/**
+	 * A JFR event recorded for each stage of a conversion, so the stages show up in the timeline of a recording
+	 * (for example, one started with -XX:StartFlightRecording).
+	 */
+	@Name("composer.ConversionStage")
+	@Label("Conversion Stage")
+	@Category("AIComposer")
+	@Description("A stage of converting a single file")
+	@StackTrace(false)
+	static class StageEvent extends Event
+	{
+		@Label("File")
+		String file;
+
+		@Label("Stage")
+		String stage;
+	}
+
+	/**
+	 * A JFR event recorded for each converted file, with its counters.
+	 */
+	@Name("composer.Conversion")
+	@Label("Conversion")
+	@Category("AIComposer")
+	@Description("Converting a single file")
+	@StackTrace(false)
+	static class ConversionEvent extends Event
+	{
+		@Label("File")
+		String file;
+
+		@Label("Events Read")
+		long eventsRead;
+
+		@Label("Notes Emitted")
+		long notesEmitted;
+
+		@Label("Ticks Emitted")
+		long ticksEmitted;
+
+		@Label("Bytes Written")
+		@DataAmount
+		long bytesWritten;
+	}
+
+	private String file = null;
+	private final long[] stageNanos = new long[STAGES.length];
+	private long eventsRead = 0;
+	private long notesEmitted = 0;
+	private long ticksEmitted = 0;
+	private long bytesWritten = 0;
+
+	// the stage that is being timed
+	private int stage = -1;
+	private long stageStart = 0;
+	private StageEvent stageEvent = null;
+	private ConversionEvent conversionEvent = null;
+
+	/**
+	 * This method starts measuring the conversion of input, clearing the measurements of the previous conversion.
+	 *
+	 * @param input		the file being converted
+	 */
+	public void begin(File input)
+	{
+		file = input.getName();
+		for (int i = 0; i < stageNanos.length; i++)
+			stageNanos[i] = 0;
+		eventsRead = 0;
+		notesEmitted = 0;
+		ticksEmitted = 0;
+		bytesWritten = 0;
+		stage = -1;
+
+		conversionEvent = new ConversionEvent();
+		conversionEvent.begin();
+	}
+
+	/**
+	 * This method starts timing a stage. The time is added to the stage when endStage() is called.
+	 * <br>
+	 * PRECONDITION:	the previous stage has been ended
+	 *
+	 * @param stage		the stage (such as READ)
+	 */
+	public void startStage(int stage)
+	{
+		this.stage = stage;
+		stageEvent = new StageEvent();
+		stageEvent.begin();
+		stageStart = System.nanoTime();
+	}
+
+	/**
+	 * This method stops timing the stage that was started most recently, and records its JFR event if JFR is recording it.
+	 */
+	public void endStage()
+	{
+		stageNanos[stage] += System.nanoTime() - stageStart;
+		stageEvent.end();
+		if (stageEvent.shouldCommit())
+		{
+			stageEvent.file = file;
+			stageEvent.stage = STAGES[stage];
+			stageEvent.commit();
+		}
+		stage = -1;
+	}
+
+	/**
+	 * This method ends the conversion, and records its JFR event if JFR is recording it.
+	 *
+	 * @param output		the converted file, whose length is the number of bytes written
+	 */
+	public void finish(File output)
+	{
+		bytesWritten = output.length();
+		conversionEvent.end();
+		if (conversionEvent.shouldCommit())
+		{
+			conversionEvent.file = file;
+			conversionEvent.eventsRead = eventsRead;
+			conversionEvent.notesEmitted = notesEmitted;
+			conversionEvent.ticksEmitted = ticksEmitted;
+			conversionEvent.bytesWritten = bytesWritten;
+			conversionEvent.commit();
+		}
+	}
+
+	/**
+	 * This method returns a TickSink that counts the notes and ticks passed to sink.
+	 *
+	 * @param sink		the TickSink that receives the ticks
+	 * @return a TickSink that counts the notes and ticks and passes them on to sink
+	 */
+	public TickSink counting(final TickSink sink)
+	{
+		return new TickSink()
+		{
+			public void note(int note, long length) throws IOException
+			{
+				sink.note(note, length);
+				notesEmitted++;
+			}
+
+			public void endTick() throws IOException
+			{
+				sink.endTick();
+				ticksEmitted++;
+			}
+
+			public void rests(long count) throws IOException
+			{
+				sink.rests(count);
+				ticksEmitted += count;
+			}
+		};
+	}
+
+	public void addEventsRead(long count)
+	{
+		eventsRead += count;
+	}
+
+	public void addNotesEmitted(long count)
+	{
+		notesEmitted += count;
+	}
+
+	public void addTicksEmitted(long count)
+	{
+		ticksEmitted += count;
+	}
+
+	/**
+	 * @return a copy of these measurements, which does not change when the next conversion is measured
+	 */
+	public ConversionMetrics copy()
+	{
+		ConversionMetrics copy = new ConversionMetrics();
+		copy.file = file;
+		System.arraycopy(stageNanos, 0, copy.stageNanos, 0, stageNanos.length);
+		copy.eventsRead = eventsRead;
+		copy.notesEmitted = notesEmitted;
+		copy.ticksEmitted = ticksEmitted;
+		copy.bytesWritten = bytesWritten;
+		return copy;
+	}
+
+	public String getFile()
+	{
+		return file;
+	}
+
+	/**
+	 * @param stage		the stage (such as READ)
+	 * @return the time taken by stage (in nanoseconds)
+	 */
+	public long getStageNanos(int stage)
+	{
+		return stageNanos[stage];
+	}
+
+	public long getEventsRead()
+	{
+		return eventsRead;
+	}
+
+	public long getNotesEmitted()
+	{
+		return notesEmitted;
+	}
+
+	public long getTicksEmitted()
+	{
+		return ticksEmitted;
+	}
+
+	public long getBytesWritten()
+	{
+		return bytesWritten;
+	}
+
+}
@@ -0,0 +1,129 @@
+/**
+ * Holds the outcome of converting a single file in a batch
+ */
+
+package composer;
+import java.io.File;
+
+public class ConversionResult
+{
+
+	private final File input;
+	private final File output;   // null if the conversion failed
+	private final long nanos;
+	private final long eventCount;
+	private final Throwable error;   // null if the conversion succeeded
+	private final boolean skipped;   // true if the file was not converted because its converted file was up to date
+	private final ConversionMetrics metrics;   // null if the conversion failed or was skipped
+
+	/**
+	 * Creates a ConversionResult.
+	 *
+	 * @param input			the file that was converted
+	 * @param output		the file that was created, or null if the conversion failed
+	 * @param nanos			the time the conversion took (in nanoseconds)
+	 * @param eventCount	the number of note events that were converted
+	 * @param error			the cause of the failure, or null if the conversion succeeded
+	 */
+	public ConversionResult(File input, File output, long nanos, long eventCount, Throwable error)
+	{
+		this(input, output, nanos, eventCount, error, false, null);
+	}
+
+	/**
+	 * Creates the ConversionResult of a successful conversion.
+	 *
+	 * @param input			the file that was converted
+	 * @param output		the file that was created
+	 * @param nanos			the time the conversion took (in nanoseconds)
+	 * @param eventCount	the number of note events that were converted
+	 * @param metrics		the time taken by each stage of the conversion, and what it read and wrote
+	 */
+	public ConversionResult(File input, File output, long nanos, long eventCount, ConversionMetrics metrics)
+	{
+		this(input, output, nanos, eventCount, null, false, metrics);
+	}
+
+	private ConversionResult(File input, File output, long nanos, long eventCount, Throwable error, boolean skipped,
+			ConversionMetrics metrics)
+	{
+		this.input = input;
+		this.output = output;
+		this.nanos = nanos;
+		this.eventCount = eventCount;
+		this.error = error;
+		this.skipped = skipped;
+		this.metrics = metrics;
+	}
+
+	/**
+	 * This method creates the result of a file that was not converted, because its converted file was already up to date.
+	 *
+	 * @param input			the source file
+	 * @param output		the existing converted file
+	 * @param nanos			the time it took to check the file (in nanoseconds)
+	 * @return a skipped ConversionResult
+	 */
+	public static ConversionResult skipped(File input, File output, long nanos)
+	{
+		return new ConversionResult(input, output, nanos, 0, null, true, null);
+	}
+
+	public File getInput()
+	{
+		return input;
+	}
+
+	public File getOutput()
+	{
+		return output;
+	}
+
+	public long getNanos()
+	{
+		return nanos;
+	}
+
+	public long getEventCount()
+	{
+		return eventCount;
+	}
+
+	public Throwable getError()
+	{
+		return error;
+	}
+
+	public boolean succeeded()
+	{
+		return error == null;
+	}
+
+	public boolean isSkipped()
+	{
+		return skipped;
+	}
+
+	/**
+	 * @return the time taken by each stage of the conversion and what it read and wrote, or null if the conversion failed or was
+	 * skipped
+	 */
+	public ConversionMetrics getMetrics()
+	{
+		return metrics;
+	}
+
+	/**
+	 * @return a line describing the result, for example "mz_311_1.mid   42.1 ms   10244 events" or "mz_311_2.mid   FAILED: ..."
+	 */
+	public String toString()
+	{
+		String time = String.format("%8.1f ms", nanos / 1e6);
+		if (skipped)
+			return input.getName() + "   " + time + "   up to date";
+		if (succeeded())
+			return input.getName() + "   " + time + "   " + eventCount + " events";
+		return input.getName() + "   " + time + "   FAILED: " + error;
+	}
+
+}
@@ -0,0 +1,516 @@
+/**
+ * Builds the training corpus from the training text files, so the machine learning program can load it without preprocessing
+ */
+
+package composer;
+import java.io.BufferedWriter;
+import java.io.CharArrayWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import javax.sound.midi.InvalidMidiDataException;
+
+public class CorpusBuilder
+{
+
+	public static final String CORPUS_FILE = "txt_file.txt";   // all the text files, one after the other
+	public static final String INDEX_FILE = "corpus.idx";   // the index of every character of the corpus in the vocabulary, one byte each
+	public static final String VOCAB_FILE = "vocab.tsv";   // the index, character code, and count of every character in the vocabulary
+	public static final String INFO_FILE = "corpus.info";   // the sizes of the corpus, as "key=value" lines
+	public static final String TICKS_FILE = "corpus.ticks";   // the TickIndex of the corpus, if every text file has one
+	public static final String SHARD_PREFIX = "windows-";   // the start of the name of every shard of training windows
+
+	private final ExecutorService executor;
+	private final int seqLength;
+	private final int windowsPerShard;
+
+	// the sizes of the most recently built corpus
+	private final long[] histogram = new long[256];
+	private int[] vocabulary = new int[0];
+	private long symbolCount = 0;
+	private long windowCount = 0;
+	private int shardCount = 0;
+	private boolean tickIndexed = false;
+	private String source = "";   // the folder of the files the corpus was built from
+	private String sourceExtension = "";
+	private int sourceCount = 0;
+
+	/**
+	 * Creates a CorpusBuilder.
+	 *
+	 * @param threads			the number of files that are read at the same time
+	 * @param seqLength			the number of characters in each training example (each window holds seqLength + 1 characters, the
+	 * 								example and its target shifted by one)
+	 * @param windowsPerShard	the number of windows in each shard
+	 */
+	public CorpusBuilder(int threads, int seqLength, int windowsPerShard)
+	{
+		if (seqLength < 1 || windowsPerShard < 1)
+			throw new IllegalArgumentException("seqLength and windowsPerShard must be at least 1");
+
+		executor = new ForkJoinPool(threads);
+		this.seqLength = seqLength;
+		this.windowsPerShard = windowsPerShard;
+	}
+
+	/**
+	 * This method builds the corpus of textFiles in folder. The text files are read twice, each time on several threads at once. The
+	 * first pass counts the characters of each file, which gives the vocabulary (every character that appears, in ascending order, just
+	 * like sorted(set(text)) in Python) and the offset of each file in the corpus. The second pass copies each file into the corpus file
+	 * at its offset, and writes the index of each of its characters into the index file at the same offset. Finally, the index file is
+	 * cut into windows of seqLength + 1 characters, which are written as shards of windowsPerShard windows (the characters after the
+	 * last whole window are left out, like batch(seq_length + 1, drop_remainder=True)). If every text file has an up-to-date TickIndex
+	 * (written by TextFileCreator with "--index") with the same number of ticks in each block, the indices are also joined into the
+	 * index of the corpus, so a CorpusWindows can read windows of whole ticks from the corpus file.
+	 * <br>
+	 * NOTE:	the text files are read as bytes, so every character is expected to be ASCII (as in the text format)
+	 *
+	 * @param textFiles		the text files, in the order they are added to the corpus
+	 * @param folder		the folder that the corpus is written to
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	public void build(File[] textFiles, File folder) throws IOException, InterruptedException
+	{
+		List<TextSource> sources = new ArrayList<TextSource>();
+		for (File textFile : textFiles)
+			sources.add(part -> part.accept(Files.readAllBytes(textFile.toPath())));
+		setSource(textFiles, ".txt");
+		build(sources, folder);
+		tickIndexed = writeTickIndex(textFiles, folder);
+	}
+
+	/**
+	 * This method builds the corpus of the variants of midiFiles in folder, in the same way as build(File[], File), but without writing
+	 * any text files. Each MIDI file is converted to sorted note events by a FileConverter, and its variants are created one at a time by
+	 * augmenter and written as text straight into the corpus, one after the other. Since the files are read twice (once to count their
+	 * characters and once to copy them), each variant is created twice instead of being kept, so only one variant of each file being read
+	 * is held in memory at once. The corpus is the same as the one built from text files of every variant.
+	 *
+	 * @param midiFiles		the MIDI files, in the order they are added to the corpus
+	 * @param augmenter		the NoteAugmenter that creates the variants of each MIDI file
+	 * @param restRuns		true to write runs of empty ticks as rest runs
+	 * @param folder		the folder that the corpus is written to
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	public void build(File[] midiFiles, NoteAugmenter augmenter, boolean restRuns, File folder) throws IOException, InterruptedException
+	{
+		ThreadLocal<FileConverter> converters = ThreadLocal.withInitial(FileConverter::new);
+		List<TextSource> sources = new ArrayList<TextSource>();
+		for (File midiFile : midiFiles)
+			sources.add(part -> writeVariants(converters.get(), midiFile, augmenter, restRuns, part));
+		setSource(midiFiles, ".mid");
+		build(sources, folder);
+		tickIndexed = false;
+	}
+
+	/**
+	 * This method records where files are, so file_generator.py can tell whether a file has been added, removed or changed there since
+	 * the corpus was built.
+	 */
+	private void setSource(File[] files, String extension)
+	{
+		File parent = files.length > 0 ? files[0].getParentFile() : null;
+		source = parent == null ? "" : parent.getPath();
+		sourceExtension = extension;
+		sourceCount = files.length;
+	}
+
+	/**
+	 * This method builds the corpus of sources in folder, as described in build(File[], File).
+	 */
+	private void build(List<TextSource> sources, File folder) throws IOException, InterruptedException
+	{
+		Files.deleteIfExists(new File(folder, TICKS_FILE).toPath());   // the index of the previous corpus
+
+		// count the characters of every file
+		List<Callable<long[]>> countTasks = new ArrayList<Callable<long[]>>();
+		for (TextSource source : sources)
+			countTasks.add(() -> count(source));
+		List<long[]> counts = runAll(countTasks);
+
+		// add up the counts, and find the offset of every file in the corpus
+		Arrays.fill(histogram, 0);
+		long[] offsets = new long[sources.size()];
+		long offset = 0;
+		for (int i = 0; i < sources.size(); i++)
+		{
+			long[] fileCounts = counts.get(i);
+			for (int ch = 0; ch < 256; ch++)
+				histogram[ch] += fileCounts[ch];
+			offsets[i] = offset;
+			offset += fileCounts[256];
+		}
+		symbolCount = offset;
+
+		// find the vocabulary, and the index of each character in it
+		byte[] indexOf = new byte[256];
+		int vocabSize = 0;
+		for (int ch = 0; ch < 256; ch++)
+			if (histogram[ch] > 0)
+				indexOf[ch] = (byte) vocabSize++;
+		vocabulary = new int[vocabSize];
+		for (int ch = 0, i = 0; ch < 256; ch++)
+			if (histogram[ch] > 0)
+				vocabulary[i++] = ch;
+
+		// copy every file into the corpus, and write its indices, at the same offset
+		File indexFile = new File(folder, INDEX_FILE);
+		try (FileChannel corpus = open(new File(folder, CORPUS_FILE)); FileChannel index = open(indexFile))
+		{
+			List<Callable<Void>> writeTasks = new ArrayList<Callable<Void>>();
+			for (int i = 0; i < sources.size(); i++)
+			{
+				TextSource source = sources.get(i);
+				long position = offsets[i];
+				writeTasks.add(() -> write(source, position, indexOf, corpus, index));
+			}
+			runAll(writeTasks);
+		}
+
+		writeShards(indexFile, folder);
+		writeVocabulary(folder);
+		writeInfo(folder);
+	}
+
+	/**
+	 * @return the number of times each character code appeared in the most recently built corpus
+	 */
+	public long[] getHistogram()
+	{
+		return histogram.clone();
+	}
+
+	/**
+	 * @return the character code of every character in the vocabulary of the most recently built corpus, in order of index
+	 */
+	public int[] getVocabulary()
+	{
+		return vocabulary.clone();
+	}
+
+	public long getSymbolCount()
+	{
+		return symbolCount;
+	}
+
+	public long getWindowCount()
+	{
+		return windowCount;
+	}
+
+	public int getShardCount()
+	{
+		return shardCount;
+	}
+
+	/**
+	 * @return true if the index of the most recently built corpus was written
+	 */
+	public boolean isTickIndexed()
+	{
+		return tickIndexed;
+	}
+
+	/**
+	 * This method shuts down the threads of this CorpusBuilder.
+	 */
+	public void shutdown()
+	{
+		executor.shutdown();
+	}
+
+	/**
+	 * The text of a file of the corpus, which is passed to a TextPart in one or more parts.
+	 */
+	private interface TextSource
+	{
+		void read(TextPart part) throws IOException;
+	}
+
+	/**
+	 * Receives a part of the text of a file of the corpus. The bytes can be changed once they have been used.
+	 */
+	private interface TextPart
+	{
+		void accept(byte[] bytes) throws IOException;
+	}
+
+	/**
+	 * @return the number of times each character code appears in source, followed by the length of source
+	 */
+	private static long[] count(TextSource source) throws IOException
+	{
+		long[] counts = new long[257];
+		source.read(bytes ->
+		{
+			for (byte b : bytes)
+				counts[b & 0xFF]++;
+			counts[256] += bytes.length;
+		});
+		return counts;
+	}
+
+	private static Void write(TextSource source, long position, byte[] indexOf, FileChannel corpus, FileChannel index) throws IOException
+	{
+		long[] partPosition = {position};
+		source.read(bytes ->
+		{
+			writeFully(corpus, ByteBuffer.wrap(bytes), partPosition[0]);
+
+			for (int i = 0; i < bytes.length; i++)
+				bytes[i] = indexOf[bytes[i] & 0xFF];
+			writeFully(index, ByteBuffer.wrap(bytes), partPosition[0]);
+			partPosition[0] += bytes.length;
+		});
+		return null;
+	}
+
+	/**
+	 * This method passes the text of every variant of midiFile to part, one variant at a time.
+	 */
+	private static void writeVariants(FileConverter converter, File midiFile, NoteAugmenter augmenter, boolean restRuns, TextPart part)
+			throws IOException
+	{
+		NoteEventBuffer events;
+		try
+		{
+			events = converter.sortedEvents(midiFile);
+		}
+		catch (InvalidMidiDataException e)
+		{
+			throw new IOException(midiFile + " is not a valid MIDI file", e);
+		}
+
+		CharArrayWriter text = new CharArrayWriter();
+		for (Iterator<NoteEventBuffer> variants = augmenter.variants(events); variants.hasNext(); )
+		{
+			text.reset();
+			try (TextSink sink = new TextSink(text, restRuns))
+			{
+				converter.encode(variants.next(), sink);
+			}
+			part.accept(text.toString().getBytes(StandardCharsets.US_ASCII));
+		}
+	}
+
+	/**
+	 * This method cuts the index file into shards. Since the windows do not overlap, each shard is just a part of the index file, which is
+	 * copied by the file system without going through the heap.
+	 */
+	private void writeShards(File indexFile, File folder) throws IOException, InterruptedException
+	{
+		// remove the shards of the previous corpus, in case it had more of them
+		File[] oldShards = folder.listFiles((dir, name) -> name.startsWith(SHARD_PREFIX));
+		if (oldShards != null)
+			for (File oldShard : oldShards)
+				Files.delete(oldShard.toPath());
+
+		long windowSize = seqLength + 1;
+		windowCount = symbolCount / windowSize;
+		shardCount = (int) ((windowCount + windowsPerShard - 1) / windowsPerShard);
+
+		try (FileChannel index = FileChannel.open(indexFile.toPath()))
+		{
+			List<Callable<Void>> shardTasks = new ArrayList<Callable<Void>>();
+			for (int shard = 0; shard < shardCount; shard++)
+			{
+				long firstWindow = (long) shard * windowsPerShard;
+				long position = firstWindow * windowSize;
+				long length = Math.min(windowsPerShard, windowCount - firstWindow) * windowSize;
+				File shardFile = new File(folder, String.format(Locale.ROOT, "%s%05d.bin", SHARD_PREFIX, shard));
+				shardTasks.add(() ->
+				{
+					try (FileChannel out = open(shardFile))
+					{
+						for (long copied = 0; copied < length; )
+							copied += index.transferTo(position + copied, length - copied, out);
+					}
+					return null;
+				});
+			}
+			runAll(shardTasks);
+		}
+	}
+
+	/**
+	 * This method joins the TickIndex of every text file into the index of the corpus, with the offset of each block moved by the offset
+	 * of its file in the corpus, and returns true if it was written. Nothing is written if a text file has no index, if its index does not
+	 * end at the end of the file or is older than the file (so it was written for an older version of the file), or if the indices have
+	 * blocks of different sizes.
+	 */
+	private static boolean writeTickIndex(File[] textFiles, File folder) throws IOException
+	{
+		TickIndex corpusIndex = null;
+		long offset = 0;
+		for (File textFile : textFiles)
+		{
+			File indexFile = TickIndex.indexFile(textFile);
+			if (!indexFile.isFile())
+				return false;
+
+			TickIndex index = TickIndex.read(indexFile);
+			if (index.offset(index.getBlockCount()) != textFile.length() || TickIndex.isOutOfDate(indexFile, textFile))
+				return false;
+			if (corpusIndex == null)
+				corpusIndex = new TickIndex(index.getBlockTicks());
+			else if (index.getBlockTicks() != corpusIndex.getBlockTicks())
+				return false;
+
+			corpusIndex.append(index, offset);
+			offset += textFile.length();
+		}
+
+		if (corpusIndex == null)
+			return false;
+		corpusIndex.write(new File(folder, TICKS_FILE));
+		return true;
+	}
+
+	private void writeVocabulary(File folder) throws IOException
+	{
+		try (BufferedWriter bw = Files.newBufferedWriter(new File(folder, VOCAB_FILE).toPath(), StandardCharsets.UTF_8))
+		{
+			bw.write("# index\tcharacter code\tcount\n");
+			for (int i = 0; i < vocabulary.length; i++)
+				bw.write(i + "\t" + vocabulary[i] + "\t" + histogram[vocabulary[i]] + "\n");
+		}
+	}
+
+	private void writeInfo(File folder) throws IOException
+	{
+		try (BufferedWriter bw = Files.newBufferedWriter(new File(folder, INFO_FILE).toPath(), StandardCharsets.UTF_8))
+		{
+			bw.write("symbols=" + symbolCount + "\n");
+			bw.write("vocab_size=" + vocabulary.length + "\n");
+			bw.write("seq_length=" + seqLength + "\n");
+			bw.write("windows=" + windowCount + "\n");
+			bw.write("windows_per_shard=" + windowsPerShard + "\n");
+			bw.write("shards=" + shardCount + "\n");
+			bw.write("source=" + source + "\n");
+			bw.write("source_extension=" + sourceExtension + "\n");
+			bw.write("source_files=" + sourceCount + "\n");
+		}
+	}
+
+	/**
+	 * This method runs every task on the executor and waits for all of them to finish.
+	 *
+	 * @return the result of each task, in the same order as tasks
+	 */
+	private <T> List<T> runAll(List<Callable<T>> tasks) throws IOException, InterruptedException
+	{
+		List<T> results = new ArrayList<T>();
+		for (Future<T> future : executor.invokeAll(tasks))
+		{
+			try
+			{
+				results.add(future.get());
+			}
+			catch (ExecutionException e)
+			{
+				if (e.getCause() instanceof IOException)
+					throw (IOException) e.getCause();
+				throw new IllegalStateException(e.getCause());
+			}
+		}
+		return results;
+	}
+
+	private static FileChannel open(File file) throws IOException
+	{
+		return FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+	}
+
+	private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException
+	{
+		while (buffer.hasRemaining())
+			position += channel.write(buffer, position);
+	}
+
+	public static void main(String[] args) throws IOException, InterruptedException
+	{
+		// the number of files read at the same time can be given as an argument (all cores are used by default), along with
+		// "--seq-length=" followed by the number of characters in each training example and "--shard-windows=" followed by the
+		// number of windows in each shard
+		// "--transpose=" and "--stretch=" build the corpus from the MIDI files in "midi-training" instead, adding a variant of each file
+		// for every transposition (in semitones, such as "-5..6") and every stretch (as a percentage of its length, such as "90,100,110"),
+		// without writing any text files, and "--rest-runs" writes runs of empty ticks in the variants as rest runs
+		// "--training=" reads the text files from another folder instead of "txt-training," such as "txt-dedup"
+		int threads = Runtime.getRuntime().availableProcessors();
+		int seqLength = 100;
+		int windowsPerShard = 4096;
+		int[] transpositions = null;
+		int[] stretches = null;
+		boolean restRuns = false;
+		String textTraining = "txt-training";
+		for (String arg : args)
+		{
+			if (arg.startsWith("--transpose="))
+				transpositions = NoteAugmenter.parseList(arg.substring("--transpose=".length()));
+			else if (arg.startsWith("--stretch="))
+				stretches = NoteAugmenter.parseList(arg.substring("--stretch=".length()));
+			else if (arg.equals("--rest-runs"))
+				restRuns = true;
+			else if (arg.startsWith("--seq-length="))
+				seqLength = Integer.parseInt(arg.substring("--seq-length=".length()));
+			else if (arg.startsWith("--shard-windows="))
+				windowsPerShard = Integer.parseInt(arg.substring("--shard-windows=".length()));
+			else if (arg.startsWith("--training="))
+				textTraining = arg.substring("--training=".length());
+			else
+				threads = Integer.parseInt(arg);
+		}
+
+		// access the text files in "txt-training" or the folder given (or the MIDI files in "midi-training" to augment), in order of name
+		// so the corpus is the same every time
+		boolean augment = transpositions != null || stretches != null;
+		File training = new File(augment ? "midi-training" : textTraining);
+		File[] files = training.listFiles((dir, name) -> augment ? name.endsWith(".mid") : name.endsWith(".txt"));
+		if (files == null)
+		{
+			System.out.println("Folder \"" + training + "\" not found.");
+			return;
+		}
+		Arrays.sort(files);
+
+		// create new directory called "corpus", and build the corpus in it
+		File corpus = new File("corpus");
+		corpus.mkdir();
+
+		CorpusBuilder builder = new CorpusBuilder(threads, seqLength, windowsPerShard);
+		long start = System.nanoTime();
+		try
+		{
+			if (augment)
+				builder.build(files, new NoteAugmenter(transpositions != null ? transpositions : new int[] {0},
+						stretches != null ? stretches : new int[] {100}), restRuns, corpus);
+			else
+				builder.build(files, corpus);
+		}
+		finally
+		{
+			builder.shutdown();
+		}
+
+		System.out.printf("%d files, %d characters, %d in the vocabulary, %d windows in %d shards%s in %.1f s%n", files.length,
+			builder.getSymbolCount(), builder.getVocabulary().length, builder.getWindowCount(), builder.getShardCount(),
+			builder.isTickIndexed() ? ", with a tick index" : "", (System.nanoTime() - start) / 1e9);
+	}
+
+}
@@ -0,0 +1,528 @@
+/**
+ * Finds the passages of the training text files that repeat earlier passages, and writes the text files without them
+ */
+
+package composer;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+public class CorpusDeduplicator
+{
+
+	public static final int DEFAULT_KGRAM = 8;
+	public static final int DEFAULT_WINDOW = 8;
+	public static final int DEFAULT_MIN_LENGTH = 32;
+
+	private final ExecutorService pool;
+	private final int threads;
+	private final int kgram;
+	private final int window;
+	private final int minLength;
+	private final boolean exact;
+
+	private File[] files = new File[0];
+	private TextFingerprints[] prints = new TextFingerprints[0];
+	private List<List<DuplicateSpan>> spans = new ArrayList<List<DuplicateSpan>>();   // the spans of each file, in order
+
+	public static void main(String[] args) throws IOException, InterruptedException
+	{
+		// the number of files read at the same time can be given as an argument (all cores are used by default), along with "--kgram="
+		// (the number of ticks with notes in each hashed run), "--window=" (the number of runs that each fingerprint is chosen from),
+		// "--min-length=" (the fewest ticks with notes that a duplicated passage can have), "--exact" to match the text exactly instead of
+		// letting the lengths of the notes differ by a tick or two, "--training=" (the folder of text files, "txt-training" by default), and "--write" to write the text files
+		// without their duplicated passages to "txt-dedup"
+		int threads = Runtime.getRuntime().availableProcessors();
+		int kgram = DEFAULT_KGRAM;
+		int window = DEFAULT_WINDOW;
+		int minLength = DEFAULT_MIN_LENGTH;
+		boolean exact = false;
+		boolean write = false;
+		String training = "txt-training";
+		for (String arg : args)
+		{
+			if (arg.startsWith("--kgram="))
+				kgram = Integer.parseInt(arg.substring("--kgram=".length()));
+			else if (arg.startsWith("--window="))
+				window = Integer.parseInt(arg.substring("--window=".length()));
+			else if (arg.startsWith("--min-length="))
+				minLength = Integer.parseInt(arg.substring("--min-length=".length()));
+			else if (arg.equals("--exact"))
+				exact = true;
+			else if (arg.equals("--write"))
+				write = true;
+			else if (arg.startsWith("--training="))
+				training = arg.substring("--training=".length());
+			else
+				threads = Integer.parseInt(arg);
+		}
+
+		// access the text files in order of name, so the first of two repeated passages is always the one that is kept
+		File[] textFiles = new File(training).listFiles((dir, name) -> name.endsWith(".txt"));
+		if (textFiles == null)
+		{
+			System.out.println("Folder \"" + training + "\" not found.");
+			return;
+		}
+		Arrays.sort(textFiles);
+
+		CorpusDeduplicator deduplicator = new CorpusDeduplicator(threads, kgram, window, minLength, exact);
+		long start = System.nanoTime();
+		try
+		{
+			deduplicator.find(textFiles);
+			File report = new File("dedup-report.tsv");
+			deduplicator.writeReport(report);
+			deduplicator.printSummary();
+			System.out.println("Every duplicated passage is listed in " + report + ".");
+
+			if (write)
+			{
+				File dedup = new File("txt-dedup");
+				dedup.mkdir();
+				deduplicator.write(dedup);
+				System.out.println("The text files without their duplicated passages are in \"" + dedup + ".\"");
+			}
+		}
+		finally
+		{
+			deduplicator.shutdown();
+		}
+		System.out.printf("Done in %.2f s%n", (System.nanoTime() - start) / 1e9);
+	}
+
+	/**
+	 * Creates a CorpusDeduplicator with its own pool of threads.
+	 *
+	 * @param threads		the number of files that are read and searched at the same time
+	 * @param kgram			the number of ticks with notes in each run that is hashed
+	 * @param window		the number of runs that each fingerprint is chosen from
+	 * @param minLength		the fewest ticks with notes that a duplicated passage can have (at least kgram + window - 1, so every
+	 * 						passage that is long enough is found)
+	 * @param exact			true to only match passages that give exactly the same text, false to also match passages with the same
+	 * 						notes and rhythm whose lengths are in the same buckets (see TextFingerprints)
+	 */
+	public CorpusDeduplicator(int threads, int kgram, int window, int minLength, boolean exact)
+	{
+		if (minLength < kgram + window - 1)
+			throw new IllegalArgumentException("The minimum length must be at least " + (kgram + window - 1) + " ticks");
+		this.threads = threads;
+		this.kgram = kgram;
+		this.window = window;
+		this.minLength = minLength;
+		this.exact = exact;
+		pool = new ForkJoinPool(threads);
+	}
+
+	/**
+	 * This method finds every passage of textFiles that repeats an earlier passage, either in an earlier file or earlier in the same
+	 * file, in three steps:
+	 * <br>
+	 * The fingerprints of each file are found by a TextFingerprints, with the files split between the threads.
+	 * <br>
+	 * The fingerprints are then split between the threads by their hash, and each thread goes through the files in order, keeping the
+	 * first place each of its fingerprints appeared in a LongIntHashMap. A fingerprint that has already appeared marks a place where
+	 * a file may repeat the place where the fingerprint first appeared. Since each fingerprint is only ever seen by one thread, the
+	 * threads do not share any of their maps.
+	 * <br>
+	 * Each of these places is then compared tick by tick with the place it may repeat, going back and forward for as long as the ticks
+	 * match, which gives the whole repeated passage (or nothing, if the fingerprints only matched by chance). A passage that repeats an
+	 * earlier passage of the same file is never allowed to overlap it, and passages shorter than the minimum length are left out.
+	 *
+	 * @param textFiles		the text files, in the order that decides which of two repeated passages is kept
+	 * @return the duplicated passages of each file, in order
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	public List<List<DuplicateSpan>> find(File[] textFiles) throws IOException, InterruptedException
+	{
+		files = textFiles.clone();
+		prints = new TextFingerprints[files.length];
+
+		// find the fingerprints of each file
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+		for (int i = 0; i < files.length; i++)
+		{
+			int file = i;
+			tasks.add(() ->
+			{
+				byte[] text = Files.readAllBytes(files[file].toPath());
+				prints[file] = new TextFingerprints(text, text.length, kgram, window, exact);
+				return null;
+			});
+		}
+		invokeAll(tasks);
+
+		// find the places that may repeat an earlier place, with each thread taking the fingerprints whose hash leaves it as a remainder
+		List<Callable<int[][]>> shards = new ArrayList<Callable<int[][]>>();
+		for (int s = 0; s < threads; s++)
+		{
+			int shard = s;
+			shards.add(() -> matches(shard));
+		}
+		List<int[][]> shardMatches = invokeAll(shards);
+
+		// follow each match to the whole repeated passage, with the files split between the threads
+		List<Callable<List<DuplicateSpan>>> passages = new ArrayList<Callable<List<DuplicateSpan>>>();
+		for (int i = 0; i < files.length; i++)
+		{
+			int file = i;
+			passages.add(() -> spans(file, shardMatches));
+		}
+		spans = invokeAll(passages);
+		return spans;
+	}
+
+	/**
+	 * This method writes every duplicated passage to a tab-separated file, with a row for each passage holding the file, the ticks it
+	 * starts and ends on, its number of ticks with notes and characters, and the file and ticks of the passage that it repeats.
+	 *
+	 * @param report		the file to write
+	 * @throws IOException
+	 */
+	public void writeReport(File report) throws IOException
+	{
+		try (PrintWriter out = new PrintWriter(report, "UTF-8"))
+		{
+			out.println("file\tstart_tick\tend_tick\tnote_ticks\tcharacters\tsource_file\tsource_start_tick\tsource_end_tick");
+			for (List<DuplicateSpan> fileSpans : spans)
+				for (DuplicateSpan span : fileSpans)
+					out.println(span.getFile().getName() + "\t" + span.getStartTick() + "\t" + span.getEndTick() + "\t" + span.getLength() + "\t"
+							+ span.getCharacters() + "\t" + span.getSourceFile().getName() + "\t" + span.getSourceStartTick() + "\t"
+							+ span.getSourceEndTick());
+		}
+	}
+
+	/**
+	 * This method prints how much of the text is duplicated, split into passages repeated within the same file and passages repeated
+	 * from another file, followed by the longest passages.
+	 */
+	public void printSummary()
+	{
+		long noteTicks = 0;
+		long characters = 0;
+		long[] spanCounts = new long[2];   // within the same file, and across files
+		long[] duplicatedTicks = new long[2];
+		long[] duplicatedCharacters = new long[2];
+		List<DuplicateSpan> all = new ArrayList<DuplicateSpan>();
+		for (int i = 0; i < files.length; i++)
+		{
+			noteTicks += prints[i].size();
+			characters += files[i].length();
+			for (DuplicateSpan span : spans.get(i))
+			{
+				int across = span.getSourceFile().equals(span.getFile()) ? 0 : 1;
+				spanCounts[across]++;
+				duplicatedTicks[across] += span.getLength();
+				duplicatedCharacters[across] += span.getCharacters();
+				all.add(span);
+			}
+		}
+
+		System.out.printf("%d files, %d ticks with notes, %d characters%n", files.length, noteTicks, characters);
+		System.out.printf("%d passages repeated within a file: %d ticks with notes (%.1f%%), %d characters (%.1f%%)%n", spanCounts[0],
+				duplicatedTicks[0], percent(duplicatedTicks[0], noteTicks), duplicatedCharacters[0], percent(duplicatedCharacters[0], characters));
+		System.out.printf("%d passages repeated from another file: %d ticks with notes (%.1f%%), %d characters (%.1f%%)%n", spanCounts[1],
+				duplicatedTicks[1], percent(duplicatedTicks[1], noteTicks), duplicatedCharacters[1], percent(duplicatedCharacters[1], characters));
+
+		Collections.sort(all, (a, b) -> Integer.compare(b.getLength(), a.getLength()));
+		for (DuplicateSpan span : all.subList(0, Math.min(all.size(), 10)))
+			System.out.println("  " + span);
+	}
+
+	/**
+	 * This method writes each text file to folder, with the same name, leaving out the characters of its duplicated passages. Since
+	 * each passage starts and ends on whole ticks, the text that is left is still valid.
+	 *
+	 * @param folder		the folder to write the text files to
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	public void write(File folder) throws IOException, InterruptedException
+	{
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+		for (int i = 0; i < files.length; i++)
+		{
+			int file = i;
+			tasks.add(() ->
+			{
+				byte[] text = Files.readAllBytes(files[file].toPath());
+				try (OutputStream out = new FileOutputStream(new File(folder, files[file].getName())))
+				{
+					int written = 0;
+					for (DuplicateSpan span : spans.get(file))
+					{
+						out.write(text, written, span.getStartCharacter() - written);
+						written = span.getEndCharacter();
+					}
+					out.write(text, written, text.length - written);
+				}
+				return null;
+			});
+		}
+		invokeAll(tasks);
+	}
+
+	public List<List<DuplicateSpan>> getSpans()
+	{
+		return spans;
+	}
+
+	public void shutdown()
+	{
+		pool.shutdown();
+	}
+
+	/**
+	 * This method goes through the fingerprints of every file in order, keeping only those whose hash leaves shard as a remainder, and
+	 * returns, for each file, the places that have a fingerprint that appeared before. Each place is 3 ints: the index of its first
+	 * tick, and the file and the index of the first tick where the fingerprint first appeared.
+	 */
+	private int[][] matches(int shard)
+	{
+		LongIntHashMap firstSeen = new LongIntHashMap(1 << 12);   // fingerprint -> index of the place it first appeared
+		int[] seenFiles = new int[1 << 12];
+		int[] seenPositions = new int[1 << 12];
+		int seenCount = 0;
+
+		int[][] matches = new int[files.length][];
+		for (int file = 0; file < files.length; file++)
+		{
+			TextFingerprints print = prints[file];
+			int[] fileMatches = new int[48];
+			int count = 0;
+			for (int i = 0; i < print.getFingerprintCount(); i++)
+			{
+				long hash = print.fingerprint(i);
+				if (Long.remainderUnsigned(hash, threads) != shard)
+					continue;
+
+				int seen = firstSeen.get(hash, -1);
+				if (seen < 0)
+				{
+					if (seenCount == seenFiles.length)
+					{
+						seenFiles = Arrays.copyOf(seenFiles, seenCount * 2);
+						seenPositions = Arrays.copyOf(seenPositions, seenCount * 2);
+					}
+					seenFiles[seenCount] = file;
+					seenPositions[seenCount] = print.position(i);
+					firstSeen.put(hash, seenCount++);
+				}
+				else
+				{
+					if (count + 3 > fileMatches.length)
+						fileMatches = Arrays.copyOf(fileMatches, fileMatches.length * 2);
+					fileMatches[count++] = print.position(i);
+					fileMatches[count++] = seenFiles[seen];
+					fileMatches[count++] = seenPositions[seen];
+				}
+			}
+			matches[file] = Arrays.copyOf(fileMatches, count);
+		}
+		return matches;
+	}
+
+	/**
+	 * This method gathers the places of file found by every shard, puts them in order, and follows each one to the whole passage that
+	 * it repeats. A place inside a passage that has already been found is skipped, so the passages do not overlap.
+	 */
+	private List<DuplicateSpan> spans(int file, List<int[][]> shardMatches)
+	{
+		// sort the places by their first tick, keeping the index of each place in the lower bits
+		int count = 0;
+		for (int[][] matches : shardMatches)
+			count += matches[file].length / 3;
+		long[] keys = new long[count];
+		int[] sources = new int[2 * count];
+		int k = 0;
+		for (int[][] matches : shardMatches)
+		{
+			int[] fileMatches = matches[file];
+			for (int m = 0; m < fileMatches.length; m += 3, k++)
+			{
+				keys[k] = (long) fileMatches[m] << 32 | k;
+				sources[2*k] = fileMatches[m+1];
+				sources[2*k+1] = fileMatches[m+2];
+			}
+		}
+		Arrays.sort(keys);
+
+		TextFingerprints print = prints[file];
+		List<DuplicateSpan> fileSpans = new ArrayList<DuplicateSpan>();
+		int covered = 0;   // the index of the first tick that is not in a passage found so far
+		for (long key : keys)
+		{
+			int position = (int) (key >>> 32);
+			int index = (int) key;
+			if (position < covered)
+				continue;
+
+			int sourceFile = sources[2*index];
+			int sourcePosition = sources[2*index+1];
+			TextFingerprints source = prints[sourceFile];
+
+			// go back while the ticks before both places match, but not into a passage that has already been found
+			int start = position;
+			int sourceStart = sourcePosition;
+			while (start > covered && sourceStart > 0 && print.hash(start-1) == source.hash(sourceStart-1))
+			{
+				start--;
+				sourceStart--;
+			}
+
+			// go forward while the ticks match, but in the same file, never past the start of the passage itself
+			int limit = print.size() - start;
+			limit = Math.min(limit, source.size() - sourceStart);
+			if (sourceFile == file)
+				limit = Math.min(limit, start - sourceStart);
+			int length = 0;
+			while (length < limit && print.hash(start + length) == source.hash(sourceStart + length))
+				length++;
+
+			if (length >= minLength)
+			{
+				fileSpans.add(new DuplicateSpan(files[file], print, start, start + length, files[sourceFile], source, sourceStart));
+				covered = start + length;
+			}
+		}
+		return fileSpans;
+	}
+
+	private <T> List<T> invokeAll(List<Callable<T>> tasks) throws IOException, InterruptedException
+	{
+		List<T> results = new ArrayList<T>();
+		try
+		{
+			for (Future<T> future : pool.invokeAll(tasks))
+				results.add(future.get());
+		}
+		catch (ExecutionException e)
+		{
+			if (e.getCause() instanceof IOException)
+				throw (IOException) e.getCause();
+			throw new IllegalStateException(e.getCause());
+		}
+		return results;
+	}
+
+	private static double percent(long part, long whole)
+	{
+		return whole > 0 ? 100.0 * part / whole : 0;
+	}
+
+	/**
+	 * Holds a passage of a text file that repeats an earlier passage, as a range of its ticks that have notes.
+	 */
+	public static class DuplicateSpan
+	{
+
+		private final File file;
+		private final TextFingerprints print;
+		private final int start;
+		private final int end;
+		private final File sourceFile;
+		private final TextFingerprints sourcePrint;
+		private final int sourceStart;
+
+		private DuplicateSpan(File file, TextFingerprints print, int start, int end, File sourceFile, TextFingerprints sourcePrint,
+				int sourceStart)
+		{
+			this.file = file;
+			this.print = print;
+			this.start = start;
+			this.end = end;
+			this.sourceFile = sourceFile;
+			this.sourcePrint = sourcePrint;
+			this.sourceStart = sourceStart;
+		}
+
+		public File getFile()
+		{
+			return file;
+		}
+
+		/**
+		 * @return the number of ticks with notes in the passage
+		 */
+		public int getLength()
+		{
+			return end - start;
+		}
+
+		/**
+		 * @return the tick of the first note of the passage
+		 */
+		public long getStartTick()
+		{
+			return print.tick(start);
+		}
+
+		/**
+		 * @return the tick after the last tick with notes of the passage
+		 */
+		public long getEndTick()
+		{
+			return print.tick(end - 1) + 1;
+		}
+
+		/**
+		 * @return the number of characters before the passage
+		 */
+		public int getStartCharacter()
+		{
+			return print.start(start);
+		}
+
+		/**
+		 * @return the number of characters up to the end of the passage
+		 */
+		public int getEndCharacter()
+		{
+			return print.end(end - 1);
+		}
+
+		public int getCharacters()
+		{
+			return getEndCharacter() - getStartCharacter();
+		}
+
+		/**
+		 * @return the file of the passage that this passage repeats (which may be the same file)
+		 */
+		public File getSourceFile()
+		{
+			return sourceFile;
+		}
+
+		public long getSourceStartTick()
+		{
+			return sourcePrint.tick(sourceStart);
+		}
+
+		public long getSourceEndTick()
+		{
+			return sourcePrint.tick(sourceStart + end - start - 1) + 1;
+		}
+
+		public String toString()
+		{
+			return String.format("%s ticks %d to %d (%d ticks with notes) repeat %s ticks %d to %d", file.getName(), getStartTick(),
+					getEndTick(), getLength(), sourceFile.getName(), getSourceStartTick(), getSourceEndTick());
+		}
+
+	}
+
+}
@@ -0,0 +1,172 @@
+/**
+ * Reads windows of whole ticks from a memory-mapped text file or corpus, using its TickIndex
+ */
+
+package composer;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+public class CorpusWindows implements Closeable
+{
+
+	private static final long SEGMENT_BYTES = 1L << 30;   // the text is mapped in parts of this size, since a buffer holds at most 2 GB
+	private static final int SEGMENT_ENTRIES = (int) (SEGMENT_BYTES / TickIndex.ENTRY_BYTES);   // the index is mapped in parts of whole entries
+
+	private final FileChannel channel;
+	private final ByteBuffer[] segments;
+	private final ByteBuffer[] index;   // the entries of the tick index, SEGMENT_ENTRIES in each part
+	private final int blockTicks;
+	private final int blockCount;
+
+	/**
+	 * Creates a CorpusWindows that maps textFile and its index into memory. Nothing is read from either file until a window is asked for,
+	 * so opening even a very large corpus is fast.
+	 *
+	 * @param textFile		a text file, or the corpus file written by a CorpusBuilder
+	 * @param indexFile		the TickIndex of textFile
+	 * @throws IOException if indexFile is not the index of textFile, or textFile has been changed since it was written
+	 */
+	public CorpusWindows(File textFile, File indexFile) throws IOException
+	{
+		try (FileChannel indexChannel = FileChannel.open(indexFile.toPath()))
+		{
+			long indexBytes = indexChannel.size();
+			ByteBuffer header = indexChannel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(indexBytes, TickIndex.HEADER_BYTES));
+			blockCount = TickIndex.readHeader(header, indexBytes, indexFile);
+			blockTicks = header.getInt(8);
+
+			// the index of a large corpus can be more than 2 GB, so it is mapped in parts, like the text
+			long entries = blockCount + 1L;
+			index = new ByteBuffer[(int) ((entries + SEGMENT_ENTRIES - 1) / SEGMENT_ENTRIES)];
+			for (int i = 0; i < index.length; i++)
+			{
+				long first = (long) i * SEGMENT_ENTRIES;
+				index[i] = indexChannel.map(FileChannel.MapMode.READ_ONLY, TickIndex.HEADER_BYTES + first * TickIndex.ENTRY_BYTES,
+						Math.min(SEGMENT_ENTRIES, entries - first) * TickIndex.ENTRY_BYTES);
+			}
+		}
+
+		if (TickIndex.isOutOfDate(indexFile, textFile))
+			throw new IOException(textFile + " has been changed since its index, " + indexFile + ", was written");
+
+		channel = FileChannel.open(textFile.toPath());
+		long length = channel.size();
+		if (offset(blockCount) != length)
+		{
+			channel.close();
+			throw new IOException(indexFile + " is the index of a text of " + offset(blockCount) + " characters, but " + textFile + " has "
+					+ length);
+		}
+
+		segments = new ByteBuffer[(int) ((length + SEGMENT_BYTES - 1) / SEGMENT_BYTES)];
+		for (int i = 0; i < segments.length; i++)
+		{
+			long start = i * SEGMENT_BYTES;
+			segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(SEGMENT_BYTES, length - start));
+		}
+	}
+
+	public int getBlockCount()
+	{
+		return blockCount;
+	}
+
+	public int getBlockTicks()
+	{
+		return blockTicks;
+	}
+
+	/**
+	 * @return the block that holds tick, if the text is a single piece (a corpus holds several pieces, which each start at tick 0)
+	 */
+	public int block(long tick)
+	{
+		return (int) Math.min(tick / blockTicks, blockCount);
+	}
+
+	/**
+	 * @return the tick at which block starts, measured from the start of its piece
+	 */
+	public long tick(int block)
+	{
+		return index[block / SEGMENT_ENTRIES].getLong(block % SEGMENT_ENTRIES * TickIndex.ENTRY_BYTES);
+	}
+
+	/**
+	 * @return the number of characters before block, or the length of the text if block is getBlockCount()
+	 */
+	public long offset(int block)
+	{
+		return index[block / SEGMENT_ENTRIES].getLong(block % SEGMENT_ENTRIES * TickIndex.ENTRY_BYTES + 8);
+	}
+
+	/**
+	 * @return the number of notes that start in block, so empty blocks can be skipped or windows can be chosen by how many notes they hold
+	 */
+	public int noteCount(int block)
+	{
+		return index[block / SEGMENT_ENTRIES].getInt(block % SEGMENT_ENTRIES * TickIndex.ENTRY_BYTES + 16);
+	}
+
+	/**
+	 * This method returns the text of blocks blocks, starting with block. The window starts and ends at the start of a tick, and is found
+	 * from the index in constant time, without reading any of the text before it. Blocks past the end of the text are left out.
+	 * <br>
+	 * NOTE:	in a corpus, a window can run from the end of one piece into the start of the next, in the same way the training windows do
+	 *
+	 * @param block		the first block of the window
+	 * @param blocks	the number of blocks in the window
+	 * @return the characters of the window, from position 0 to its limit (a view of the mapped text, or a copy if the window crosses
+	 * 			the boundary between two mapped parts)
+	 */
+	public ByteBuffer window(int block, int blocks)
+	{
+		if (block < 0 || block > blockCount || blocks < 0)
+			throw new IndexOutOfBoundsException("There is no window of " + blocks + " blocks at block " + block + " of " + blockCount);
+
+		long start = offset(block);
+		long end = offset((int) Math.min((long) block + blocks, blockCount));
+		if (start == end)
+			return ByteBuffer.allocate(0);
+		int segment = (int) (start / SEGMENT_BYTES);
+
+		// most windows are inside a single part of the text, so they can be read straight from it
+		if (end <= (segment + 1) * SEGMENT_BYTES)
+		{
+			ByteBuffer view = segments[segment].duplicate();
+			view.position((int) (start - segment * SEGMENT_BYTES));
+			view.limit((int) (end - segment * SEGMENT_BYTES));
+			return view.slice();
+		}
+
+		ByteBuffer copy = ByteBuffer.allocate((int) (end - start));
+		for (long position = start; position < end; )
+		{
+			ByteBuffer view = segments[(int) (position / SEGMENT_BYTES)].duplicate();
+			view.position((int) (position % SEGMENT_BYTES));
+			view.limit((int) Math.min(view.capacity(), view.position() + end - position));
+			position += view.remaining();
+			copy.put(view);
+		}
+		copy.flip();
+		return copy;
+	}
+
+	/**
+	 * This method returns the text of a window as a String, as described in window().
+	 */
+	public String text(int block, int blocks)
+	{
+		return StandardCharsets.US_ASCII.decode(window(block, blocks)).toString();
+	}
+
+	public void close() throws IOException
+	{
+		channel.close();
+	}
+
+}
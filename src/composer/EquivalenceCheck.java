@@ -0,0 +1,216 @@
+/**
+ * Checks that the parallel and streaming conversions write exactly the same files as the serial conversions they replace
+ */
+
+package composer;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MetaMessage;
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.Track;
+
+public class EquivalenceCheck
+{
+
+	private static final long SEED = 20260101;   // the seed of the synthetic files and of the chunk sizes, so every run checks the same cases
+	private static final int SYNTHETIC_FILES = 8;
+	private static final int[] CHUNK_EVENTS = {1, 17, 1024};   // always checked, along with one random size for each file
+
+	private final FileConverter converter = new FileConverter();
+	private final ForkJoinPool pool = new ForkJoinPool(4);   // more threads than chunks of some files, and fewer than others
+	private final Random random = new Random(SEED);
+	private final File folder;
+	private final List<String> problems = new ArrayList<String>();
+	private int comparisons = 0;
+
+	public static void main(String[] args) throws IOException, InvalidMidiDataException
+	{
+		// the folder of MIDI files to check can be given as an argument ("other/midi-files" by default); synthetic files with notes that
+		// overlap and notes that never end are checked as well
+		File midiFolder = new File(args.length > 0 ? args[0] : "other/midi-files");
+		File[] midiFiles = midiFolder.listFiles((dir, name) -> name.endsWith(".mid"));
+		if (midiFiles == null || midiFiles.length == 0)
+		{
+			System.out.println("There are no MIDI files in " + midiFolder + ".");
+			System.exit(1);
+		}
+		Arrays.sort(midiFiles);
+
+		// the synthetic files and the converted files are written to folders of their own, so no file is converted over its source
+		File folder = Files.createTempDirectory("equivalence").toFile();
+		File syntheticFolder = new File(folder, "midi");
+		File outputFolder = new File(folder, "out");
+		syntheticFolder.mkdir();
+		outputFolder.mkdir();
+		EquivalenceCheck check = new EquivalenceCheck(outputFolder);
+		long start = System.nanoTime();
+		try
+		{
+			for (File midiFile : midiFiles)
+				check.check(midiFile);
+
+			SyntheticMidi generator = new SyntheticMidi();
+			generator.setTracks(4);
+			generator.setNotesPerTrack(2000);
+			generator.setOverlapRate(0.3);
+			generator.setMissingOffRate(0.1);
+			for (int i = 0; i < SYNTHETIC_FILES; i++)
+			{
+				File midiFile = new File(syntheticFolder, String.format("synthetic_%d.mid", i));
+				generator.write(midiFile, SEED + i);
+				check.check(midiFile);
+			}
+		}
+		finally
+		{
+			check.pool.shutdown();
+			for (File subfolder : new File[] {syntheticFolder, outputFolder, folder})
+			{
+				for (File file : subfolder.listFiles())
+					file.delete();
+				subfolder.delete();
+			}
+		}
+
+		System.out.printf("%d files, %d comparisons in %.1f s%n", midiFiles.length + SYNTHETIC_FILES, check.comparisons,
+				(System.nanoTime() - start) / 1e9);
+		for (String problem : check.problems)
+			System.out.println(problem);
+		if (!check.problems.isEmpty())
+			System.exit(1);
+		System.out.println("Every conversion gave the same output.");
+	}
+
+	private EquivalenceCheck(File folder)
+	{
+		this.folder = folder;
+	}
+
+	/**
+	 * This method checks midiFile, with and without rest runs. The text written by a TickEncoder and a TextSink is compared with the
+	 * text written by a ChunkedTextEncoder (with several chunk sizes) and with the text of the notes of an SmfDecoder. The MIDI file
+	 * written from that text by the javax.sound.midi classes (as midiFile() used to write it) is compared with the ones written by
+	 * midiFile() and by an SmfSink.
+	 */
+	private void check(File midiFile) throws IOException, InvalidMidiDataException
+	{
+		String name = midiFile.getName();
+		NoteEventBuffer events = converter.sortedEvents(midiFile);
+		for (boolean restRuns : new boolean[] {false, true})
+		{
+			String mode = restRuns ? " with rest runs" : "";
+
+			// the text of the serial encoder, which the others are compared with
+			StringWriter serial = new StringWriter();
+			try (TextSink sink = new TextSink(serial, restRuns))
+			{
+				converter.encode(events, sink);
+			}
+			String text = serial.toString();
+
+			int[] chunkSizes = Arrays.copyOf(CHUNK_EVENTS, CHUNK_EVENTS.length + 1);
+			chunkSizes[CHUNK_EVENTS.length] = 1 + random.nextInt(Math.max(events.size(), 1));
+			for (int chunkEvents : chunkSizes)
+			{
+				StringWriter chunked = new StringWriter();
+				new ChunkedTextEncoder(pool, chunkEvents).encode(events, chunked, restRuns);
+				compare(text, chunked.toString(), name + mode + ": ChunkedTextEncoder with chunks of " + chunkEvents + " events");
+			}
+
+			StringWriter decoded = new StringWriter();
+			try (TextSink sink = new TextSink(decoded, restRuns))
+			{
+				SmfDecoder.decode(midiFile, new TickAdapter(sink));
+			}
+			compare(text, decoded.toString(), name + mode + ": SmfDecoder");
+
+			// write the text to a file, and convert it back to MIDI in each way
+			String baseName = name.substring(0, name.indexOf(".")) + (restRuns ? "-rest-runs" : "");
+			File textFile = new File(folder, baseName + ".txt");
+			Files.write(textFile.toPath(), text.getBytes("US-ASCII"));
+
+			File reference = new File(folder, baseName + "-sequence.mid");
+			writeSequence(textFile, restRuns, reference);
+			byte[] expected = Files.readAllBytes(reference.toPath());
+
+			File written = converter.midiFile(textFile, folder, restRuns);
+			compare(expected, Files.readAllBytes(written.toPath()), name + mode + ": midiFile()");
+
+			File streamed = new File(folder, baseName + "-sink.mid");
+			try (SmfSink sink = new SmfSink(streamed, baseName); FileChannel channel = FileChannel.open(textFile.toPath()))
+			{
+				new TextDecoder(sink, null, restRuns).decode(channel);
+			}
+			compare(expected, Files.readAllBytes(streamed.toPath()), name + mode + ": SmfSink");
+		}
+	}
+
+	/**
+	 * This method writes the MIDI file of textFile in the way midiFile() wrote it before it used an SmfWriter: a note on and a note off
+	 * event for each note in a Track, after the name of the track and the instrument, written by MidiSystem.write().
+	 */
+	private static void writeSequence(File textFile, boolean restRuns, File midiFile) throws IOException, InvalidMidiDataException
+	{
+		NoteEventBuffer events = new NoteEventBuffer();
+		TextDecoder decoder = new TextDecoder(new MidiEventSink(events), null, restRuns);
+		try (FileChannel channel = FileChannel.open(textFile.toPath()))
+		{
+			decoder.decode(channel);
+		}
+
+		Sequence sequence = new Sequence(Sequence.PPQ, SmfWriter.RESOLUTION);
+		Track track = sequence.createTrack();
+		for (int i = 0; i < events.size(); i++)
+			track.add(new MidiEvent(new ShortMessage(events.status(i), events.pitch(i), events.velocity(i)), events.tick(i)));
+
+		String name = midiFile.getName();
+		String trackName = name.substring(0, name.indexOf("-sequence"));
+		MetaMessage mm = new MetaMessage();
+		mm.setMessage(3, trackName.getBytes(), trackName.length());
+		track.add(new MidiEvent(mm, 0));
+		ShortMessage sm = new ShortMessage();
+		sm.setMessage(192, 0, 0);
+		track.add(new MidiEvent(sm, 0));
+		mm = new MetaMessage();
+		mm.setMessage(47, new byte[0], 0);
+		track.add(new MidiEvent(mm, decoder.getTick()));
+
+		MidiSystem.write(sequence, 1, midiFile);
+	}
+
+	private void compare(String expected, String actual, String description)
+	{
+		comparisons++;
+		if (!expected.equals(actual))
+			problems.add(description + " differs from the serial text at character " + firstDifference(expected.getBytes(),
+					actual.getBytes()));
+	}
+
+	private void compare(byte[] expected, byte[] actual, String description)
+	{
+		comparisons++;
+		if (!Arrays.equals(expected, actual))
+			problems.add(description + " differs from MidiSystem.write() at byte " + firstDifference(expected, actual));
+	}
+
+	private static int firstDifference(byte[] a, byte[] b)
+	{
+		int i = 0;
+		while (i < a.length && i < b.length && a[i] == b[i])
+			i++;
+		return i;
+	}
+
+}
@@ -4,21 +4,56 @@
 
 package composer;
 import java.util.ArrayList;
+import java.util.List;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.FileWriter;
-import java.io.FileReader;
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.FileNotFoundException;
-import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ForkJoinPool;
 import javax.sound.midi.*;
 
 public class FileConverter
 {
 	
+	public static final int FORMAT_VERSION = 1;   // increased whenever the same input starts being converted into different output
+	
+	// reused for every file, so their buffers are only allocated once
+	private final SmfReader smfReader = new SmfReader();
+	private final SmfWriter smfWriter = new SmfWriter();
+	private final NoteEventBuffer noteEvents = new NoteEventBuffer();
+	private final ConversionMetrics metrics = new ConversionMetrics();
+	private final ChunkedTextEncoder chunkedEncoder;   // null if every piece is encoded on the calling thread
+	
+	private long eventCount = 0;   // the number of note events in the most recently converted file (so each thread needs its own FileConverter)
+	
+	/**
+	 * Creates a FileConverter that encodes long pieces in chunks on the common ForkJoinPool.
+	 */
+	public FileConverter()
+	{
+		this(ForkJoinPool.commonPool());
+	}
+	
+	/**
+	 * Creates a FileConverter that encodes long pieces in chunks on pool. A FileConverter that runs on the threads of a ForkJoinPool
+	 * should be given that pool, so the chunks are encoded by the same threads as the files, and never more threads are busy than the
+	 * pool has.
+	 * 
+	 * @param pool		the pool that encodes the chunks, or null to encode every piece on the calling thread
+	 */
+	public FileConverter(ForkJoinPool pool)
+	{
+		chunkedEncoder = pool == null ? null : new ChunkedTextEncoder(pool, ChunkedTextEncoder.DEFAULT_CHUNK_EVENTS);
+	}
+	
 	/**
 	 * This method takes a MIDI file and outputs a text file in a readable format for machine learning programs. Each MIDI event from
 	 * the file that represents a note on event is extracted, and its note value and length are found and written to the text file.
+	 * The file is read by an SmfReader, which keeps only the note and tempo events.
+	 * The note events are passed to a TickEncoder in a single forward pass, which pairs each note with its end and writes the ticks
+	 * through a buffered TextSink.
 	 * 
 	 * @param midiFile		the MIDI file to be converted into a text file
 	 * @param folder		the parent folder of the returned file
@@ -27,95 +62,187 @@ public class FileConverter
 	 * @throws InvalidMidiDataException
 	 */
 	public File textFile(File midiFile, File folder) throws IOException, InvalidMidiDataException
+	{
+		return textFile(midiFile, folder, false);
+	}
+	
+	/**
+	 * This method takes a MIDI file and outputs a text file, in the same way as textFile(File, File). If restRuns is true, each run of
+	 * empty ticks is written as a single rest run (a tilde followed by the number of ticks, such as "~012 ") instead of a "~ " for every
+	 * tick, which makes the text much shorter, since most ticks are empty. midiFile() reads both forms, and creates the same MIDI file
+	 * from either of them.
+	 * 
+	 * @param midiFile		the MIDI file to be converted into a text file
+	 * @param folder		the parent folder of the returned file
+	 * @param restRuns		true to write runs of empty ticks as rest runs
+	 * @return a text file converted from a MIDI file
+	 * @throws IOException
+	 * @throws InvalidMidiDataException
+	 */
+	public File textFile(File midiFile, File folder, boolean restRuns) throws IOException, InvalidMidiDataException
+	{
+		return textFile(midiFile, folder, restRuns, 0);
+	}
+	
+	/**
+	 * This method takes a MIDI file and outputs a text file, in the same way as textFile(File, File, boolean). If indexTicks is more
+	 * than 0, a TickIndex of the text file is also written next to it (with the same name, but with the extension of an index), which
+	 * holds the character offset and the number of notes of every block of indexTicks ticks, so a CorpusWindows can read windows of whole
+	 * ticks from the text file without reading the text before them.
+	 * 
+	 * @param midiFile		the MIDI file to be converted into a text file
+	 * @param folder		the parent folder of the returned file
+	 * @param restRuns		true to write runs of empty ticks as rest runs
+	 * @param indexTicks	the number of ticks in each block of the index, or 0 to write no index
+	 * @return a text file converted from a MIDI file
+	 * @throws IOException
+	 * @throws InvalidMidiDataException
+	 */
+	public File textFile(File midiFile, File folder, boolean restRuns, int indexTicks) throws IOException, InvalidMidiDataException
 	{
 		// create a new file in folder with the same same as midiFile but with a text extension
 		String midiFileName = midiFile.getName();
 		File textFile = new File(folder, midiFileName.substring(0, midiFileName.indexOf(".")) + ".txt");
 		
-		// create a FileWriter for the file textFile
-		FileWriter fw = new FileWriter(textFile);
-		
-		Sequence sequence = MidiSystem.getSequence(midiFile);   // get sequence from midiFile
-		Track[] tracks = sequence.getTracks();   // get tracks from sequence
-		
-		// create list of activeTracks (tracks that contain notes)
-		ArrayList<Track> activeTracks = new ArrayList<Track>();
-		for (Track track : tracks)
-			if (noteFound(track))
-				activeTracks.add(track);
-		
-		Track tempoTrack = tempoTrack(sequence);   // find and set tempoTrack
-		ArrayList<int[]> tempos = tempos(tempoTrack);   // create list of tempos from tempoTrack
-		
-		Sequence newSequence = new Sequence(Sequence.PPQ, 48, 1);   // create new sequence with adjusted resolution
-		Track newTrack = changeRes(sortedTrack(activeTracks, newSequence, tempos), newSequence);   // create newTrack that is sorted and with the correct res
-		
-		// iterate through all ticks in newTrack
-		int index = 0;
-		for (int i = 0; i <= newTrack.ticks(); i++)
+		// pass the note events of midiFile to a TextSink, which buffers the text and writes it to textFile
+		metrics.begin(midiFile);
+		NoteEventBuffer events = sortedEvents(midiFile);
+		TickIndex index = null;
+		if (indexTicks == 0 && chunkedEncoder != null && chunkedEncoder.worthSplitting(events))
 		{
-			String tick = "";   // create an empty string for each tick
-			
-			// get the notes of the tick (if there are any)
-			while (index < newTrack.size() && newTrack.get(index).getTick() == i)
+			// a long piece is encoded in chunks on several threads, which gives the same text
+			metrics.startStage(ConversionMetrics.ENCODE);
+			try (FileWriter writer = new FileWriter(textFile))
+			{
+				chunkedEncoder.encode(events, writer, restRuns);
+				metrics.endStage();
+				metrics.startStage(ConversionMetrics.WRITE);
+			}
+			metrics.addNotesEmitted(chunkedEncoder.getNoteCount());
+			metrics.addTicksEmitted(chunkedEncoder.getTickCount());
+			eventCount = events.size();
+		}
+		else
+		{
+			try (TextSink sink = new TextSink(new FileWriter(textFile), restRuns))
 			{
-				if (newTrack.get(index).getMessage().getMessage()[2] != 0)   // only get note if velocity is not 0
+				if (indexTicks > 0)
 				{
-					MidiEvent event = newTrack.get(index);
-					MidiMessage message = event.getMessage();
-					
-					byte[] data = message.getMessage();
-					int note = data[1]-12;   // get note (note: subtract octave)
-					
-					long length = 1;
-					int endIndex = index + 1;
-					boolean noteEndFound = false;
-					while (endIndex < newTrack.size() && !noteEndFound)   // find the corresponding note end (the same note with velocity 0)
-					{
-						if (newTrack.get(endIndex).getMessage().getMessage()[1]-12 == note
-							&& newTrack.get(endIndex).getMessage().getMessage()[2] == 0)
-						{
-							length = newTrack.get(endIndex).getTick() - event.getTick();   // find the length of the note by subtracting the end index from the start index
-							noteEndFound = true;
-						}
-						endIndex++;
-					}
-					
-					char noteChar = (char) (note + 13);   // convert note to a character
-					String lengthStr = "" + length;   // convert length to a String
-					while (lengthStr.length() < 3)   // pad length with 0s to make it 3 characters
-						lengthStr = "0" + lengthStr;
-				
-					tick += noteChar + lengthStr;   // add the note and length Strings to tick
-					
-					// check if the note is the last note (that is on) in the tick by checking the rest of the events in the tick (if there are any)
-					int nextIndex = index + 1;
-					boolean tickEnd = true;
-					while (nextIndex < newTrack.size() && newTrack.get(index).getTick() == newTrack.get(nextIndex).getTick())
-					{
-						if (newTrack.get(nextIndex).getMessage().getMessage()[2] != 0)
-							tickEnd = false;
-						nextIndex++;
-					}
-					if (!tickEnd)   // add an exclamation mark if the note is not the last note of the tick
-						tick += "!";
+					// record where each block starts as the ticks are written
+					TickIndexer indexer = new TickIndexer(sink, indexTicks);
+					encode(events, indexer);
+					index = indexer.finish();
 				}
-				index++;
+				else
+					encode(events, sink);
+				metrics.startStage(ConversionMetrics.WRITE);   // closing sink writes the rest of the text
 			}
-			
-			// if there are no notes for the tick, add a tilde
-			if (tick.equals(""))
-				tick = "~";
-			
-			// write the tick String to the text file
-			fw.write(tick + " ");
+			if (index != null)
+				index.write(TickIndex.indexFile(textFile));
 		}
-		
-		fw.close();
+		metrics.endStage();
+		metrics.finish(textFile);
 		
 		return textFile;
 	}
 	
+	/**
+	 * This method takes a MIDI file and outputs a token file, which holds the same music as the text file created by textFile() in the
+	 * binary format described by TokenVocabulary. The notes are found the same way as in textFile(), but are written through a
+	 * TokenSink instead of a TextSink.
+	 * 
+	 * @param midiFile		the MIDI file to be converted into a token file
+	 * @param folder		the parent folder of the returned file
+	 * @return a token file converted from a MIDI file
+	 * @throws IOException
+	 * @throws InvalidMidiDataException
+	 */
+	public File tokenFile(File midiFile, File folder) throws IOException, InvalidMidiDataException
+	{
+		// create a new file in folder with the same name as midiFile but with a token extension
+		String midiFileName = midiFile.getName();
+		File tokenFile = new File(folder, midiFileName.substring(0, midiFileName.indexOf(".")) + ".tok");
+		
+		metrics.begin(midiFile);
+		try (TokenSink sink = new TokenSink(new FileOutputStream(tokenFile)))
+		{
+			encode(midiFile, sink);
+			metrics.startStage(ConversionMetrics.WRITE);   // closing sink writes the rest of the tokens
+		}
+		metrics.endStage();
+		metrics.finish(tokenFile);
+		
+		return tokenFile;
+	}
+	
+	/**
+	 * This method reads the note and tempo events of a MIDI file with the SmfReader and passes them to a TickEncoder in a single forward
+	 * pass, which pairs each note with its end and passes the ticks to sink. These are the ticks that textFile() writes as text.
+	 * 
+	 * @param midiFile		the MIDI file to read
+	 * @param sink			the TickSink that receives the ticks
+	 * @throws IOException
+	 * @throws InvalidMidiDataException
+	 */
+	public void encode(File midiFile, TickSink sink) throws IOException, InvalidMidiDataException
+	{
+		encode(sortedEvents(midiFile), sink);
+	}
+	
+	/**
+	 * This method reads the note and tempo events of a MIDI file with the SmfReader, and returns its note events sorted by sortedTrack().
+	 * These are the events that textFile() encodes.
+	 * 
+	 * @param midiFile		the MIDI file to read
+	 * @return the sorted note events of midiFile
+	 * @throws IOException
+	 * @throws InvalidMidiDataException
+	 */
+	public NoteEventBuffer sortedEvents(File midiFile) throws IOException, InvalidMidiDataException
+	{
+		// read only the note and tempo events of midiFile, straight from its bytes
+		metrics.startStage(ConversionMetrics.READ);
+		smfReader.read(midiFile);
+		List<NoteEventBuffer> activeTracks = smfReader.getActiveTracks();   // the note events of the tracks that contain notes
+		TempoMap tempoMap = smfReader.getTempoMap();   // create a map of the tempos and resolution of midiFile
+		metrics.endStage();
+		for (NoteEventBuffer track : activeTracks)
+			metrics.addEventsRead(track.size());
+		
+		metrics.startStage(ConversionMetrics.SORT);
+		NoteEventBuffer events = sortedTrack(activeTracks, tempoMap);   // create events that are sorted and with the correct res
+		metrics.endStage();
+		return events;
+	}
+	
+	/**
+	 * This method passes sorted note events to a TickEncoder in a single forward pass, which pairs each note with its end and passes
+	 * the ticks to sink.
+	 * <br>
+	 * PRECONDITION:	events are sorted as returned by sortedTrack()
+	 * 
+	 * @param events		the sorted note events of a piece, such as a variant from a NoteAugmenter
+	 * @param sink			the TickSink that receives the ticks
+	 * @throws IOException
+	 */
+	public void encode(NoteEventBuffer events, TickSink sink) throws IOException
+	{
+		metrics.startStage(ConversionMetrics.ENCODE);
+		TickEncoder encoder = new TickEncoder(metrics.counting(sink));
+		for (int i = 0; i < events.size(); i++)
+		{
+			int note = events.pitch(i)-12;   // get note (note: subtract octave)
+			
+			if (events.velocity(i) != 0)   // a velocity of 0 marks the end of a note
+				encoder.noteOn(events.tick(i), note);
+			else
+				encoder.noteOff(events.tick(i), note);
+		}
+		encoder.end(events.lastTick());
+		metrics.endStage();
+		eventCount = events.size();
+	}
+	
 	/**
 	 * This method loops through all the MIDI events within the input track, and returns true if a note is
 	 * found. A MIDI event represents a note that is on if the message status byte is 0x90, or 144. These MIDI events
@@ -134,17 +261,10 @@ public class FileConverter
 	}
 	
 	/**
-	 * This method takes in an array of active tracks and outputs a track that contains only note on MIDI events.
-	 * The resultant track has it events arranged in chronological order based on tick value. If there is more than one
-	 * event per tick, the events are arranged in order of increasing note value. The tick values of the track that this
-	 * method returns have also been adjusted according to the tempos, which are input as an ArrayList. Instead of having
-	 * MIDI meta events to change the tempo throughout the track, the resultant track has a tempo of 500,000 microseconds per
-	 * quarter note (equivalent to 120 bpm) and the tick length of each note is compressed or stretched accordingly.
-	 * <br>
-	 * This method uses recursion to sort the tracks, since there is a varying number of active tracks for each file
-	 * (typically 2 or 3, though). If the number of active tracks is not 1 or 2, tracks is split in half and each track array is
-	 * passed through the method, until ultimately, an array of two tracks is being sorted. When two tracks are being sorted, the
-	 * program simultaneously iterates through both tracks, adding the event with the lower tick value to the track.
+	 * This method takes in an array of active tracks and outputs a track that contains only note on MIDI events, as described in
+	 * sortedTrack(List, TempoMap). The events of each track are copied into a NoteEventBuffer, sorted, and then added to a new
+	 * track in sequence. The returned track keeps the resolution of tracks, and the tick length of each note is compressed or
+	 * stretched to a tempo of 120 bpm.
 	 * <br>
 	 * PRECONDITION:	each track in tracks has its events arranged in chronological order based on tick value
 	 * 
@@ -153,133 +273,62 @@ public class FileConverter
 	 * @param tempos		an array holding the tempos of the original sequence (in microseconds per quarter note)
 	 * 							and the MIDI tick at which the tempo change occurs
 	 * @return a sorted track
+	 * @throws InvalidMidiDataException
 	 */
-	public static Track sortedTrack(ArrayList<Track> tracks, Sequence sequence, ArrayList<int[]> tempos)
-	{	
-		if (tracks.size() == 1 || tracks.size() == 2)
+	public static Track sortedTrack(ArrayList<Track> tracks, Sequence sequence, ArrayList<int[]> tempos) throws InvalidMidiDataException
+	{
+		ArrayList<NoteEventBuffer> buffers = new ArrayList<NoteEventBuffer>();
+		for (Track track : tracks)
+			buffers.add(NoteEventBuffer.of(track));
+		
+		NoteEventBuffer events = sortedTrack(buffers, TempoMap.of(tempos, sequence.getResolution()));
+		
+		Track newTrack = sequence.createTrack();
+		for (int i = 0; i < events.size(); i++)
+			newTrack.add(new MidiEvent(new ShortMessage(events.status(i), events.pitch(i), events.velocity(i)), events.tick(i)));
+		
+		return newTrack;
+	}
+	
+	/**
+	 * This method takes in an array of active tracks and outputs the note on events of all of them in a single buffer.
+	 * The resultant buffer has its events arranged in chronological order based on tick value. If there is more than one
+	 * event per tick, the events are arranged in order of increasing note value. The tick values of the buffer that this
+	 * method returns have also been converted by tempoMap, so instead of having MIDI meta events to change the tempo throughout
+	 * the track, the resultant events have a tempo of 500,000 microseconds per quarter note (equivalent to 120 bpm) and the
+	 * resolution of tempoMap's target (48 ticks per quarter note for the text files). The tick length of each note is
+	 * compressed or stretched accordingly.
+	 * <br>
+	 * Since there is a varying number of active tracks for each file, all the tracks are merged at once by a TrackMerger, which
+	 * keeps the tracks in a priority queue ordered by the tick and note value of their next event. The ticks are then converted
+	 * in a single pass, measuring each tick from the first note so that the first note is played at tick 0.
+	 * <br>
+	 * PRECONDITION:	each buffer in tracks has its events arranged in chronological order based on tick value
+	 * 
+	 * @param tracks		the note events of the active tracks that are to be combined
+	 * @param tempoMap		the tempos and resolution of the original sequence
+	 * @return a buffer holding the sorted note on events
+	 */
+	public static NoteEventBuffer sortedTrack(List<NoteEventBuffer> tracks, TempoMap tempoMap)
+	{
+		NoteEventBuffer events = TrackMerger.merge(tracks);   // merge the tracks, ordering the notes with the same tick in ascending order
+		
+		NoteEventBuffer newEvents = new NoteEventBuffer(events.size());
+		
+		long firstTick = -1;   // the tick of the first note, which becomes tick 0
+		for (int i = 0; i < events.size(); i++)
 		{
-			ArrayList<MidiEvent> events = new ArrayList<MidiEvent>();
-			Track newTrack = sequence.createTrack();
-			
-			// if tracks size is 1, all events in the track are added to events
-			if (tracks.size() == 1)
-			{
-				for (int i = 0; i < tracks.get(0).size(); i++)
-						events.add(tracks.get(0).get(i));
-			}
-			// if tracks size is 2, the events from both tracks are added by looking to see which tick is lower
-			else
+			// add the MIDI note events to the buffer (must have message status 144, and message note between 21 and 108)
+			if (events.status(i) == 144 && events.pitch(i)-12 >= 21 && events.pitch(i)-12 <= 108)
 			{
-				Track track1 = tracks.get(0);
-				Track track2 = tracks.get(1);
+				if (firstTick < 0)
+					firstTick = events.tick(i);
 				
-				int i1 = 0;   // track 1 index
-				int i2 = 0;   // track 2 index
-				
-				// adds the event with the lowest tick
-				while (i1 < track1.size() && i2 < track2.size())
-				{
-					if (track1.get(i1).getTick() <= track2.get(i2).getTick())
-					{
-						events.add(track1.get(i1));
-						i1++;
-					}
-					else
-					{
-						events.add(track2.get(i2));
-						i2++;
-					}
-				}
-				
-				// adds remaining elements in track1 or track2 (if there are any)
-				while (i1 < track1.size())
-				{
-					events.add(track1.get(i1));
-					i1++;
-				}
-				while (i2 < track2.size())
-				{
-					events.add(track2.get(i2));
-					i2++;
-				}
-			}
-			
-			// orders notes with the same tick in ascending order
-			int index = 0;
-			while (index < events.size())
-			{
-				// firstIndex is the index of the first note of the tick, index is one more than the index of the last note of the tick
-				int firstIndex = index;
-				
-				// find the last index
-				while (index < events.size() && events.get(firstIndex).getTick() == events.get(index).getTick())
-					index++;
-				
-				// insertion sort used to organize all events between firstIndex and index by note
-				for (int j = firstIndex + 1; j < index; j++)
-				{
-					MidiEvent temp = events.get(j);
-					int i = j;
-					while (i > firstIndex && temp.getMessage().getMessage()[1] < events.get(i-1).getMessage().getMessage()[1])
-					{
-						events.set(i, events.get(i-1));
-						i--;
-					}
-					events.set(i, temp);
-				}
-			}
-			
-			int tempo = 500000;   // default tempo (120 bpm)
-			int temposIndex = 0;
-			long tick = 0;
-			long prevTick = 0;
-			long prevTickMoved = prevTick;
-			double tickAdjustment;
-			
-			long shift = -1;   // shift is the number of ticks to shift the notes, so that the first note is played at tick 0
-			for (MidiEvent event : events)
-			{
-				// get the tempo for the current tick (i.e. the most recent tempo)
-				while (temposIndex < tempos.size() && tempos.get(temposIndex)[1] <= event.getTick())
-				{
-					tempo = tempos.get(temposIndex)[0];
-					temposIndex++;
-				}
-				
-				// add the MIDI note events to the track (must have message length 3, message status 144, and message note between 21 and 108)
-				if (event.getMessage().getLength() == 3 && event.getMessage().getStatus() == 144
-					&& event.getMessage().getMessage()[1]-12 >= 21 && event.getMessage().getMessage()[1]-12 <= 108)
-				{
-					
-					tickAdjustment = tempo / 500000.0;   // calculate tick adjustment factor relative to 120 bpm
-					
-					tick = (long)((event.getTick() - prevTick) * tickAdjustment) + prevTickMoved;
-					
-					if (shift < 0)   // set shift if it has not been set
-						shift = tick;
-					
-					newTrack.add(new MidiEvent(event.getMessage(), tick - shift));
-					
-					prevTick = event.getTick();
-					prevTickMoved = tick;
-				}
+				newEvents.add(tempoMap.targetTick(events.tick(i), firstTick), events.status(i), events.pitch(i), events.velocity(i));
 			}
-			
-			return newTrack;
-		}
-		else
-		{
-			ArrayList<Track> front = new ArrayList<Track>(tracks.subList(0, tracks.size()/2));   // contains the tracks from the first half of tracks
-			ArrayList<Track> back = new ArrayList<Track>(tracks.subList(tracks.size()/2, tracks.size()));   // contains the tracks from the last half of tracks
-			
-			// newTracks is an array that contains two tracks, the sorted tracks for front and back
-			ArrayList<Track> newTracks = new ArrayList<Track>();
-			newTracks.add(sortedTrack(front, sequence, tempos));
-			newTracks.add(sortedTrack(back, sequence, tempos));
-			
-			// newTracks is sorted
-			return sortedTrack(newTracks, sequence, tempos);
 		}
+		
+		return newEvents;
 	}
 
 	/**
@@ -288,6 +337,8 @@ public class FileConverter
 	 * by dividing the tick value of every event in track by 10.
 	 * <br>
 	 * PRECONDITION:	track has a resolution of 480 ticks per quarter notes
+	 * <br>
+	 * NOTE:	textFile() does not use this method, since its TempoMap converts the ticks of any resolution directly.
 	 * 
 	 * @param track			the track to change the resolution of
 	 * @param sequence		the sequence in which the returned track is to be created
@@ -332,8 +383,9 @@ public class FileConverter
 	/**
 	 * This method generates a list of tempos (in microseconds per quarter notes), and the tick at which they occur. The method
 	 * loops through all the MIDI events in track, and if the event is found to be a meta tempo event, the tempo is extracted.
-	 * The tempo is stored within the meta message as a series of 3 bytes, which is converted into an integer using the wrap() function
-	 * of the ByteBuffer class.
+	 * The tempo is stored within the meta message as a series of 3 bytes, which are shifted into an integer.
+	 * <br>
+	 * NOTE:	textFile() uses a TempoMap instead, which reads the tempo events of every track and does not round the tempos.
 	 * 
 	 * @param track		the track containing all the MIDI tempo events
 	 * @return an ArrayList storing int arrays of length 2, holding the tempo and the tick at which this tempo is set
@@ -355,10 +407,9 @@ public class FileConverter
 				
 				if (meta.getType() == 81)   // tempo events have a meta message type of 81
 				{
-					// bytes is equal to the data from the tempo meta message
-					byte[] bytes = {0, (byte)(meta.getData()[0]), (byte)(meta.getData()[1]), (byte)(meta.getData()[2])};
-					ByteBuffer bb = ByteBuffer.wrap(bytes);
-					int tempo = bb.getInt();   // convert bytes to an int through ByteBuffer
+					// convert the 3 bytes of data from the tempo meta message to an int
+					byte[] data = meta.getData();
+					int tempo = (data[0] & 0xFF) << 16 | (data[1] & 0xFF) << 8 | (data[2] & 0xFF);
 					tempo = (int)(Math.round(tempo/10000.0) * 10000);  // rounds tempo to the nearest ten thousand
 					
 					// unless the tempo would be the first tempo in the list, the tempo is only added if it is different from the previous tempo
@@ -380,8 +431,9 @@ public class FileConverter
 	
 	/**
 	 * This method takes a text file in the format as created by the textFile() method and outputs a MIDI file, with the same name
-	 * but a different extension. The text in the text file is read using a BufferedReader and is examined character by character.
-	 * MIDI events are added to the track of the MIDI file sequence whenever a note is found. The title of the MIDI file is also set,
+	 * but a different extension. The whole text file is read in large blocks and passed to a TextDecoder, which validates the text
+	 * and finds the notes in a single pass (without building a String of the text). A note on and a note off event are stored for
+	 * each note, and an SmfWriter sorts them once and writes them straight to the MIDI file. The title of the MIDI file is also set,
 	 * the instrument is set to piano, and the end of the track is indicated.
 	 * 
 	 * @param textFile		the text file to be converted into a MIDI file
@@ -392,154 +444,205 @@ public class FileConverter
 	 * @throws InvalidMidiDataException
 	 */
 	public File midiFile(File textFile, File folder) throws IOException, FileNotFoundException, InvalidMidiDataException
+	{
+		return midiFile(textFile, folder, false);
+	}
+	
+	/**
+	 * This method takes a text file and outputs a MIDI file, in the same way as midiFile(File, File). If restRuns is true, the text is
+	 * read as written by textFile(File, File, true), with each rest run moving on by its number of ticks, so the MIDI file is the same
+	 * as the one created from the text written without rest runs.
+	 * 
+	 * @param textFile		the text file to be converted into a MIDI file
+	 * @param folder		the parent folder of the returned file
+	 * @param restRuns		true to read rest runs
+	 * @return a MIDI file converted from a text file
+	 * @throws IOException
+	 * @throws FileNotFoundException
+	 * @throws InvalidMidiDataException
+	 */
+	public File midiFile(File textFile, File folder, boolean restRuns) throws IOException, FileNotFoundException, InvalidMidiDataException
 	{
 		// create a new file in folder with the same same as textFile but with a MIDI extension
 		String textFileName = textFile.getName();
 		File midiFile = new File(folder, textFileName.substring(0, textFileName.indexOf(".")) + ".mid");
 		
-		BufferedReader br = new BufferedReader(new FileReader(textFile));   // create a BufferedReader for the file textFile
-		String text = validString(br.readLine());   // create a valid String storing the text in textFile  
-		
-		// create new sequence and track within the sequence
-		Sequence sequence = new Sequence(Sequence.PPQ, 48);
-		Track track = sequence.createTrack();
-		
-		long tick = 0;
-		char ch;
-		
-		// iterate for each character in text
-		for (int i = 0; i < text.length(); i++)
+		// decode the text in textFile, adding a note on event (velocity 50) and a note off event (velocity 0) for each note
+		metrics.begin(textFile);
+		metrics.startStage(ConversionMetrics.DECODE);
+		NoteEventBuffer events = noteEvents;
+		events.clear();
+		TextDecoder decoder = new TextDecoder(new MidiEventSink(events), null, restRuns);
+		try (FileChannel channel = FileChannel.open(textFile.toPath()))
 		{
-			ch = text.charAt(i);
-			
-			// if ch is a space, increment tick
-			if (ch == ' ')
-			{
-				tick++;
-			}
-			// if ch is not an exclamation mark or tilde, ch represents a note
-			else if (ch != '!' && ch != '~')
-			{
-				int note = ch - 13;
-				String lengthStr = text.substring(i+1, i+4);   // get the next 3 characters (numbers)
-				int length = Integer.parseInt(lengthStr);   // parse to get int
-				
-				// add note on
-				ShortMessage smOn = new ShortMessage();
-				smOn.setMessage(144, note, 50);
-				MidiEvent eventOn = new MidiEvent(smOn, tick);
-				track.add(eventOn);
-				
-				// add note off
-				ShortMessage smOff = new ShortMessage();
-				smOff.setMessage(144, note, 0);
-				MidiEvent eventOff = new MidiEvent(smOff, tick + length);
-				track.add(eventOff);
-				
-				i += 3;   // increment i by 3 (to ignore length of note)
-			}
+			decoder.decode(channel);
 		}
+		metrics.endStage();
+		eventCount = events.size();
+		metrics.addEventsRead(eventCount);
+		metrics.addNotesEmitted(eventCount / 2);   // a note on and a note off event for each note
+		metrics.addTicksEmitted(decoder.getTick());
 		
-		// set track name
-		MetaMessage mm = new MetaMessage();
+		// write the events to midiFile, with the track name, the instrument set to piano, and the end of the track at the last tick
+		metrics.startStage(ConversionMetrics.WRITE);
 		String trackName = textFileName.substring(0, textFileName.indexOf("."));
-		mm.setMessage(3, trackName.getBytes(), trackName.length());
-		MidiEvent me = new MidiEvent(mm, 0);
-		track.add(me);
-		
-		// set instrument to piano
-		ShortMessage sm = new ShortMessage();
-		sm.setMessage(192, 0, 0);
-		me = new MidiEvent(sm, 0);
-		track.add(me);
-		
-		// set end of track
-		mm = new MetaMessage();
-		byte[] bt = {};
-		mm.setMessage(47, bt, 0);
-		me = new MidiEvent(mm, tick);
-		track.add(me);
-		
-		// write the sequence to midiFile
-		MidiSystem.write(sequence, 1, midiFile);
-		
-		br.close();
+		smfWriter.write(events, trackName, decoder.getTick(), midiFile);
+		metrics.endStage();
+		metrics.finish(midiFile);
 		
 		return midiFile;
 	}
 	
 	/**
-	 * This method takes in the String of notes generated by the computer as an input, and modifies the String (if needed) so that the
-	 * notation is correct. All invalid characters or series or characters are removed from the String.
+	 * This method takes a text file in the format as created by the textFile() method and outputs a token file with the same music,
+	 * in the binary format described by TokenVocabulary. The text is validated by a TextDecoder in the same way as in midiFile(), so
+	 * any invalid characters are left out.
 	 * 
-	 * @param str	the String containing all the text extracted from the text file (that is to be converted into a MIDI file)
-	 * @return str with all invalid characters removed
+	 * @param textFile		the text file to be converted into a token file
+	 * @param folder		the parent folder of the returned file
+	 * @return a token file converted from a text file
+	 * @throws IOException
 	 */
-	public static String validString(String str)
+	public File textToTokenFile(File textFile, File folder) throws IOException
 	{
-		String newStr = "";
-		
-		char ch;
-		int expect = -1;   // -1 for anything, 0 for space or exclamation mark, 1 for space, 2 for tilde or note, 3 for note
-		int result;   // -1 for nothing, 0 for space, 1 for exclamation mark, 2 for tilde, 3 for note
+		// create a new file in folder with the same name as textFile but with a token extension
+		String textFileName = textFile.getName();
+		File tokenFile = new File(folder, textFileName.substring(0, textFileName.indexOf(".")) + ".tok");
 		
-		// iterate through all the characters in str
-		for (int i = 0; i < str.length(); i++)
+		final TokenSink tokenSink = new TokenSink(new FileOutputStream(tokenFile));
+		eventCount = 0;
+		TickSink sink = new TickSink()
 		{
-			ch = str.charAt(i);
-			String addStr = "" + ch;   // set addStr to current character
-			
-			// set the result based on the character read
-			// if a character that is not ' ', '!', or '~' is found, the next 3 characters are checked to see if they are digits (to see if a valid note has been found)
-			// otherwise, the result is set to nothing (-1)
-			if (ch == ' ')
+			public void note(int note, long length) throws IOException
 			{
-				result = 0;
+				tokenSink.note(note, length);
+				eventCount += 2;   // a note on and a note off event
 			}
-			else if (ch == '!')
+			
+			public void endTick() throws IOException
 			{
-				result = 1;
+				tokenSink.endTick();
 			}
-			else if (ch == '~')
+			
+			public void rests(long count) throws IOException
 			{
-				result = 2;
+				tokenSink.rests(count);
 			}
-			else if (i + 3 < str.length() && ch >= 34 && ch <= 121 && Character.isDigit(str.charAt(i+1))
-					   && Character.isDigit(str.charAt(i+2)) && Character.isDigit(str.charAt(i+3)))
+		};
+		metrics.begin(textFile);
+		metrics.startStage(ConversionMetrics.DECODE);
+		TextDecoder decoder = new TextDecoder(new TickAdapter(metrics.counting(sink)));
+		try (FileChannel channel = FileChannel.open(textFile.toPath()))
+		{
+			decoder.decode(channel);
+		}
+		finally
+		{
+			tokenSink.close();
+		}
+		metrics.endStage();
+		metrics.addEventsRead(eventCount);
+		metrics.finish(tokenFile);
+		
+		return tokenFile;
+	}
+	
+	/**
+	 * This method takes a token file in the format as created by the tokenFile() method and outputs a text file with the same music,
+	 * in the format as created by the textFile() method. The token file is memory-mapped and decoded by a TokenDecoder, which passes
+	 * the ticks to a TextSink.
+	 * 
+	 * @param tokenFile		the token file to be converted into a text file
+	 * @param folder		the parent folder of the returned file
+	 * @return a text file converted from a token file
+	 * @throws IOException
+	 */
+	public File tokenToTextFile(File tokenFile, File folder) throws IOException
+	{
+		// create a new file in folder with the same name as tokenFile but with a text extension
+		String tokenFileName = tokenFile.getName();
+		File textFile = new File(folder, tokenFileName.substring(0, tokenFileName.indexOf(".")) + ".txt");
+		
+		final TextSink textSink = new TextSink(new FileWriter(textFile));
+		eventCount = 0;
+		TickSink sink = new TickSink()
+		{
+			public void note(int note, long length) throws IOException
 			{
-				result = 3;
-				addStr += "" + str.charAt(i+1) + str.charAt(i+2) + str.charAt(i+3);   // add entire note to addStr
-				i += 3;   // skip over next 3 characters
+				textSink.note(note, length);
+				eventCount += 2;   // a note on and a note off event
 			}
-			else
+			
+			public void endTick() throws IOException
 			{
-				result = -1;
+				textSink.endTick();
 			}
 			
-			// add the character or series of characters if they line up with what was expected
-			if (expect == -1 && result != -1 ||
-				 expect == 0 && (result == 0 || result == 1) ||
-				 expect == 1 && result == 0 ||
-				 expect == 2 &&  (result == 2 || result == 3) ||
-				 expect == 3 && result == 3)
+			public void rests(long count) throws IOException
 			{
-				newStr += addStr;
+				textSink.rests(count);
 			}
-			
-			// change the expectation, based on the result
-			if (result == 0)   // if the result was a space, a note or tilde is expected
-				expect = 2;
-			else if (result == 1)   // if the result was a tilde, a note is expected
-				expect = 3;
-			else if (result == 2)   // if the result was a tilde, a space is expected
-				expect = 1;
-			else if (result == 3)   // if the result was a note, a space or exclamation mark is expected
-				expect = 0;
-			else   // if the result was nothing, anything is expected
-				expect = -1;
+		};
+		metrics.begin(tokenFile);
+		metrics.startStage(ConversionMetrics.DECODE);
+		try
+		{
+			TokenDecoder.decode(tokenFile, metrics.counting(sink));
+		}
+		finally
+		{
+			textSink.close();
+		}
+		metrics.endStage();
+		metrics.addEventsRead(eventCount);
+		metrics.finish(textFile);
+		
+		return textFile;
+	}
+	
+	/**
+	 * @return the number of note events that were read or written by the most recent conversion
+	 */
+	public long getEventCount()
+	{
+		return eventCount;
+	}
+	
+	/**
+	 * This method returns the time taken by each stage of the most recent conversion, and what it read and wrote. The same
+	 * ConversionMetrics is reused for the next conversion, so it should be copied to keep the measurements.
+	 * 
+	 * @return the measurements of the most recent conversion
+	 */
+	public ConversionMetrics getMetrics()
+	{
+		return metrics;
+	}
+	
+	/**
+	 * This method takes in the String of notes generated by the computer as an input, and modifies the String (if needed) so that the
+	 * notation is correct. All invalid characters or series or characters are removed from the String. The String is checked by a
+	 * TextDecoder, which keeps the characters that line up with what was expected in a StringBuilder.
+	 * 
+	 * @param str	the String containing all the text extracted from the text file (that is to be converted into a MIDI file)
+	 * @return str with all invalid characters removed
+	 */
+	public static String validString(String str)
+	{
+		StringBuilder newStr = new StringBuilder(str.length());
+		
+		TextDecoder decoder = new TextDecoder(null, newStr);
+		try
+		{
+			decoder.write(str);
+			decoder.end();
+		}
+		catch (IOException e)
+		{
+			throw new IllegalStateException(e);   // a TextDecoder without a NoteSink never throws
 		}
 		
-		return newStr;
+		return newStr.toString();
 	}
 	
 }
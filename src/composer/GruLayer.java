@@ -0,0 +1,148 @@
+/**
+ * Holds the weights of a single GRU layer and runs one step of it
+ */
+
+package composer;
+
+public class GruLayer
+{
+
+	private final int inputSize;
+	private final int units;
+	private final boolean resetAfter;
+
+	// the weights, stored the same way as in Keras, with the gates in the order update (z), reset (r), candidate (h)
+	private final float[] kernel;   // inputSize rows of 3 * units
+	private final float[] recurrentKernel;   // units rows of 3 * units
+	private final float[] inputBias;   // 3 * units
+	private final float[] recurrentBias;   // 3 * units (all zeros unless resetAfter)
+
+	/**
+	 * Creates a GruLayer. If resetAfter is true, the reset gate is applied after the recurrent kernel (as in CuDNNGRU, and in Keras
+	 * with reset_after=True, which has a separate recurrent bias); otherwise it is applied to the state before the recurrent kernel
+	 * (as in Keras with reset_after=False, which has only an input bias).
+	 *
+	 * @param inputSize			the size of the input of each step
+	 * @param units				the size of the state
+	 * @param resetAfter		true if the reset gate is applied after the recurrent kernel
+	 * @param kernel			the input weights (inputSize rows of 3 * units)
+	 * @param recurrentKernel	the recurrent weights (units rows of 3 * units)
+	 * @param inputBias			the input bias (3 * units)
+	 * @param recurrentBias		the recurrent bias (3 * units), or null if resetAfter is false
+	 */
+	public GruLayer(int inputSize, int units, boolean resetAfter, float[] kernel, float[] recurrentKernel, float[] inputBias,
+			float[] recurrentBias)
+	{
+		if (kernel.length != inputSize * 3 * units || recurrentKernel.length != units * 3 * units || inputBias.length != 3 * units)
+			throw new IllegalArgumentException("The weights do not match " + inputSize + " inputs and " + units + " units");
+		if (resetAfter && (recurrentBias == null || recurrentBias.length != 3 * units))
+			throw new IllegalArgumentException("A layer with the reset gate after the recurrent kernel needs a recurrent bias");
+
+		this.inputSize = inputSize;
+		this.units = units;
+		this.resetAfter = resetAfter;
+		this.kernel = kernel;
+		this.recurrentKernel = recurrentKernel;
+		this.inputBias = inputBias;
+		this.recurrentBias = resetAfter ? recurrentBias : new float[3 * units];
+	}
+
+	public int getInputSize()
+	{
+		return inputSize;
+	}
+
+	public int getUnits()
+	{
+		return units;
+	}
+
+	/**
+	 * This method multiplies the input of a step by the kernel and adds the input bias. Since the result only depends on the input, the
+	 * first layer can compute it once for every token of the vocabulary instead of on every step.
+	 *
+	 * @param x				the input (inputSize values starting at xOffset)
+	 * @param xOffset		the index of the first input value in x
+	 * @param projected		receives the result (3 * units values)
+	 */
+	public void project(float[] x, int xOffset, float[] projected)
+	{
+		System.arraycopy(inputBias, 0, projected, 0, 3 * units);
+		multiplyAdd(x, xOffset, inputSize, kernel, projected, 0, 3 * units);
+	}
+
+	/**
+	 * This method runs one step of the layer, replacing the state h with the next state.
+	 * <br>
+	 * PRECONDITION:	recurrent has a length of at least 3 * units, and update has a length of at least units
+	 *
+	 * @param projected		the projected input of the step, as returned by project() (3 * units values starting at offset)
+	 * @param offset		the index of the first projected value
+	 * @param h				the state (units values), which is replaced by the next state
+	 * @param recurrent		a buffer for the recurrent part of the gates
+	 * @param update		a buffer for the update gate
+	 */
+	public void step(float[] projected, int offset, float[] h, float[] recurrent, float[] update)
+	{
+		int width = 3 * units;
+		System.arraycopy(recurrentBias, 0, recurrent, 0, width);
+
+		if (resetAfter)
+		{
+			// all 3 gates use the same product of h and the recurrent kernel, and the reset gate is applied to it afterwards
+			multiplyAdd(h, 0, units, recurrentKernel, recurrent, 0, width);
+			for (int j = 0; j < units; j++)
+			{
+				update[j] = sigmoid(projected[offset + j] + recurrent[j]);
+				float reset = sigmoid(projected[offset + units + j] + recurrent[units + j]);
+				recurrent[2 * units + j] = tanh(projected[offset + 2 * units + j] + reset * recurrent[2 * units + j]);
+			}
+		}
+		else
+		{
+			// the update and reset gates use h, and the candidate uses h multiplied by the reset gate
+			multiplyAdd(h, 0, units, recurrentKernel, recurrent, 0, 2 * units);
+			float[] resetH = update;   // update is filled in later, so it holds the reset state for now
+			for (int j = 0; j < units; j++)
+				resetH[j] = sigmoid(projected[offset + units + j] + recurrent[units + j]) * h[j];
+			multiplyAdd(resetH, 0, units, recurrentKernel, recurrent, 2 * units, units);
+			for (int j = 0; j < units; j++)
+			{
+				update[j] = sigmoid(projected[offset + j] + recurrent[j]);
+				recurrent[2 * units + j] = tanh(projected[offset + 2 * units + j] + recurrent[2 * units + j]);
+			}
+		}
+
+		// the next state keeps update of the old state, and takes the rest from the candidate
+		for (int j = 0; j < units; j++)
+			h[j] = update[j] * h[j] + (1 - update[j]) * recurrent[2 * units + j];
+	}
+
+	/**
+	 * This method adds x multiplied by columns [column, column + width) of matrix to out, starting at out[column]. The matrix is
+	 * stored in rows of 3 * units, so each value of x is multiplied by a contiguous part of a row, which the JIT compiler turns into
+	 * vector instructions.
+	 */
+	private void multiplyAdd(float[] x, int xOffset, int rows, float[] matrix, float[] out, int column, int width)
+	{
+		int rowLength = 3 * units;
+		for (int i = 0; i < rows; i++)
+		{
+			float xi = x[xOffset + i];
+			int base = i * rowLength + column;
+			for (int j = 0; j < width; j++)
+				out[column + j] += xi * matrix[base + j];
+		}
+	}
+
+	private static float sigmoid(float x)
+	{
+		return (float) (1 / (1 + Math.exp(-x)));
+	}
+
+	private static float tanh(float x)
+	{
+		return (float) Math.tanh(x);
+	}
+
+}
@@ -0,0 +1,275 @@
+/**
+ * Holds the weights of the Embedding, GRU, and Dense model trained by file_generator.py
+ */
+
+package composer;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+public class GruModel
+{
+
+	public static final String DESCRIPTOR_FILE = "model.json";
+	public static final int FORMAT = 1;
+
+	private final char[] vocabulary;   // the character of each token, in order of index
+	private final int embeddingSize;
+	private final GruLayer[] layers;
+	private final float[] denseKernel;   // units rows of vocabulary.length
+	private final float[] denseBias;   // vocabulary.length
+
+	// the embedding of each token multiplied by the kernel of the first layer, plus its input bias (3 * units values for each token)
+	private final float[] inputTable;
+
+	/**
+	 * Creates a GruModel.
+	 *
+	 * @param vocabulary		the character of each token, in order of index
+	 * @param embedding			the embedding of each token (vocabulary.length rows of embeddingSize)
+	 * @param embeddingSize		the size of the embedding of a token
+	 * @param layers			the GRU layers, from the first to the last
+	 * @param denseKernel		the weights of the output layer (the units of the last layer, in rows of vocabulary.length)
+	 * @param denseBias			the bias of the output layer (vocabulary.length)
+	 */
+	public GruModel(char[] vocabulary, float[] embedding, int embeddingSize, GruLayer[] layers, float[] denseKernel, float[] denseBias)
+	{
+		int vocabSize = vocabulary.length;
+		if (layers.length == 0)
+			throw new IllegalArgumentException("A model needs at least one GRU layer");
+		if (embedding.length != vocabSize * embeddingSize || layers[0].getInputSize() != embeddingSize)
+			throw new IllegalArgumentException("The embedding does not match the vocabulary and the first layer");
+		for (int i = 1; i < layers.length; i++)
+			if (layers[i].getInputSize() != layers[i-1].getUnits())
+				throw new IllegalArgumentException("The input of layer " + i + " does not match the units of layer " + (i-1));
+		int units = layers[layers.length-1].getUnits();
+		if (denseKernel.length != units * vocabSize || denseBias.length != vocabSize)
+			throw new IllegalArgumentException("The output layer does not match the vocabulary and the last layer");
+
+		this.vocabulary = vocabulary.clone();
+		this.embeddingSize = embeddingSize;
+		this.layers = layers.clone();
+		this.denseKernel = denseKernel;
+		this.denseBias = denseBias;
+
+		// every step of the first layer starts from the embedding of a single token, so project all of them once
+		int width = 3 * layers[0].getUnits();
+		inputTable = new float[vocabSize * width];
+		float[] projected = new float[width];
+		for (int token = 0; token < vocabSize; token++)
+		{
+			layers[0].project(embedding, token * embeddingSize, projected);
+			System.arraycopy(projected, 0, inputTable, token * width, width);
+		}
+	}
+
+	/**
+	 * This method loads a model exported by file_generator.py. The folder holds a JSON descriptor (model.json) and a raw file of
+	 * little-endian 32-bit floats for each weight array, stored in row-major order. The descriptor looks like this:
+	 * <pre>
+	 * {"format": 1, "vocabulary": [32, 33, ...],
+	 *  "embedding": {"file": "embedding.bin", "shape": [91, 256]},
+	 *  "gru": [{"units": 1024, "reset_after": true,
+	 *           "kernel": {...}, "recurrent_kernel": {...}, "bias": {"file": "gru_0_bias.bin", "shape": [2, 3072]}}],
+	 *  "dense": {"kernel": {...}, "bias": {...}}}
+	 * </pre>
+	 * The vocabulary holds the character code of each token. A GRU bias with 2 rows holds the input bias followed by the recurrent bias,
+	 * which is used when reset_after is true.
+	 *
+	 * @param folder		the folder holding the exported model
+	 * @return the model
+	 * @throws IOException if the descriptor or a weight file is missing or does not match
+	 */
+	@SuppressWarnings("unchecked")
+	public static GruModel load(File folder) throws IOException
+	{
+		String text = new String(Files.readAllBytes(new File(folder, DESCRIPTOR_FILE).toPath()), StandardCharsets.UTF_8);
+		Map<String, Object> descriptor = (Map<String, Object>) Json.parse(text);
+
+		try
+		{
+			int format = ((Number) descriptor.get("format")).intValue();
+			if (format != FORMAT)
+				throw new IOException("Model format " + format + " is not supported");
+
+			List<Object> codes = (List<Object>) descriptor.get("vocabulary");
+			char[] vocabulary = new char[codes.size()];
+			for (int i = 0; i < vocabulary.length; i++)
+				vocabulary[i] = (char) ((Number) codes.get(i)).intValue();
+
+			Map<String, Object> embedding = (Map<String, Object>) descriptor.get("embedding");
+			int[] embeddingShape = shape(embedding);
+			float[] embeddingWeights = weights(folder, embedding, vocabulary.length, -1);
+
+			List<Object> gru = (List<Object>) descriptor.get("gru");
+			GruLayer[] layers = new GruLayer[gru.size()];
+			int inputSize = embeddingShape[1];
+			for (int i = 0; i < layers.length; i++)
+			{
+				Map<String, Object> layer = (Map<String, Object>) gru.get(i);
+				int units = ((Number) layer.get("units")).intValue();
+				boolean resetAfter = Boolean.TRUE.equals(layer.get("reset_after"));
+
+				float[] kernel = weights(folder, (Map<String, Object>) layer.get("kernel"), inputSize, 3 * units);
+				float[] recurrentKernel = weights(folder, (Map<String, Object>) layer.get("recurrent_kernel"), units, 3 * units);
+				float[] bias = weights(folder, (Map<String, Object>) layer.get("bias"), resetAfter ? 2 : 1, 3 * units);
+				float[] inputBias = Arrays.copyOf(bias, 3 * units);
+				float[] recurrentBias = resetAfter ? Arrays.copyOfRange(bias, 3 * units, 6 * units) : null;
+
+				layers[i] = new GruLayer(inputSize, units, resetAfter, kernel, recurrentKernel, inputBias, recurrentBias);
+				inputSize = units;
+			}
+
+			Map<String, Object> dense = (Map<String, Object>) descriptor.get("dense");
+			float[] denseKernel = weights(folder, (Map<String, Object>) dense.get("kernel"), inputSize, vocabulary.length);
+			float[] denseBias = weights(folder, (Map<String, Object>) dense.get("bias"), 1, vocabulary.length);
+
+			return new GruModel(vocabulary, embeddingWeights, embeddingShape[1], layers, denseKernel, denseBias);
+		}
+		catch (ClassCastException | NullPointerException | IllegalArgumentException e)
+		{
+			throw new IOException("Invalid model descriptor: " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * This method creates a model with random weights (uniform, scaled by the size of each layer like glorot_uniform), which produces
+	 * random text but runs exactly like a trained model of the same size.
+	 *
+	 * @param vocabulary		the character of each token, in order of index
+	 * @param embeddingSize		the size of the embedding of a token
+	 * @param units				the number of units of each GRU layer
+	 * @param layerCount		the number of GRU layers
+	 * @param resetAfter		true if the reset gate is applied after the recurrent kernel
+	 * @param seed				the seed of the random weights
+	 * @return the model
+	 */
+	public static GruModel random(char[] vocabulary, int embeddingSize, int units, int layerCount, boolean resetAfter, long seed)
+	{
+		Random random = new Random(seed);
+		int vocabSize = vocabulary.length;
+
+		GruLayer[] layers = new GruLayer[layerCount];
+		int inputSize = embeddingSize;
+		for (int i = 0; i < layerCount; i++)
+		{
+			layers[i] = new GruLayer(inputSize, units, resetAfter, randomWeights(random, inputSize, 3 * units),
+				randomWeights(random, units, 3 * units), new float[3 * units], resetAfter ? new float[3 * units] : null);
+			inputSize = units;
+		}
+
+		return new GruModel(vocabulary, randomWeights(random, vocabSize, embeddingSize), embeddingSize, layers,
+			randomWeights(random, units, vocabSize), new float[vocabSize]);
+	}
+
+	/**
+	 * @return the character of each token, in order of index
+	 */
+	public char[] getVocabulary()
+	{
+		return vocabulary.clone();
+	}
+
+	public int getVocabularySize()
+	{
+		return vocabulary.length;
+	}
+
+	public char character(int token)
+	{
+		return vocabulary[token];
+	}
+
+	/**
+	 * @return the index of ch in the vocabulary, or -1 if ch is not in the vocabulary
+	 */
+	public int token(char ch)
+	{
+		for (int i = 0; i < vocabulary.length; i++)
+			if (vocabulary[i] == ch)
+				return i;
+		return -1;
+	}
+
+	public int getEmbeddingSize()
+	{
+		return embeddingSize;
+	}
+
+	public int getLayerCount()
+	{
+		return layers.length;
+	}
+
+	public GruLayer getLayer(int index)
+	{
+		return layers[index];
+	}
+
+	float[] getInputTable()
+	{
+		return inputTable;
+	}
+
+	float[] getDenseKernel()
+	{
+		return denseKernel;
+	}
+
+	float[] getDenseBias()
+	{
+		return denseBias;
+	}
+
+	private static int[] shape(Map<String, Object> array)
+	{
+		@SuppressWarnings("unchecked")
+		List<Object> dimensions = (List<Object>) array.get("shape");
+		int[] shape = new int[dimensions.size()];
+		for (int i = 0; i < shape.length; i++)
+			shape[i] = ((Number) dimensions.get(i)).intValue();
+		return shape;
+	}
+
+	/**
+	 * This method reads the weight file of array, checking that its shape has rows rows of columns values (a columns of -1 allows any
+	 * number of columns, and a single row may also be stored as a 1-dimensional array).
+	 */
+	private static float[] weights(File folder, Map<String, Object> array, int rows, int columns) throws IOException
+	{
+		int[] shape = shape(array);
+		int[] expected = shape.length == 1 ? new int[] {1, shape[0]} : shape;
+		if (expected.length != 2 || expected[0] != rows || (columns >= 0 && expected[1] != columns))
+			throw new IOException("Weights " + array.get("file") + " have shape " + Arrays.toString(shape) + " instead of ["
+				+ rows + ", " + columns + "]");
+
+		File file = new File(folder, (String) array.get("file"));
+		int count = expected[0] * expected[1];
+		try (FileChannel channel = FileChannel.open(file.toPath()))
+		{
+			if (channel.size() != 4L * count)
+				throw new IOException("Weights " + file.getName() + " hold " + channel.size() + " bytes instead of " + 4L * count);
+
+			float[] weights = new float[count];
+			channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer().get(weights);
+			return weights;
+		}
+	}
+
+	private static float[] randomWeights(Random random, int rows, int columns)
+	{
+		float limit = (float) Math.sqrt(6.0 / (rows + columns));
+		float[] weights = new float[rows * columns];
+		for (int i = 0; i < weights.length; i++)
+			weights[i] = (random.nextFloat() * 2 - 1) * limit;
+		return weights;
+	}
+
+}
@@ -0,0 +1,166 @@
+/**
+ * Generates text one character at a time from a GruModel, on the CPU
+ */
+
+package composer;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+public class GruSampler
+{
+
+	private final GruModel model;
+	private final Random random;
+
+	// allocated once, so a step does not allocate anything
+	private final float[][] states;   // the state of each layer
+	private final float[] projected;
+	private final float[] recurrent;
+	private final float[] update;
+	private final float[] logits;
+	private final double[] weights;
+
+	/**
+	 * Creates a GruSampler with the state of every layer set to zero.
+	 *
+	 * @param model		the model to sample from
+	 * @param seed		the seed of the random numbers used to sample
+	 */
+	public GruSampler(GruModel model, long seed)
+	{
+		this.model = model;
+		random = new Random(seed);
+
+		int maxUnits = 0;
+		states = new float[model.getLayerCount()][];
+		for (int i = 0; i < states.length; i++)
+		{
+			states[i] = new float[model.getLayer(i).getUnits()];
+			maxUnits = Math.max(maxUnits, states[i].length);
+		}
+		projected = new float[3 * maxUnits];
+		recurrent = new float[3 * maxUnits];
+		update = new float[maxUnits];
+		logits = new float[model.getVocabularySize()];
+		weights = new double[model.getVocabularySize()];
+	}
+
+	/**
+	 * This method sets the state of every layer back to zero.
+	 */
+	public void reset()
+	{
+		for (float[] state : states)
+			Arrays.fill(state, 0);
+	}
+
+	/**
+	 * This method runs one step of the model on a token, updating the state of every layer and the logits of the next token. The first
+	 * layer looks up the projection of the token that the model computed when it was created, and each later layer projects the state
+	 * of the layer before it.
+	 *
+	 * @param token		the index of the token in the vocabulary
+	 */
+	public void feed(int token)
+	{
+		GruLayer first = model.getLayer(0);
+		first.step(model.getInputTable(), token * 3 * first.getUnits(), states[0], recurrent, update);
+
+		for (int i = 1; i < states.length; i++)
+		{
+			GruLayer layer = model.getLayer(i);
+			layer.project(states[i-1], 0, projected);
+			layer.step(projected, 0, states[i], recurrent, update);
+		}
+
+		// logits = the state of the last layer multiplied by the dense kernel, plus the dense bias
+		float[] h = states[states.length-1];
+		float[] kernel = model.getDenseKernel();
+		int vocabSize = logits.length;
+		System.arraycopy(model.getDenseBias(), 0, logits, 0, vocabSize);
+		for (int i = 0; i < h.length; i++)
+		{
+			float hi = h[i];
+			int base = i * vocabSize;
+			for (int j = 0; j < vocabSize; j++)
+				logits[j] += hi * kernel[base + j];
+		}
+	}
+
+	/**
+	 * @return the logit of token, as computed by the most recent call to feed()
+	 */
+	public float logit(int token)
+	{
+		return logits[token];
+	}
+
+	/**
+	 * This method picks the next token at random, from the softmax of the logits divided by temperature. Low temperatures result in
+	 * more predictable text, and high temperatures result in more surprising text.
+	 * <br>
+	 * PRECONDITION:	feed() has been called at least once
+	 *
+	 * @param temperature	the temperature (greater than 0)
+	 * @return the index of the next token in the vocabulary
+	 */
+	public int sample(double temperature)
+	{
+		float max = Float.NEGATIVE_INFINITY;
+		for (float logit : logits)
+			max = Math.max(max, logit);
+
+		double total = 0;
+		for (int j = 0; j < logits.length; j++)
+		{
+			weights[j] = Math.exp((logits[j] - max) / temperature);
+			total += weights[j];
+		}
+
+		double target = random.nextDouble() * total;
+		for (int j = 0; j < weights.length; j++)
+		{
+			target -= weights[j];
+			if (target < 0)
+				return j;
+		}
+		return weights.length - 1;   // only reached through rounding
+	}
+
+	/**
+	 * This method generates text, like generate_text() in file_generator.py. The start text is fed to the model, and then count
+	 * characters are sampled, each one being fed back to the model. The start text and every generated character are written to
+	 * decoder as they are produced, so the notes can go straight to a MIDI file without the text being stored.
+	 *
+	 * @param start			the text to start from (every character must be in the vocabulary)
+	 * @param count			the number of characters to generate
+	 * @param temperature	the temperature of the sampling
+	 * @param decoder		the TextDecoder that receives the text
+	 * @throws IOException
+	 */
+	public void generate(String start, long count, double temperature, TextDecoder decoder) throws IOException
+	{
+		if (start.isEmpty())
+			throw new IllegalArgumentException("The start text must not be empty");
+
+		reset();
+		for (int i = 0; i < start.length(); i++)
+		{
+			int token = model.token(start.charAt(i));
+			if (token < 0)
+				throw new IllegalArgumentException("'" + start.charAt(i) + "' is not in the vocabulary");
+			feed(token);
+			decoder.write(start.charAt(i));
+		}
+
+		for (long i = 0; i < count; i++)
+		{
+			int token = sample(temperature);
+			decoder.write(model.character(token));
+			if (i < count - 1)   // the last character does not need to be fed, since nothing is sampled after it
+				feed(token);
+		}
+	}
+
+}
@@ -0,0 +1,230 @@
+/**
+ * Reads the small JSON files that describe exported models
+ */
+
+package composer;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class Json
+{
+
+	private final String text;
+	private int position = 0;
+
+	private Json(String text)
+	{
+		this.text = text;
+	}
+
+	/**
+	 * This method parses JSON text. Objects are returned as a Map (keeping the order of their keys), arrays as a List, strings as a
+	 * String, numbers as a Double, true and false as a Boolean, and null as null.
+	 *
+	 * @param text		the JSON text
+	 * @return the value of text
+	 * @throws IOException if text is not valid JSON
+	 */
+	public static Object parse(String text) throws IOException
+	{
+		Json json = new Json(text);
+		Object value = json.value();
+		json.skipWhitespace();
+		if (json.position != text.length())
+			throw json.error("Unexpected text after the value");
+		return value;
+	}
+
+	private Object value() throws IOException
+	{
+		skipWhitespace();
+		if (position >= text.length())
+			throw error("Unexpected end of text");
+
+		char ch = text.charAt(position);
+		if (ch == '{')
+			return object();
+		if (ch == '[')
+			return array();
+		if (ch == '"')
+			return string();
+		if (text.startsWith("true", position))
+			return literal("true", Boolean.TRUE);
+		if (text.startsWith("false", position))
+			return literal("false", Boolean.FALSE);
+		if (text.startsWith("null", position))
+			return literal("null", null);
+		return number();
+	}
+
+	private Map<String, Object> object() throws IOException
+	{
+		Map<String, Object> object = new LinkedHashMap<String, Object>();
+		position++;   // skip the opening brace
+		skipWhitespace();
+		if (peek() == '}')
+		{
+			position++;
+			return object;
+		}
+
+		while (true)
+		{
+			skipWhitespace();
+			if (peek() != '"')
+				throw error("Expected a key");
+			String key = string();
+
+			skipWhitespace();
+			expect(':');
+			object.put(key, value());
+
+			skipWhitespace();
+			if (peek() == ',')
+			{
+				position++;
+			}
+			else
+			{
+				expect('}');
+				return object;
+			}
+		}
+	}
+
+	private List<Object> array() throws IOException
+	{
+		List<Object> array = new ArrayList<Object>();
+		position++;   // skip the opening bracket
+		skipWhitespace();
+		if (peek() == ']')
+		{
+			position++;
+			return array;
+		}
+
+		while (true)
+		{
+			array.add(value());
+
+			skipWhitespace();
+			if (peek() == ',')
+			{
+				position++;
+			}
+			else
+			{
+				expect(']');
+				return array;
+			}
+		}
+	}
+
+	private String string() throws IOException
+	{
+		StringBuilder sb = new StringBuilder();
+		position++;   // skip the opening quote
+		while (true)
+		{
+			if (position >= text.length())
+				throw error("Unterminated string");
+
+			char ch = text.charAt(position++);
+			if (ch == '"')
+				return sb.toString();
+
+			if (ch == '\\')
+			{
+				if (position >= text.length())
+					throw error("Unterminated string");
+
+				char escaped = text.charAt(position++);
+				switch (escaped)
+				{
+					case 'b':
+						sb.append('\b');
+						break;
+
+					case 'f':
+						sb.append('\f');
+						break;
+
+					case 'n':
+						sb.append('\n');
+						break;
+
+					case 'r':
+						sb.append('\r');
+						break;
+
+					case 't':
+						sb.append('\t');
+						break;
+
+					case 'u':   // a character given by 4 hexadecimal digits
+						if (position + 4 > text.length())
+							throw error("Unterminated escape");
+						sb.append((char) Integer.parseInt(text.substring(position, position + 4), 16));
+						position += 4;
+						break;
+
+					default:   // a quote, backslash, or slash
+						sb.append(escaped);
+				}
+			}
+			else
+			{
+				sb.append(ch);
+			}
+		}
+	}
+
+	private Double number() throws IOException
+	{
+		int start = position;
+		while (position < text.length() && "+-0123456789.eE".indexOf(text.charAt(position)) >= 0)
+			position++;
+
+		try
+		{
+			return Double.valueOf(text.substring(start, position));
+		}
+		catch (NumberFormatException e)
+		{
+			throw error("Expected a value");
+		}
+	}
+
+	private Object literal(String word, Object value)
+	{
+		position += word.length();
+		return value;
+	}
+
+	private void skipWhitespace()
+	{
+		while (position < text.length() && Character.isWhitespace(text.charAt(position)))
+			position++;
+	}
+
+	private char peek()
+	{
+		return position < text.length() ? text.charAt(position) : 0;
+	}
+
+	private void expect(char ch) throws IOException
+	{
+		if (peek() != ch)
+			throw error("Expected '" + ch + "'");
+		position++;
+	}
+
+	private IOException error(String message)
+	{
+		return new IOException(message + " at character " + position);
+	}
+
+}
@@ -0,0 +1,96 @@
+/**
+ * Plays text as it is being generated, without waiting for a whole text file
+ */
+
+package composer;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.MidiUnavailableException;
+import javax.sound.midi.Receiver;
+
+public class LivePlayer
+{
+
+	public static void main(String[] args) throws IOException, InvalidMidiDataException
+	{
+		// the text file to play can be given as an argument (the text is read from the standard input by default, so a sampler can be
+		// piped into it), along with "--rest-runs" to read rest runs, "--latency-ms=" (how far behind the text the notes are played),
+		// "--capacity=" (how many notes can be waiting to be played), and "--record=<file>" to write the notes to a MIDI file as fast
+		// as they arrive instead of playing them (which needs no audio device)
+		String input = "-";
+		boolean restRuns = false;
+		long latencyMillis = ReceiverSink.DEFAULT_LATENCY_MILLIS;
+		int capacity = ReceiverSink.DEFAULT_CAPACITY;
+		File recordFile = null;
+		for (String arg : args)
+		{
+			if (arg.equals("--rest-runs"))
+				restRuns = true;
+			else if (arg.startsWith("--latency-ms="))
+				latencyMillis = Long.parseLong(arg.substring("--latency-ms=".length()));
+			else if (arg.startsWith("--capacity="))
+				capacity = Integer.parseInt(arg.substring("--capacity=".length()));
+			else if (arg.startsWith("--record="))
+				recordFile = new File(arg.substring("--record=".length()));
+			else
+				input = arg;
+		}
+
+		// play through the default synthesizer, or record the notes in memory
+		Receiver receiver;
+		RecordingReceiver recorder = null;
+		if (recordFile != null)
+		{
+			recorder = new RecordingReceiver();
+			receiver = recorder;
+		}
+		else
+		{
+			try
+			{
+				receiver = MidiSystem.getReceiver();
+			}
+			catch (MidiUnavailableException e)
+			{
+				System.out.println("No MIDI device is available (" + e.getMessage() + "), so use \"--record=<file>\" instead.");
+				return;
+			}
+		}
+
+		// decode the text as it arrives, passing each note to the ReceiverSink as soon as it is complete
+		long start = System.nanoTime();
+		ReceiverSink sink = new ReceiverSink(receiver, recorder == null, latencyMillis, capacity);
+		TextDecoder decoder = new TextDecoder(sink, null, restRuns);
+		InputStream in = input.equals("-") ? System.in : new FileInputStream(input);
+		try (Reader reader = new InputStreamReader(in, StandardCharsets.US_ASCII))
+		{
+			decoder.decode(reader);
+		}
+		finally
+		{
+			sink.close();
+			receiver.close();
+		}
+
+		if (recorder != null)
+		{
+			String name = recordFile.getName();
+			new SmfWriter().write(recorder.getEvents(), name.contains(".") ? name.substring(0, name.indexOf(".")) : name, decoder.getTick(),
+					recordFile);
+			System.out.printf("%d notes written to %s in %.2f s%n", recorder.getEvents().size() / 2, recordFile, (System.nanoTime() - start) / 1e9);
+		}
+		else
+		{
+			System.out.printf("%d ticks played in %.1f s, at most %.1f ms late%n", decoder.getTick(), (System.nanoTime() - start) / 1e9,
+					sink.getMaxLateMicros() / 1000.0);
+		}
+	}
+
+}
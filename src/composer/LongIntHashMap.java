@@ -0,0 +1,206 @@
+/**
+ * Maps long keys to int values in open-addressing primitive arrays, without boxing
+ */
+
+package composer;
+import java.util.Arrays;
+
+public class LongIntHashMap
+{
+
+	private static final long EMPTY = 0;   // marks an empty slot (the key 0 is kept outside the arrays)
+
+	private long[] keys;
+	private int[] values;
+	private int mask;
+	private int size = 0;
+
+	private boolean hasZeroKey = false;
+	private int zeroValue = 0;
+
+	/**
+	 * Creates a LongIntHashMap with room for about 16 keys before it grows.
+	 */
+	public LongIntHashMap()
+	{
+		this(16);
+	}
+
+	/**
+	 * Creates a LongIntHashMap that can hold expectedSize keys without growing.
+	 *
+	 * @param expectedSize		the number of keys expected
+	 */
+	public LongIntHashMap(int expectedSize)
+	{
+		int capacity = Integer.highestOneBit(Math.max(expectedSize * 2, 16) - 1) << 1;   // keep the table at most half full
+		keys = new long[capacity];
+		values = new int[capacity];
+		mask = capacity - 1;
+	}
+
+	public int size()
+	{
+		return size + (hasZeroKey ? 1 : 0);
+	}
+
+	/**
+	 * @return the value of key, or defaultValue if key is not in the map
+	 */
+	public int get(long key, int defaultValue)
+	{
+		if (key == EMPTY)
+			return hasZeroKey ? zeroValue : defaultValue;
+
+		for (int slot = slot(key); ; slot = (slot + 1) & mask)
+		{
+			if (keys[slot] == key)
+				return values[slot];
+			if (keys[slot] == EMPTY)
+				return defaultValue;
+		}
+	}
+
+	public boolean containsKey(long key)
+	{
+		if (key == EMPTY)
+			return hasZeroKey;
+
+		for (int slot = slot(key); ; slot = (slot + 1) & mask)
+		{
+			if (keys[slot] == key)
+				return true;
+			if (keys[slot] == EMPTY)
+				return false;
+		}
+	}
+
+	/**
+	 * This method sets the value of key.
+	 */
+	public void put(long key, int value)
+	{
+		if (key == EMPTY)
+		{
+			hasZeroKey = true;
+			zeroValue = value;
+			return;
+		}
+
+		int slot = find(key);
+		values[slot] = value;
+	}
+
+	/**
+	 * This method adds delta to the value of key (a key that is not in the map starts at 0).
+	 *
+	 * @return the new value of key
+	 */
+	public int add(long key, int delta)
+	{
+		if (key == EMPTY)
+		{
+			hasZeroKey = true;
+			return zeroValue += delta;
+		}
+
+		int slot = find(key);
+		return values[slot] += delta;
+	}
+
+	/**
+	 * This method adds the value of every key in other to the value of the same key in this map.
+	 */
+	public void addAll(LongIntHashMap other)
+	{
+		if (other.hasZeroKey)
+			add(EMPTY, other.zeroValue);
+		for (int slot = 0; slot < other.keys.length; slot++)
+			if (other.keys[slot] != EMPTY)
+				add(other.keys[slot], other.values[slot]);
+	}
+
+	/**
+	 * @return every key in the map, in no particular order
+	 */
+	public long[] keys()
+	{
+		long[] result = new long[size()];
+		int i = 0;
+		if (hasZeroKey)
+			result[i++] = EMPTY;
+		for (long key : keys)
+			if (key != EMPTY)
+				result[i++] = key;
+		return result;
+	}
+
+	public void clear()
+	{
+		Arrays.fill(keys, EMPTY);
+		size = 0;
+		hasZeroKey = false;
+		zeroValue = 0;
+	}
+
+	/**
+	 * This method returns the slot of key, adding key with a value of 0 if it is not in the map yet.
+	 */
+	private int find(long key)
+	{
+		int slot = slot(key);
+		while (keys[slot] != key)
+		{
+			if (keys[slot] == EMPTY)
+			{
+				if (size + 1 > keys.length / 2)   // grow before the table is more than half full, so probes stay short
+				{
+					grow();
+					return find(key);
+				}
+				keys[slot] = key;
+				values[slot] = 0;
+				size++;
+				return slot;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	private void grow()
+	{
+		long[] oldKeys = keys;
+		int[] oldValues = values;
+		keys = new long[oldKeys.length * 2];
+		values = new int[oldKeys.length * 2];
+		mask = keys.length - 1;
+
+		for (int i = 0; i < oldKeys.length; i++)
+		{
+			if (oldKeys[i] == EMPTY)
+				continue;
+
+			int slot = slot(oldKeys[i]);
+			while (keys[slot] != EMPTY)
+				slot = (slot + 1) & mask;
+			keys[slot] = oldKeys[i];
+			values[slot] = oldValues[i];
+		}
+	}
+
+	/**
+	 * This method mixes the bits of key (the finalizer of MurmurHash3), so keys that only differ in their high bits do not end up next
+	 * to each other.
+	 */
+	private int slot(long key)
+	{
+		key ^= key >>> 33;
+		key *= 0xff51afd7ed558ccdL;
+		key ^= key >>> 33;
+		key *= 0xc4ceb9fe1a85ec53L;
+		key ^= key >>> 33;
+		return (int) key & mask;
+	}
+
+}
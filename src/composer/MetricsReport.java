@@ -0,0 +1,205 @@
+/**
+ * Writes a JSON summary of the time taken by each stage of a batch of conversions
+ */
+
+package composer;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+public class MetricsReport
+{
+
+	public static final int SLOWEST_COUNT = 10;   // the number of slowest files listed on their own
+
+	/**
+	 * This method writes a JSON summary of a batch to file, for dashboards and for finding the files that are much slower than the
+	 * others. The summary holds the number of converted, up to date and failed files, the total of each counter, and the 50th, 90th
+	 * and 99th percentile and maximum of the time taken by each file, by each of its stages, and by each of its note events.
+	 * It also lists the slowest files, every converted file with its own measurements, and the error of every file that failed.
+	 *
+	 * @param results		the results of a batch
+	 * @param wallNanos		the time the whole batch took (in nanoseconds)
+	 * @param file			the file to write the summary to
+	 * @throws IOException
+	 */
+	public static void write(List<ConversionResult> results, long wallNanos, File file) throws IOException
+	{
+		// only the files that were converted have measurements
+		List<ConversionResult> converted = new ArrayList<ConversionResult>();
+		List<ConversionResult> failed = new ArrayList<ConversionResult>();
+		for (ConversionResult result : results)
+		{
+			if (!result.succeeded())
+				failed.add(result);
+			else if (!result.isSkipped() && result.getMetrics() != null)
+				converted.add(result);
+		}
+
+		int n = converted.size();
+		long[] totals = new long[n];
+		long[][] stages = new long[ConversionMetrics.STAGES.length][n];
+		long[] perEvent = new long[n];
+		long eventsRead = 0;
+		long notesEmitted = 0;
+		long ticksEmitted = 0;
+		long bytesWritten = 0;
+		for (int i = 0; i < n; i++)
+		{
+			ConversionResult result = converted.get(i);
+			ConversionMetrics metrics = result.getMetrics();
+			totals[i] = result.getNanos();
+			for (int stage = 0; stage < stages.length; stage++)
+				stages[stage][i] = metrics.getStageNanos(stage);
+			perEvent[i] = result.getNanos() / Math.max(metrics.getEventsRead(), 1);
+			eventsRead += metrics.getEventsRead();
+			notesEmitted += metrics.getNotesEmitted();
+			ticksEmitted += metrics.getTicksEmitted();
+			bytesWritten += metrics.getBytesWritten();
+		}
+
+		StringBuilder json = new StringBuilder();
+		json.append("{\n");
+		json.append("  \"converted\": ").append(n).append(",\n");
+		json.append("  \"up_to_date\": ").append(results.size() - n - failed.size()).append(",\n");
+		json.append("  \"failed\": ").append(failed.size()).append(",\n");
+		json.append("  \"wall_ms\": ").append(millis(wallNanos)).append(",\n");
+
+		json.append("  \"totals\": {\"events_read\": ").append(eventsRead).append(", \"notes_emitted\": ").append(notesEmitted)
+			.append(", \"ticks_emitted\": ").append(ticksEmitted).append(", \"bytes_written\": ").append(bytesWritten);
+		for (int stage = 0; stage < stages.length; stage++)
+			json.append(", \"").append(ConversionMetrics.STAGES[stage]).append("_ms\": ").append(millis(sum(stages[stage])));
+		json.append("},\n");
+
+		json.append("  \"percentiles\": {\n");
+		json.append("    \"file_ms\": ");
+		appendPercentiles(json, totals, 1e6);
+		for (int stage = 0; stage < stages.length; stage++)
+		{
+			json.append(",\n    \"").append(ConversionMetrics.STAGES[stage]).append("_ms\": ");
+			appendPercentiles(json, stages[stage], 1e6);
+		}
+		json.append(",\n    \"ns_per_event\": ");
+		appendPercentiles(json, perEvent, 1);
+		json.append("\n  },\n");
+
+		// the slowest files first, so outliers are easy to find
+		Integer[] order = new Integer[n];
+		for (int i = 0; i < n; i++)
+			order[i] = i;
+		Arrays.sort(order, (a, b) -> Long.compare(totals[b], totals[a]));
+
+		json.append("  \"slowest\": [");
+		for (int i = 0; i < Math.min(SLOWEST_COUNT, n); i++)
+			json.append(i == 0 ? "\n    " : ",\n    ").append(quote(converted.get(order[i]).getInput().getName()));
+		json.append("\n  ],\n");
+
+		json.append("  \"files\": [");
+		for (int i = 0; i < n; i++)
+		{
+			json.append(i == 0 ? "\n    " : ",\n    ");
+			appendFile(json, converted.get(i));
+		}
+		json.append("\n  ],\n");
+
+		json.append("  \"errors\": [");
+		for (int i = 0; i < failed.size(); i++)
+		{
+			json.append(i == 0 ? "\n    " : ",\n    ");
+			json.append("{\"file\": ").append(quote(failed.get(i).getInput().getName())).append(", \"error\": ")
+				.append(quote(String.valueOf(failed.get(i).getError()))).append("}");
+		}
+		json.append("\n  ]\n");
+		json.append("}\n");
+
+		try (BufferedWriter bw = new BufferedWriter(new FileWriter(file)))
+		{
+			bw.write(json.toString());
+		}
+	}
+
+	/**
+	 * This method appends the measurements of a single file as a JSON object.
+	 */
+	private static void appendFile(StringBuilder json, ConversionResult result)
+	{
+		ConversionMetrics metrics = result.getMetrics();
+		json.append("{\"file\": ").append(quote(result.getInput().getName())).append(", \"ms\": ").append(millis(result.getNanos()));
+		for (int stage = 0; stage < ConversionMetrics.STAGES.length; stage++)
+			json.append(", \"").append(ConversionMetrics.STAGES[stage]).append("_ms\": ").append(millis(metrics.getStageNanos(stage)));
+		json.append(", \"events_read\": ").append(metrics.getEventsRead()).append(", \"notes_emitted\": ")
+			.append(metrics.getNotesEmitted()).append(", \"ticks_emitted\": ").append(metrics.getTicksEmitted())
+			.append(", \"bytes_written\": ").append(metrics.getBytesWritten()).append("}");
+	}
+
+	/**
+	 * This method appends the 50th, 90th and 99th percentile (by nearest rank) and the maximum of values, divided by unit.
+	 */
+	private static void appendPercentiles(StringBuilder json, long[] values, double unit)
+	{
+		long[] sorted = values.clone();
+		Arrays.sort(sorted);
+		json.append("{\"p50\": ").append(format(percentile(sorted, 50) / unit))
+			.append(", \"p90\": ").append(format(percentile(sorted, 90) / unit))
+			.append(", \"p99\": ").append(format(percentile(sorted, 99) / unit))
+			.append(", \"max\": ").append(format(sorted.length == 0 ? 0 : sorted[sorted.length - 1] / unit)).append("}");
+	}
+
+	/**
+	 * This method returns the smallest value that is at least as large as percent percent of the values.
+	 * <br>
+	 * PRECONDITION:	sorted is in ascending order
+	 */
+	private static long percentile(long[] sorted, int percent)
+	{
+		if (sorted.length == 0)
+			return 0;
+		int rank = (int) Math.ceil(percent / 100.0 * sorted.length);
+		return sorted[Math.max(rank, 1) - 1];
+	}
+
+	private static long sum(long[] values)
+	{
+		long sum = 0;
+		for (long value : values)
+			sum += value;
+		return sum;
+	}
+
+	private static String millis(long nanos)
+	{
+		return format(nanos / 1e6);
+	}
+
+	private static String format(double value)
+	{
+		return String.format(Locale.ROOT, "%.3f", value);
+	}
+
+	/**
+	 * This method returns str as a JSON string, escaping quotes, backslashes and control characters (it is also used by the
+	 * ConversionDaemon).
+	 */
+	static String quote(String str)
+	{
+		StringBuilder quoted = new StringBuilder(str.length() + 2);
+		quoted.append('"');
+		for (int i = 0; i < str.length(); i++)
+		{
+			char ch = str.charAt(i);
+			if (ch == '"' || ch == '\\')
+				quoted.append('\\').append(ch);
+			else if (ch < 0x20)
+				quoted.append(String.format(Locale.ROOT, "\\u%04x", (int) ch));
+			else
+				quoted.append(ch);
+		}
+		return quoted.append('"').toString();
+	}
+
+}
@@ -0,0 +1,42 @@
+/**
+ * Collects the note on and note off events of decoded notes, so they can be written to a MIDI file
+ */
+
+package composer;
+
+public class MidiEventSink implements NoteSink
+{
+
+	public static final int VELOCITY = 50;   // the velocity of every note on event
+
+	private final NoteEventBuffer events;
+
+	/**
+	 * Creates a MidiEventSink that adds the events of each note to events.
+	 *
+	 * @param events	the buffer that receives the events
+	 */
+	public MidiEventSink(NoteEventBuffer events)
+	{
+		this.events = events;
+	}
+
+	/**
+	 * This method adds a note on event (velocity 50) at tick and a note off event (a note on event with velocity 0) at the end of
+	 * the note.
+	 */
+	public void note(long tick, int note, int length)
+	{
+		events.add(tick, 144, note, VELOCITY);
+		events.add(tick + length, 144, note, 0);
+	}
+
+	public void advance(long tick)
+	{
+	}
+
+	public void end(long tick)
+	{
+	}
+
+}
@@ -5,15 +5,28 @@
 package composer;
 import java.io.File;
 import java.io.IOException;
-import javax.sound.midi.InvalidMidiDataException;
+import java.util.List;
 
 public class MidiFileCreator
 {
 	
-	public static void main(String[] args) throws IOException, InvalidMidiDataException
+	public static void main(String[] args) throws IOException, InterruptedException
 	{
-		// create new FileConverter
-		FileConverter fileConverter = new FileConverter();
+		// the number of files converted at the same time can be given as an argument (all cores are used by default), and
+		// "--rest-runs" reads text files written with rest runs, and "--metrics=<file>" writes a JSON summary of the time taken by each
+		// stage of each file
+		int threads = Runtime.getRuntime().availableProcessors();
+		boolean restRuns = false;
+		File metricsFile = null;
+		for (String arg : args)
+		{
+			if (arg.equals("--rest-runs"))
+				restRuns = true;
+			else if (arg.startsWith("--metrics="))
+				metricsFile = new File(arg.substring("--metrics=".length()));
+			else
+				threads = Integer.parseInt(arg);
+		}
 		
 		// create new directory called "midi-files"
 		File midi = new File("midi-files");
@@ -22,20 +35,23 @@ public class MidiFileCreator
 		// access files in "txt-files" and store them in an array of Files
 		File text = new File("txt-files");
 		File[] textFiles = text.listFiles();
-		
-		// create a MIDI file for each text file in "txt-files" using the midiFile() FileConverter method
-		for (File textFile : textFiles)
+		if (textFiles == null)
 		{
-			try
-			{
-				File midiFile = fileConverter.midiFile(textFile, midi);
-				midiFile.createNewFile();
-			}
-			catch (Exception e)
-			{
-				System.out.println("File not compatible.");
-			}
+			System.out.println("Folder \"txt-files\" not found.");
+			return;
 		}
+		
+		// create a MIDI file for each text file in "txt-files" using the midiFile() FileConverter method, with a FileConverter for each thread
+		BatchConverter batchConverter = new BatchConverter(threads);
+		long start = System.nanoTime();
+		List<ConversionResult> results = batchConverter.convert(textFiles, midi, restRuns ? BatchConverter.MIDI_REST_RUNS : BatchConverter.MIDI);
+		batchConverter.shutdown();
+		long wallNanos = System.nanoTime() - start;
+		
+		// print the time, number of events, or error of each file
+		BatchConverter.printReport(results, wallNanos);
+		if (metricsFile != null)
+			MetricsReport.write(results, wallNanos, metricsFile);
 	}
 	
 }
\ No newline at end of file
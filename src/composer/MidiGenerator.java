@@ -0,0 +1,126 @@
+/**
+ * Generates new MIDI files from the trained model, without Python
+ */
+
+package composer;
+import java.io.File;
+import java.io.IOException;
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.MidiUnavailableException;
+import javax.sound.midi.Receiver;
+
+public class MidiGenerator
+{
+	
+	public static void main(String[] args) throws IOException, InvalidMidiDataException
+	{
+		// the folder of the exported model can be given as an argument ("java-model" by default), or "--random" to use a model of the
+		// same size as file_generator.py with random weights, along with "--length=" (the number of characters to generate),
+		// "--temperature=", "--seed=", "--start=" (the text to start from), "--name=" (the name of the MIDI file), and "--play" to also
+		// play the notes through the default synthesizer while they are being generated
+		String modelFolder = "java-model";
+		boolean random = false;
+		long length = 50000;
+		double temperature = 1.0;
+		long seed = System.nanoTime();
+		String start = "'";
+		String name = "generated";
+		boolean play = false;
+		for (String arg : args)
+		{
+			if (arg.equals("--random"))
+				random = true;
+			else if (arg.equals("--play"))
+				play = true;
+			else if (arg.startsWith("--length="))
+				length = Long.parseLong(arg.substring("--length=".length()));
+			else if (arg.startsWith("--temperature="))
+				temperature = Double.parseDouble(arg.substring("--temperature=".length()));
+			else if (arg.startsWith("--seed="))
+				seed = Long.parseLong(arg.substring("--seed=".length()));
+			else if (arg.startsWith("--start="))
+				start = arg.substring("--start=".length());
+			else if (arg.startsWith("--name="))
+				name = arg.substring("--name=".length());
+			else
+				modelFolder = arg;
+		}
+		
+		// find the synthesizer before loading the model, so a machine without one finds out at once
+		Receiver receiver = null;
+		if (play)
+		{
+			try
+			{
+				receiver = MidiSystem.getReceiver();
+			}
+			catch (MidiUnavailableException e)
+			{
+				System.out.println("No MIDI device is available (" + e.getMessage() + "), so run it without \"--play\" instead.");
+				return;
+			}
+		}
+		
+		long loadStart = System.nanoTime();
+		GruModel model = random ? GruModel.random(textVocabulary(), 256, 1024, 1, true, seed) : GruModel.load(new File(modelFolder));
+		long loadNanos = System.nanoTime() - loadStart;
+		
+		// generate the text, passing it straight to a TextDecoder that collects the notes as MIDI events (and plays them)
+		NoteEventBuffer events = new NoteEventBuffer();
+		final MidiEventSink eventSink = new MidiEventSink(events);
+		final ReceiverSink player = play ? new ReceiverSink(receiver, true, ReceiverSink.DEFAULT_LATENCY_MILLIS,
+				ReceiverSink.DEFAULT_CAPACITY) : null;
+		NoteSink sink = !play ? eventSink : new NoteSink()
+		{
+			public void note(long tick, int note, int length) throws IOException
+			{
+				eventSink.note(tick, note, length);
+				player.note(tick, note, length);
+			}
+			
+			public void advance(long tick)
+			{
+			}
+			
+			public void end(long tick) throws IOException
+			{
+				player.end(tick);
+			}
+		};
+		TextDecoder decoder = new TextDecoder(sink);
+		GruSampler sampler = new GruSampler(model, seed);
+		long generateStart = System.nanoTime();
+		sampler.generate(start, length, temperature, decoder);
+		decoder.end();
+		long generateNanos = System.nanoTime() - generateStart;
+		if (receiver != null)
+			receiver.close();
+		
+		// create new directory called "midi-files", and write the MIDI file in it
+		File midi = new File("midi-files");
+		midi.mkdir();
+		File midiFile = new File(midi, name + ".mid");
+		new SmfWriter().write(events, name, decoder.getTick(), midiFile);
+		
+		System.out.printf("Model loaded in %.1f s, %d characters generated in %.1f s (%.0f per second), %d notes written to %s%n",
+			loadNanos / 1e9, length, generateNanos / 1e9, length / (generateNanos / 1e9), events.size() / 2, midiFile);
+	}
+	
+	/**
+	 * This method returns every character that can appear in the text format, in ascending order, which is the vocabulary of a model
+	 * trained on text files that use all of them: a space, an exclamation mark, the characters of the notes (which include the
+	 * digits), and a tilde.
+	 * 
+	 * @return the characters of the text format
+	 */
+	public static char[] textVocabulary()
+	{
+		StringBuilder vocabulary = new StringBuilder();
+		for (char ch = ' '; ch <= '~'; ch++)
+			if (ch == ' ' || ch == '!' || ch == '~' || ch >= 34 && ch <= 121)
+				vocabulary.append(ch);
+		return vocabulary.toString().toCharArray();
+	}
+	
+}
@@ -0,0 +1,96 @@
+/**
+ * Trains an n-gram model on the training MIDI files and generates new MIDI files from it, as a fast baseline for the RNN
+ */
+
+package composer;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import javax.sound.midi.InvalidMidiDataException;
+
+public class NgramGenerator
+{
+	
+	public static final String MODEL_FILE = "ngram.model";
+	
+	public static void main(String[] args) throws IOException, InterruptedException, InvalidMidiDataException
+	{
+		// the number of threads can be given as an argument (all cores are used by default), along with "--train" to train the model
+		// again even if it was saved before, "--training=" followed by the folder of training files ("midi-training" by default),
+		// "--order=" (the length of the longest n-gram), "--count=" (the number of files to generate), "--ticks=" (the length of
+		// each file, in ticks), and "--seed="
+		int threads = Runtime.getRuntime().availableProcessors();
+		boolean train = false;
+		String training = "midi-training";
+		int order = NgramModel.MAX_ORDER;
+		int count = 1;
+		long ticks = 48 * 4 * 64;   // 64 bars of 4 quarter notes
+		long seed = System.nanoTime();
+		for (String arg : args)
+		{
+			if (arg.equals("--train"))
+				train = true;
+			else if (arg.startsWith("--training="))
+				training = arg.substring("--training=".length());
+			else if (arg.startsWith("--order="))
+				order = Integer.parseInt(arg.substring("--order=".length()));
+			else if (arg.startsWith("--count="))
+				count = Integer.parseInt(arg.substring("--count=".length()));
+			else if (arg.startsWith("--ticks="))
+				ticks = Long.parseLong(arg.substring("--ticks=".length()));
+			else if (arg.startsWith("--seed="))
+				seed = Long.parseLong(arg.substring("--seed=".length()));
+			else
+				threads = Integer.parseInt(arg);
+		}
+		
+		// load the saved model, or train a new one on the MIDI (and text) files in the training folder and save it
+		File modelFile = new File(MODEL_FILE);
+		NgramModel model;
+		long start = System.nanoTime();
+		if (modelFile.exists() && !train)
+		{
+			model = NgramModel.load(modelFile);
+			System.out.printf("Model loaded in %.2f s%n", (System.nanoTime() - start) / 1e9);
+		}
+		else
+		{
+			File[] trainingFiles = new File(training).listFiles((dir, name) -> name.endsWith(".mid") || name.endsWith(".txt"));
+			if (trainingFiles == null)
+			{
+				System.out.println("Folder \"" + training + "\" not found.");
+				return;
+			}
+			Arrays.sort(trainingFiles);
+			
+			List<int[]> sequences = NgramTokenizer.tokenize(trainingFiles, threads);
+			model = NgramModel.train(sequences, order, threads);
+			model.save(modelFile);
+			System.out.printf("Model of order %d trained on %d files in %.2f s (%d tokens, %d n-grams)%n", model.getOrder(),
+				trainingFiles.length, (System.nanoTime() - start) / 1e9, model.getVocabularySize(), model.getNgramCount());
+		}
+		
+		// create new directories called "ngram-files" and "midi-files", and write each generated piece as a text file and a MIDI file
+		File text = new File("ngram-files");
+		text.mkdir();
+		File midi = new File("midi-files");
+		midi.mkdir();
+		
+		FileConverter converter = new FileConverter();
+		NgramSampler sampler = new NgramSampler(model, seed);
+		start = System.nanoTime();
+		for (int i = 1; i <= count; i++)
+		{
+			File textFile = new File(text, "ngram_" + i + ".txt");
+			try (TextSink sink = new TextSink(new FileWriter(textFile)))
+			{
+				sampler.generate(ticks, sink);
+			}
+			converter.midiFile(textFile, midi);
+		}
+		System.out.printf("%d files generated in %.2f s%n", count, (System.nanoTime() - start) / 1e9);
+	}
+	
+}
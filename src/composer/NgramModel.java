@@ -0,0 +1,373 @@
+/**
+ * Counts how often each token follows each short sequence of tokens in the training pieces, to generate new pieces from
+ */
+
+package composer;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+public class NgramModel
+{
+
+	// the tokens, which are the same groups of characters as in the text format
+	public static final int REST = 0;   // an empty tick ("~ ")
+	public static final int END_TICK = 1;   // the end of a tick with notes (" ")
+	public static final int CHORD = 2;   // separates the notes of a tick ("!")
+	private static final int FIRST_NOTE = 3;   // followed by a token for every note and length up to 999 ("'040")
+
+	public static final int MAX_ORDER = 4;   // an n-gram is stored in a long, as up to 4 token ids of 16 bits each
+
+	private static final int MAGIC = 0x41494E47;   // "AING"
+	private static final int VERSION = 1;
+
+	private final int order;
+	private final int[] vocabulary;   // the token of each id (ids start at 1, so an id of 0 means no token)
+	private final LongIntHashMap ids = new LongIntHashMap();   // token -> id
+
+	// the n-grams, grouped by their context (the tokens before the last one), with the groups sorted by context
+	private final long[] contexts;   // the context of each group, as its token ids
+	private final int[] offsets;   // the index of the first n-gram of each group, followed by the number of n-grams
+	private final char[] nexts;   // the id of the last token of each n-gram
+	private final int[] cumulative;   // the count of each n-gram, added to the counts of the n-grams before it in its group
+	private final LongIntHashMap groups = new LongIntHashMap();   // context -> index of its group
+
+	private NgramModel(int order, int[] vocabulary, long[] contexts, int[] offsets, char[] nexts, int[] cumulative)
+	{
+		this.order = order;
+		this.vocabulary = vocabulary;
+		this.contexts = contexts;
+		this.offsets = offsets;
+		this.nexts = nexts;
+		this.cumulative = cumulative;
+
+		for (int id = 1; id < vocabulary.length; id++)
+			ids.put(vocabulary[id], id);
+		for (int group = 0; group < contexts.length; group++)
+			groups.put(contexts[group], group);
+	}
+
+	/**
+	 * @return the token of a note of length ticks (lengths longer than 999 ticks are stored as 999, as in the token format)
+	 */
+	public static int noteToken(int note, long length)
+	{
+		return FIRST_NOTE + (note - TokenVocabulary.LOWEST_NOTE) * 1000 + (int) Math.min(Math.max(length, 0), TokenVocabulary.MAX_DURATION);
+	}
+
+	public static boolean isNote(int token)
+	{
+		return token >= FIRST_NOTE;
+	}
+
+	/**
+	 * @return the MIDI number of the note of a note token
+	 */
+	public static int note(int token)
+	{
+		return (token - FIRST_NOTE) / 1000 + TokenVocabulary.LOWEST_NOTE;
+	}
+
+	/**
+	 * @return the length of the note of a note token
+	 */
+	public static int length(int token)
+	{
+		return (token - FIRST_NOTE) % 1000;
+	}
+
+	/**
+	 * This method counts every n-gram of up to order tokens in sequences, so that a token can be chosen after a context of any length
+	 * up to order - 1 tokens (backing off to shorter contexts for contexts that never appeared). Each token is first given a 16-bit id,
+	 * so an n-gram fits in a long, with its first token in the highest bits. The sequences are split between threads, each of which
+	 * counts its n-grams in its own LongIntHashMap, and the maps are then added together.
+	 *
+	 * @param sequences		the tokens of each training piece
+	 * @param order			the length of the longest n-gram (from 1 to MAX_ORDER)
+	 * @param threads		the number of threads that count at the same time
+	 * @return the trained model
+	 * @throws InterruptedException
+	 */
+	public static NgramModel train(List<int[]> sequences, int order, int threads) throws InterruptedException
+	{
+		if (order < 1 || order > MAX_ORDER)
+			throw new IllegalArgumentException("The order must be from 1 to " + MAX_ORDER);
+
+		// give each token an id, in ascending order of token
+		LongIntHashMap seen = new LongIntHashMap();
+		for (int[] sequence : sequences)
+			for (int token : sequence)
+				seen.put(token, 1);
+		long[] tokens = seen.keys();
+		Arrays.sort(tokens);
+		if (tokens.length > 0xFFFF)
+			throw new IllegalArgumentException("The training pieces have more than " + 0xFFFF + " different tokens");
+
+		int[] vocabulary = new int[tokens.length + 1];
+		LongIntHashMap ids = new LongIntHashMap(tokens.length);
+		for (int i = 0; i < tokens.length; i++)
+		{
+			vocabulary[i+1] = (int) tokens[i];
+			ids.put(tokens[i], i + 1);
+		}
+
+		// count the n-grams on several threads, each taking every threads-th sequence
+		List<Callable<LongIntHashMap>> tasks = new ArrayList<Callable<LongIntHashMap>>();
+		for (int t = 0; t < threads; t++)
+		{
+			int first = t;
+			tasks.add(() ->
+			{
+				LongIntHashMap counts = new LongIntHashMap(1 << 16);
+				for (int i = first; i < sequences.size(); i += threads)
+					count(sequences.get(i), ids, order, counts);
+				return counts;
+			});
+		}
+
+		LongIntHashMap counts = new LongIntHashMap(1 << 16);
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try
+		{
+			for (Future<LongIntHashMap> future : pool.invokeAll(tasks))
+				counts.addAll(future.get());
+		}
+		catch (ExecutionException e)
+		{
+			throw new IllegalStateException(e.getCause());
+		}
+		finally
+		{
+			pool.shutdown();
+		}
+
+		return compile(order, vocabulary, counts);
+	}
+
+	/**
+	 * This method adds the n-grams of a single sequence to counts.
+	 */
+	private static void count(int[] sequence, LongIntHashMap ids, int order, LongIntHashMap counts)
+	{
+		long window = 0;   // the ids of the last order tokens
+		long mask = order == MAX_ORDER ? -1L : (1L << (16 * order)) - 1;
+		for (int i = 0; i < sequence.length; i++)
+		{
+			window = ((window << 16) | ids.get(sequence[i], 0)) & mask;
+			for (int n = 1; n <= order && n <= i + 1; n++)
+			{
+				long ngram = n == MAX_ORDER ? window : window & ((1L << (16 * n)) - 1);
+				counts.add(ngram, 1);
+			}
+		}
+	}
+
+	/**
+	 * This method sorts the n-grams by their context, and stores them in arrays. The n-grams are sorted as unsigned numbers, so the
+	 * n-grams with the same context (the same bits above the last 16) end up next to each other.
+	 */
+	private static NgramModel compile(int order, int[] vocabulary, LongIntHashMap counts)
+	{
+		long[] ngrams = counts.keys();
+		for (int i = 0; i < ngrams.length; i++)   // flipping the sign bit makes the signed sort an unsigned sort
+			ngrams[i] ^= Long.MIN_VALUE;
+		Arrays.sort(ngrams);
+		for (int i = 0; i < ngrams.length; i++)
+			ngrams[i] ^= Long.MIN_VALUE;
+
+		int groupCount = 0;
+		for (int i = 0; i < ngrams.length; i++)
+			if (i == 0 || ngrams[i] >>> 16 != ngrams[i-1] >>> 16)
+				groupCount++;
+
+		long[] contexts = new long[groupCount];
+		int[] offsets = new int[groupCount + 1];
+		char[] nexts = new char[ngrams.length];
+		int[] cumulative = new int[ngrams.length];
+		int group = -1;
+		for (int i = 0; i < ngrams.length; i++)
+		{
+			long context = ngrams[i] >>> 16;
+			boolean newGroup = group < 0 || context != contexts[group];
+			if (newGroup)
+			{
+				group++;
+				contexts[group] = context;
+				offsets[group] = i;
+			}
+			nexts[i] = (char) (ngrams[i] & 0xFFFF);
+			cumulative[i] = (newGroup ? 0 : cumulative[i-1]) + counts.get(ngrams[i], 0);
+		}
+		offsets[groupCount] = ngrams.length;
+
+		return new NgramModel(order, vocabulary, contexts, offsets, nexts, cumulative);
+	}
+
+	public int getOrder()
+	{
+		return order;
+	}
+
+	/**
+	 * @return the number of different tokens in the training pieces
+	 */
+	public int getVocabularySize()
+	{
+		return vocabulary.length - 1;
+	}
+
+	/**
+	 * @return the number of different n-grams in the training pieces
+	 */
+	public int getNgramCount()
+	{
+		return nexts.length;
+	}
+
+	/**
+	 * @return the id of token, or 0 if token never appeared in the training pieces
+	 */
+	public int id(int token)
+	{
+		return ids.get(token, 0);
+	}
+
+	/**
+	 * @return the token of id
+	 */
+	public int token(int id)
+	{
+		return vocabulary[id];
+	}
+
+	/**
+	 * This method picks the id of the next token after history, using the longest context at the end of history that appeared in the
+	 * training pieces. Each token that followed that context is picked with a probability proportional to the number of times it
+	 * followed it.
+	 *
+	 * @param history		the ids of up to order - 1 previous tokens, with the most recent in the lowest 16 bits (an id of 0 ends
+	 * 							the history)
+	 * @param random		a random number from 0 (inclusive) to 1 (exclusive)
+	 * @return the id of the next token
+	 */
+	public int next(long history, double random)
+	{
+		int group = -1;
+		for (int n = order - 1; n >= 0 && group < 0; n--)
+		{
+			long context = n == 0 ? 0 : history & ((1L << (16 * n)) - 1);
+			if (n > 0 && (context >>> (16 * (n - 1))) == 0)   // the history is shorter than n tokens
+				continue;
+			group = groups.get(context, -1);
+		}
+		if (group < 0)
+			throw new IllegalStateException("The model has no n-grams");
+
+		int start = offsets[group];
+		int end = offsets[group + 1];
+		int target = (int) (random * cumulative[end - 1]);
+
+		// find the first n-gram whose cumulative count is greater than target
+		int low = start;
+		int high = end - 1;
+		while (low < high)
+		{
+			int middle = (low + high) >>> 1;
+			if (cumulative[middle] > target)
+				high = middle;
+			else
+				low = middle + 1;
+		}
+		return nexts[low];
+	}
+
+	/**
+	 * This method writes the model to file. The file holds the magic number, the version, the order, the vocabulary, and then the arrays
+	 * of the n-grams (the contexts, the offsets of their groups, the last token of each n-gram, and the cumulative counts).
+	 *
+	 * @param file		the file to write
+	 * @throws IOException
+	 */
+	public void save(File file) throws IOException
+	{
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 65536)))
+		{
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(order);
+
+			out.writeInt(vocabulary.length);
+			for (int token : vocabulary)
+				out.writeInt(token);
+
+			out.writeInt(contexts.length);
+			for (long context : contexts)
+				out.writeLong(context);
+			for (int offset : offsets)
+				out.writeInt(offset);
+
+			out.writeInt(nexts.length);
+			for (char next : nexts)
+				out.writeChar(next);
+			for (int count : cumulative)
+				out.writeInt(count);
+		}
+	}
+
+	/**
+	 * This method reads a model written by save().
+	 *
+	 * @param file		the file to read
+	 * @return the model
+	 * @throws IOException if the file is not a model of this version
+	 */
+	public static NgramModel load(File file) throws IOException
+	{
+		try (FileChannel channel = FileChannel.open(file.toPath()))
+		{
+			ByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if (data.getInt() != MAGIC)
+				throw new IOException("Not an n-gram model");
+			int version = data.getInt();
+			if (version != VERSION)
+				throw new IOException("N-gram model version " + version + " is not supported");
+			int order = data.getInt();
+
+			int[] vocabulary = new int[data.getInt()];
+			data.asIntBuffer().get(vocabulary);
+			data.position(data.position() + 4 * vocabulary.length);
+
+			long[] contexts = new long[data.getInt()];
+			data.asLongBuffer().get(contexts);
+			data.position(data.position() + 8 * contexts.length);
+			int[] offsets = new int[contexts.length + 1];
+			data.asIntBuffer().get(offsets);
+			data.position(data.position() + 4 * offsets.length);
+
+			char[] nexts = new char[data.getInt()];
+			data.asCharBuffer().get(nexts);
+			data.position(data.position() + 2 * nexts.length);
+			int[] cumulative = new int[nexts.length];
+			data.asIntBuffer().get(cumulative);
+
+			return new NgramModel(order, vocabulary, contexts, offsets, nexts, cumulative);
+		}
+		catch (BufferUnderflowException | IllegalArgumentException e)
+		{
+			throw new IOException("N-gram model is shorter than expected");
+		}
+	}
+
+}
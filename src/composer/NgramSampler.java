@@ -0,0 +1,83 @@
+/**
+ * Generates pieces from an NgramModel, passing their ticks to a TickSink
+ */
+
+package composer;
+import java.io.IOException;
+import java.util.Random;
+
+public class NgramSampler
+{
+
+	private final NgramModel model;
+	private final Random random;
+
+	/**
+	 * Creates an NgramSampler. Two samplers with the same model and seed generate the same pieces.
+	 *
+	 * @param model		the model to sample from
+	 * @param seed		the seed of the random numbers used to sample
+	 */
+	public NgramSampler(NgramModel model, long seed)
+	{
+		this.model = model;
+		random = new Random(seed);
+	}
+
+	/**
+	 * This method generates a piece of ticks ticks, starting with an empty history. Tokens that do not fit where they were picked are
+	 * fixed instead of being passed on as they are: a chord token is only used between two notes, the end of a tick without notes is
+	 * an empty tick, and a rest after notes first ends the tick of the notes.
+	 *
+	 * @param ticks		the number of ticks to generate
+	 * @param sink		the TickSink that receives the ticks
+	 * @throws IOException
+	 */
+	public void generate(long ticks, TickSink sink) throws IOException
+	{
+		int order = model.getOrder();
+		long mask = order == 1 ? 0 : (1L << (16 * (order - 1))) - 1;   // keeps the ids of the last order - 1 tokens
+		long history = 0;
+		long tick = 0;
+		long rests = 0;   // the number of empty ticks that have not been passed to sink yet
+		boolean noteInTick = false;
+
+		while (tick < ticks)
+		{
+			int id = model.next(history, random.nextDouble());
+			history = ((history << 16) | id) & mask;
+			int token = model.token(id);
+
+			if (NgramModel.isNote(token))
+			{
+				if (rests > 0)
+				{
+					sink.rests(rests);
+					rests = 0;
+				}
+				sink.note(NgramModel.note(token), NgramModel.length(token));
+				noteInTick = true;
+			}
+			else if (token != NgramModel.CHORD)   // the end of a tick or a rest
+			{
+				if (noteInTick)
+				{
+					sink.endTick();
+					tick++;
+					noteInTick = false;
+					if (token == NgramModel.END_TICK)
+						continue;
+				}
+				if (tick < ticks)   // a rest, or the end of a tick that has no notes
+				{
+					rests++;
+					tick++;
+				}
+			}
+		}
+
+		if (rests > 0)
+			sink.rests(rests);
+	}
+
+}
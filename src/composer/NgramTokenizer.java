@@ -0,0 +1,125 @@
+/**
+ * Turns the ticks of a piece into the tokens of an NgramModel
+ */
+
+package composer;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+public class NgramTokenizer implements TickSink
+{
+
+	private int[] tokens = new int[4096];
+	private int size = 0;
+	private boolean noteInTick = false;   // true if a note has been added for the current tick
+
+	/**
+	 * This method adds the token of a note, after a chord token if it is not the first note of the tick.
+	 */
+	public void note(int note, long length)
+	{
+		if (noteInTick)
+			add(NgramModel.CHORD);
+		add(NgramModel.noteToken(note, length));
+		noteInTick = true;
+	}
+
+	public void endTick()
+	{
+		add(NgramModel.END_TICK);
+		noteInTick = false;
+	}
+
+	/**
+	 * This method adds a rest token for each empty tick.
+	 */
+	public void rests(long count)
+	{
+		for (long i = 0; i < count; i++)
+			add(NgramModel.REST);
+	}
+
+	/**
+	 * @return the tokens added so far
+	 */
+	public int[] getTokens()
+	{
+		return Arrays.copyOf(tokens, size);
+	}
+
+	/**
+	 * This method reads the tokens of every file on several threads at once. MIDI files are read the same way as in
+	 * FileConverter.textFile(), and text files (ending in .txt) are read by a TextDecoder.
+	 *
+	 * @param files			the MIDI and text files to read
+	 * @param threads		the number of files that are read at the same time
+	 * @return the tokens of each file, in the same order as files
+	 * @throws IOException if a file cannot be read
+	 * @throws InterruptedException
+	 */
+	public static List<int[]> tokenize(File[] files, int threads) throws IOException, InterruptedException
+	{
+		ThreadLocal<FileConverter> converters = ThreadLocal.withInitial(FileConverter::new);
+		List<Callable<int[]>> tasks = new ArrayList<Callable<int[]>>();
+		for (File file : files)
+			tasks.add(() -> tokenize(converters.get(), file));
+
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try
+		{
+			List<int[]> sequences = new ArrayList<int[]>();
+			for (Future<int[]> future : pool.invokeAll(tasks))
+			{
+				try
+				{
+					sequences.add(future.get());
+				}
+				catch (ExecutionException e)
+				{
+					if (e.getCause() instanceof IOException)
+						throw (IOException) e.getCause();
+					throw new IOException(e.getCause());
+				}
+			}
+			return sequences;
+		}
+		finally
+		{
+			pool.shutdown();
+		}
+	}
+
+	private static int[] tokenize(FileConverter converter, File file) throws Exception
+	{
+		NgramTokenizer tokenizer = new NgramTokenizer();
+		if (file.getName().endsWith(".txt"))
+		{
+			TextDecoder decoder = new TextDecoder(new TickAdapter(tokenizer));
+			try (FileChannel channel = FileChannel.open(file.toPath()))
+			{
+				decoder.decode(channel);
+			}
+		}
+		else
+		{
+			converter.encode(file, tokenizer);
+		}
+		return tokenizer.getTokens();
+	}
+
+	private void add(int token)
+	{
+		if (size == tokens.length)
+			tokens = Arrays.copyOf(tokens, size * 2);
+		tokens[size++] = token;
+	}
+
+}
@@ -0,0 +1,60 @@
+/**
+ * Passes the ticks of an encoded piece on to a NoteSink, as notes with the tick they start on
+ */
+
+package composer;
+import java.io.IOException;
+
+public class NoteAdapter implements TickSink
+{
+
+	private final NoteSink sink;
+	private long tick = 0;   // the tick being passed on
+
+	/**
+	 * Creates a NoteAdapter that passes the notes of the ticks it receives to sink. This is the opposite of a TickAdapter, so the ticks
+	 * of a TickEncoder or a TokenDecoder can be passed to any NoteSink.
+	 *
+	 * @param sink		the NoteSink that receives the notes
+	 */
+	public NoteAdapter(NoteSink sink)
+	{
+		this.sink = sink;
+	}
+
+	public void note(int note, long length) throws IOException
+	{
+		sink.note(tick, note, (int) Math.min(length, Integer.MAX_VALUE));
+	}
+
+	public void endTick() throws IOException
+	{
+		tick++;
+		sink.advance(tick);
+	}
+
+	public void rests(long count) throws IOException
+	{
+		tick += count;
+		sink.advance(tick);
+	}
+
+	/**
+	 * This method tells the sink that the piece has ended, once every tick has been passed on.
+	 *
+	 * @throws IOException
+	 */
+	public void end() throws IOException
+	{
+		sink.end(tick);
+	}
+
+	/**
+	 * @return the number of ticks that have been passed on
+	 */
+	public long getTick()
+	{
+		return tick;
+	}
+
+}
@@ -0,0 +1,157 @@
+/**
+ * Creates transposed and time-stretched variants of the note events of a piece, one at a time, to augment the training data
+ */
+
+package composer;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+public class NoteAugmenter
+{
+
+	public static final int LOWEST_NOTE = 21;   // the range of note values that sortedTrack() keeps
+	public static final int HIGHEST_NOTE = 108;
+
+	private final int[] transpositions;
+	private final int[] stretches;
+
+	/**
+	 * Creates a NoteAugmenter. Every transposition is used with every stretch, so there are transpositions.length *
+	 * stretches.length variants of each piece, and a transposition of 0 with a stretch of 100 gives the piece itself.
+	 *
+	 * @param transpositions	the number of semitones that each variant is moved up by (negative to move it down)
+	 * @param stretches			the length of each variant, as a percentage of the length of the piece (such as 90 to play it
+	 * 								faster, or 110 to play it slower)
+	 */
+	public NoteAugmenter(int[] transpositions, int[] stretches)
+	{
+		if (transpositions.length == 0 || stretches.length == 0)
+			throw new IllegalArgumentException("There must be at least one transposition and one stretch");
+		for (int stretch : stretches)
+			if (stretch < 1)
+				throw new IllegalArgumentException("A stretch must be at least 1%");
+
+		this.transpositions = transpositions.clone();
+		this.stretches = stretches.clone();
+	}
+
+	/**
+	 * This method reads a list of numbers, such as "90,100,110", where a range of numbers can be written as its first and last number
+	 * separated by two dots, such as "-5..6".
+	 *
+	 * @param list		the list of numbers
+	 * @return the numbers in list, in order
+	 */
+	public static int[] parseList(String list)
+	{
+		String[] items = list.split(",");
+		int count = 0;
+		int[][] ranges = new int[items.length][];
+		for (int i = 0; i < items.length; i++)
+		{
+			String item = items[i].trim();
+			int dots = item.indexOf("..");
+			int first = Integer.parseInt(dots < 0 ? item : item.substring(0, dots));
+			int last = dots < 0 ? first : Integer.parseInt(item.substring(dots + 2));
+			if (last < first)
+				throw new IllegalArgumentException("The range \"" + item + "\" is empty");
+			ranges[i] = new int[] {first, last};
+			count += last - first + 1;
+		}
+
+		int[] numbers = new int[count];
+		int n = 0;
+		for (int[] range : ranges)
+			for (int number = range[0]; number <= range[1]; number++)
+				numbers[n++] = number;
+		return numbers;
+	}
+
+	/**
+	 * @return the number of variants of each piece
+	 */
+	public int size()
+	{
+		return transpositions.length * stretches.length;
+	}
+
+	/**
+	 * @return the number of semitones that variant index is moved up by
+	 */
+	public int transposition(int index)
+	{
+		return transpositions[index % transpositions.length];
+	}
+
+	/**
+	 * @return the length of variant index, as a percentage of the length of the piece
+	 */
+	public int stretch(int index)
+	{
+		return stretches[index / transpositions.length];
+	}
+
+	/**
+	 * This method fills into with a variant of events. Each note is moved by the transposition of the variant, and its events are
+	 * left out if that moves it outside the range of notes that sortedTrack() keeps (21 to 108), in the same way that sortedTrack()
+	 * leaves out the notes of the original piece. The tick of each event is multiplied by the stretch of the variant and rounded down,
+	 * in the same way that a TempoMap compresses or stretches ticks, and the events that end up with the same tick are put back in order
+	 * of pitch.
+	 * <br>
+	 * PRECONDITION:	events are sorted as returned by FileConverter.sortedTrack()
+	 *
+	 * @param events		the sorted note events of a piece
+	 * @param index			the index of the variant, from 0 to size() - 1
+	 * @param into			the buffer that the variant is written to (it is cleared first)
+	 */
+	public void variant(NoteEventBuffer events, int index, NoteEventBuffer into)
+	{
+		int transposition = transposition(index);
+		long stretch = stretch(index);
+
+		into.clear();
+		for (int i = 0; i < events.size(); i++)
+		{
+			int pitch = events.pitch(i) + transposition;
+			if (pitch-12 < LOWEST_NOTE || pitch-12 > HIGHEST_NOTE)   // note: subtract octave
+				continue;
+
+			into.add(events.tick(i) * stretch / 100, events.status(i), pitch, events.velocity(i));
+		}
+
+		if (stretch < 100)   // stretching a piece out never moves two ticks together
+			into.sortByPitch();
+	}
+
+	/**
+	 * This method returns an iterator over every variant of events, in order of index. The variants are created one at a time, as
+	 * next() is called, into a single buffer, so only one of them is held at once.
+	 * <br>
+	 * NOTE:	the buffer returned by next() is overwritten by the following call to next(), so it should be encoded before then
+	 *
+	 * @param events		the sorted note events of a piece
+	 * @return an iterator over the variants of events
+	 */
+	public Iterator<NoteEventBuffer> variants(final NoteEventBuffer events)
+	{
+		final NoteEventBuffer buffer = new NoteEventBuffer(events.size());
+		return new Iterator<NoteEventBuffer>()
+		{
+			private int index = 0;
+
+			public boolean hasNext()
+			{
+				return index < size();
+			}
+
+			public NoteEventBuffer next()
+			{
+				if (!hasNext())
+					throw new NoSuchElementException();
+				variant(events, index++, buffer);
+				return buffer;
+			}
+		};
+	}
+
+}
@@ -0,0 +1,224 @@
+/**
+ * Stores the note events of a track in primitive arrays
+ */
+
+package composer;
+import java.util.Arrays;
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.Track;
+
+public class NoteEventBuffer
+{
+
+	private long[] ticks;
+	private byte[] statuses;
+	private byte[] pitches;
+	private byte[] velocities;
+	private int size = 0;
+
+	/**
+	 * Creates an empty NoteEventBuffer.
+	 */
+	public NoteEventBuffer()
+	{
+		this(256);
+	}
+
+	/**
+	 * Creates an empty NoteEventBuffer that can hold capacity events before it needs to grow.
+	 *
+	 * @param capacity		the initial number of events the buffer can hold
+	 */
+	public NoteEventBuffer(int capacity)
+	{
+		capacity = Math.max(capacity, 16);
+		ticks = new long[capacity];
+		statuses = new byte[capacity];
+		pitches = new byte[capacity];
+		velocities = new byte[capacity];
+	}
+
+	/**
+	 * This method creates a NoteEventBuffer holding all the note on and note off events in track, in the same order.
+	 *
+	 * @param track		the track to read the events from
+	 * @return a NoteEventBuffer holding the note events of track
+	 */
+	public static NoteEventBuffer of(Track track)
+	{
+		NoteEventBuffer buffer = new NoteEventBuffer(track.size());
+		buffer.addAll(track);
+		return buffer;
+	}
+
+	/**
+	 * This method adds all the note on and note off events in track to the end of the buffer. Note events are always short messages,
+	 * so the status and data bytes are read through the ShortMessage getters, which (unlike getMessage()) do not copy the message.
+	 *
+	 * @param track		the track to read the events from
+	 */
+	public void addAll(Track track)
+	{
+		for (int i = 0; i < track.size(); i++)
+		{
+			MidiEvent event = track.get(i);
+			MidiMessage message = event.getMessage();
+
+			if (message instanceof ShortMessage && message.getLength() == 3)
+			{
+				ShortMessage sm = (ShortMessage) message;
+				int command = sm.getCommand();
+				if (command == ShortMessage.NOTE_ON || command == ShortMessage.NOTE_OFF)
+					add(event.getTick(), sm.getStatus(), sm.getData1(), sm.getData2());
+			}
+		}
+	}
+
+	/**
+	 * This method adds an event to the end of the buffer.
+	 *
+	 * @param tick			the tick of the event
+	 * @param status		the status byte of the event (0x80 to 0x9F)
+	 * @param pitch			the MIDI number of the note
+	 * @param velocity		the velocity of the note
+	 */
+	public void add(long tick, int status, int pitch, int velocity)
+	{
+		if (size == ticks.length)
+			grow(size + 1);
+
+		ticks[size] = tick;
+		statuses[size] = (byte) status;
+		pitches[size] = (byte) pitch;
+		velocities[size] = (byte) velocity;
+		size++;
+	}
+
+	/**
+	 * This method adds the event at index in other to the end of the buffer.
+	 *
+	 * @param other		the buffer to copy the event from
+	 * @param index		the index of the event in other
+	 */
+	public void add(NoteEventBuffer other, int index)
+	{
+		add(other.ticks[index], other.statuses[index], other.pitches[index], other.velocities[index]);
+	}
+
+	/**
+	 * This method removes all the events from the buffer, keeping its arrays so that it can be filled again without allocating.
+	 */
+	public void clear()
+	{
+		size = 0;
+	}
+
+	public int size()
+	{
+		return size;
+	}
+
+	public long tick(int index)
+	{
+		return ticks[index];
+	}
+
+	public void setTick(int index, long tick)
+	{
+		ticks[index] = tick;
+	}
+
+	/**
+	 * @return the status byte of the event at index, from 0 to 255
+	 */
+	public int status(int index)
+	{
+		return statuses[index] & 0xFF;
+	}
+
+	/**
+	 * @return the MIDI number of the note of the event at index, from 0 to 127
+	 */
+	public int pitch(int index)
+	{
+		return pitches[index] & 0xFF;
+	}
+
+	/**
+	 * @return the velocity of the event at index, from 0 to 127
+	 */
+	public int velocity(int index)
+	{
+		return velocities[index] & 0xFF;
+	}
+
+	/**
+	 * @return the tick of the last event in the buffer, or 0 if the buffer is empty
+	 */
+	public long lastTick()
+	{
+		return size > 0 ? ticks[size-1] : 0;
+	}
+
+	/**
+	 * This method returns true if the buffer holds a note on event, which is an event with a status of 0x90, or 144.
+	 *
+	 * @return true if the buffer contains a note, false otherwise
+	 */
+	public boolean noteFound()
+	{
+		for (int i = 0; i < size; i++)
+			if (statuses[i] == (byte) ShortMessage.NOTE_ON)
+				return true;
+
+		return false;
+	}
+
+	/**
+	 * This method orders the events that have the same tick in ascending order of pitch. Events with the same tick and pitch keep
+	 * their order. Insertion sort is used, since there are only ever a few events per tick.
+	 * <br>
+	 * PRECONDITION:	the events in the buffer are arranged in chronological order
+	 */
+	public void sortByPitch()
+	{
+		int index = 0;
+		while (index < size)
+		{
+			// firstIndex is the index of the first event of the tick, index is one more than the index of the last event of the tick
+			int firstIndex = index;
+			while (index < size && ticks[index] == ticks[firstIndex])
+				index++;
+
+			for (int j = firstIndex + 1; j < index; j++)
+			{
+				byte status = statuses[j];
+				byte pitch = pitches[j];
+				byte velocity = velocities[j];
+				int i = j;
+				while (i > firstIndex && (pitch & 0xFF) < (pitches[i-1] & 0xFF))
+				{
+					statuses[i] = statuses[i-1];
+					pitches[i] = pitches[i-1];
+					velocities[i] = velocities[i-1];
+					i--;
+				}
+				statuses[i] = status;
+				pitches[i] = pitch;
+				velocities[i] = velocity;
+			}
+		}
+	}
+
+	private void grow(int minCapacity)
+	{
+		int capacity = Math.max(minCapacity, ticks.length * 2);
+		ticks = Arrays.copyOf(ticks, capacity);
+		statuses = Arrays.copyOf(statuses, capacity);
+		pitches = Arrays.copyOf(pitches, capacity);
+		velocities = Arrays.copyOf(velocities, capacity);
+	}
+
+}
@@ -0,0 +1,38 @@
+/**
+ * A stage that passes the notes it receives on to another NoteSink, changing or leaving out some of them on the way
+ */
+
+package composer;
+import java.io.IOException;
+
+public abstract class NoteFilter implements NoteSink
+{
+
+	protected final NoteSink sink;
+
+	/**
+	 * Creates a NoteFilter that passes every call on to sink, unless a subclass overrides it.
+	 *
+	 * @param sink		the NoteSink that receives the notes
+	 */
+	protected NoteFilter(NoteSink sink)
+	{
+		this.sink = sink;
+	}
+
+	public void note(long tick, int note, int length) throws IOException
+	{
+		sink.note(tick, note, length);
+	}
+
+	public void advance(long tick) throws IOException
+	{
+		sink.advance(tick);
+	}
+
+	public void end(long tick) throws IOException
+	{
+		sink.end(tick);
+	}
+
+}
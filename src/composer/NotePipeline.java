@@ -0,0 +1,282 @@
+/**
+ * Connects a source of notes to a sink through a chain of stages, each of which runs on the thread before it or on a thread of its own
+ */
+
+package composer;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import javax.sound.midi.InvalidMidiDataException;
+
+public class NotePipeline
+{
+
+	/**
+	 * Reads the notes of a piece and passes them to a NoteSink, ending the piece once every note has been passed.
+	 */
+	public interface Source
+	{
+		void read(NoteSink sink) throws IOException, InvalidMidiDataException;
+	}
+
+	/**
+	 * Creates the NoteSink of a stage, which passes the notes it receives on to the next stage.
+	 */
+	public interface Stage
+	{
+		NoteSink wrap(NoteSink next);
+	}
+
+	private static final Stage ASYNC = null;   // marks where the stages after it start running on a new thread
+
+	private final Source source;
+	private final List<Stage> stages = new ArrayList<Stage>();
+	private int batchSize = AsyncNoteSink.DEFAULT_BATCH_SIZE;
+	private int batches = AsyncNoteSink.DEFAULT_BATCHES;
+
+	public static void main(String[] args) throws IOException, InvalidMidiDataException
+	{
+		// the input and output files are given as arguments, and each can be a MIDI file (".mid"), a text file (".txt") or a token file
+		// (".tok"), along with "--rest-runs" to read and write rest runs in text files, "--transpose=" (the number of semitones to move each
+		// note by), "--stats" to print the number and range of the notes, and "--async" to run the stages after the source (and then the
+		// output after the stages) on threads of their own
+		List<String> files = new ArrayList<String>();
+		boolean restRuns = false;
+		int semitones = 0;
+		boolean stats = false;
+		boolean async = false;
+		for (String arg : args)
+		{
+			if (arg.equals("--rest-runs"))
+				restRuns = true;
+			else if (arg.startsWith("--transpose="))
+				semitones = Integer.parseInt(arg.substring("--transpose=".length()));
+			else if (arg.equals("--stats"))
+				stats = true;
+			else if (arg.equals("--async"))
+				async = true;
+			else
+				files.add(arg);
+		}
+		if (files.size() != 2)
+		{
+			System.out.println("Give an input file and an output file, such as \"piece.mid piece.txt\".");
+			return;
+		}
+
+		NotePipeline pipeline = new NotePipeline(source(new File(files.get(0)), restRuns));
+		if (async)
+			pipeline.async();
+		NoteStats[] noteStats = new NoteStats[1];
+		if (stats)
+			pipeline.add(next -> noteStats[0] = new NoteStats(next));
+		if (semitones != 0)
+		{
+			int transpose = semitones;
+			pipeline.add(next -> new TransposeFilter(next, transpose));
+		}
+		if (async)
+			pipeline.async();
+
+		long start = System.nanoTime();
+		pipeline.run(new File(files.get(1)), restRuns);
+		System.out.printf("%s written in %.2f s%n", files.get(1), (System.nanoTime() - start) / 1e9);
+		if (stats)
+			System.out.println(noteStats[0]);
+	}
+
+	/**
+	 * Creates a NotePipeline that reads its notes from source.
+	 *
+	 * @param source		the source of the notes, such as one returned by smf(), text() or tokens()
+	 */
+	public NotePipeline(Source source)
+	{
+		this.source = source;
+	}
+
+	/**
+	 * This method returns a Source that reads the notes of a MIDI file with an SmfDecoder, which gives the same notes that textFile()
+	 * writes, in a single pass over the file.
+	 */
+	public static Source smf(File file)
+	{
+		return sink -> SmfDecoder.decode(file, sink);
+	}
+
+	/**
+	 * This method returns a Source that reads the notes of a text file with a TextDecoder, in the same way as midiFile().
+	 *
+	 * @param file			the text file
+	 * @param restRuns		true to read rest runs
+	 */
+	public static Source text(File file, boolean restRuns)
+	{
+		return sink ->
+		{
+			try (FileChannel channel = FileChannel.open(file.toPath()))
+			{
+				new TextDecoder(sink, null, restRuns).decode(channel);
+			}
+		};
+	}
+
+	/**
+	 * This method returns a Source that reads the notes of a token file with a TokenDecoder.
+	 */
+	public static Source tokens(File file)
+	{
+		return sink ->
+		{
+			NoteAdapter adapter = new NoteAdapter(sink);
+			TokenDecoder.decode(file, adapter);
+			adapter.end();
+		};
+	}
+
+	/**
+	 * This method returns the Source for a file, chosen by its extension (".mid", ".txt" or ".tok").
+	 *
+	 * @param file			the file to read
+	 * @param restRuns		true to read rest runs, if file is a text file
+	 * @throws IllegalArgumentException if the extension is not one of these
+	 */
+	public static Source source(File file, boolean restRuns)
+	{
+		String name = file.getName().toLowerCase();
+		if (name.endsWith(".mid") || name.endsWith(".midi"))
+			return smf(file);
+		if (name.endsWith(".txt"))
+			return text(file, restRuns);
+		if (name.endsWith(".tok"))
+			return tokens(file);
+		throw new IllegalArgumentException("Cannot read notes from " + file);
+	}
+
+	/**
+	 * This method adds a stage to the end of the pipeline. The stage runs on the same thread as the stage before it, so each note is
+	 * passed straight from one stage to the next without being copied.
+	 *
+	 * @param stage		the stage to add, such as "next -> new TransposeFilter(next, 2)"
+	 * @return this NotePipeline
+	 */
+	public NotePipeline add(Stage stage)
+	{
+		if (stage == null)
+			throw new NullPointerException("stage");
+		stages.add(stage);
+		return this;
+	}
+
+	/**
+	 * This method moves the stages added after this call, and the sink, to a new thread. The notes are passed to that thread through an
+	 * AsyncNoteSink, which blocks the stages before it while all of its batches are full, so a slow stage never makes the notes before
+	 * it pile up in memory.
+	 *
+	 * @return this NotePipeline
+	 */
+	public NotePipeline async()
+	{
+		stages.add(ASYNC);
+		return this;
+	}
+
+	/**
+	 * This method sets the batches of the AsyncNoteSinks created by async() (4 batches of 1024 calls by default).
+	 *
+	 * @param batchSize		the number of calls in each batch (1 to pass every note on as soon as it arrives)
+	 * @param batches		the number of batches of each thread
+	 * @return this NotePipeline
+	 */
+	public NotePipeline setBatches(int batchSize, int batches)
+	{
+		this.batchSize = batchSize;
+		this.batches = batches;
+		return this;
+	}
+
+	/**
+	 * This method reads every note from the source and passes it through the stages to sink, returning once sink has ended the piece.
+	 * The stages are created from the last to the first, so each one is given the stage after it. If anything fails, every thread of the
+	 * pipeline is stopped before the error is thrown.
+	 *
+	 * @param sink		the NoteSink that receives the notes, such as a TickAdapter over a TextSink, an SmfSink or a ReceiverSink
+	 * @throws IOException
+	 * @throws InvalidMidiDataException
+	 */
+	public void run(NoteSink sink) throws IOException, InvalidMidiDataException
+	{
+		List<AsyncNoteSink> threads = new ArrayList<AsyncNoteSink>();
+		try
+		{
+			NoteSink next = sink;
+			for (int i = stages.size() - 1; i >= 0; i--)
+			{
+				if (stages.get(i) == ASYNC)
+				{
+					AsyncNoteSink thread = new AsyncNoteSink(next, batchSize, batches);
+					threads.add(thread);
+					next = thread;
+				}
+				else
+				{
+					next = stages.get(i).wrap(next);
+				}
+			}
+
+			source.read(next);
+		}
+		finally
+		{
+			for (AsyncNoteSink thread : threads)
+				thread.close();
+		}
+	}
+
+	/**
+	 * This method runs the pipeline into a file, chosen by its extension: a MIDI file is written by an SmfSink, in the same way as
+	 * midiFile(), and a text or token file is written through a TickAdapter by a TextSink or a TokenSink, in the same way as textFile()
+	 * and tokenFile().
+	 *
+	 * @param file			the file to write
+	 * @param restRuns		true to write rest runs, if file is a text file
+	 * @throws IOException
+	 * @throws InvalidMidiDataException
+	 * @throws IllegalArgumentException if the extension is not ".mid", ".txt" or ".tok"
+	 */
+	public void run(File file, boolean restRuns) throws IOException, InvalidMidiDataException
+	{
+		String name = file.getName();
+		String lowerName = name.toLowerCase();
+		if (lowerName.endsWith(".mid") || lowerName.endsWith(".midi"))
+		{
+			try (SmfSink sink = new SmfSink(file, name.substring(0, name.indexOf("."))))
+			{
+				run(sink);
+			}
+		}
+		else if (lowerName.endsWith(".txt"))
+		{
+			try (TextSink sink = new TextSink(new FileWriter(file), restRuns))
+			{
+				run(new TickAdapter(sink));
+			}
+		}
+		else if (lowerName.endsWith(".tok"))
+		{
+			try (TokenSink sink = new TokenSink(new FileOutputStream(file)))
+			{
+				run(new TickAdapter(sink));
+			}
+		}
+		else
+		{
+			throw new IllegalArgumentException("Cannot write notes to " + file);
+		}
+	}
+
+}
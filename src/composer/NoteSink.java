@@ -0,0 +1,38 @@
+/**
+ * Receives the notes of a decoded piece in the order they start
+ */
+
+package composer;
+import java.io.IOException;
+
+public interface NoteSink
+{
+
+	/**
+	 * This method is called for every note, in the order the notes start. Notes that start on the same tick are passed in the order
+	 * they were written.
+	 *
+	 * @param tick		the tick at which the note starts
+	 * @param note		the MIDI number of the note
+	 * @param length	the length of the note (in MIDI ticks)
+	 * @throws IOException
+	 */
+	void note(long tick, int note, int length) throws IOException;
+
+	/**
+	 * This method is called whenever the piece moves on to a new tick. No note passed after this call starts before tick.
+	 *
+	 * @param tick		the new tick
+	 * @throws IOException
+	 */
+	void advance(long tick) throws IOException;
+
+	/**
+	 * This method is called once, after the last note of the piece.
+	 *
+	 * @param tick		the tick at which the piece ends
+	 * @throws IOException
+	 */
+	void end(long tick) throws IOException;
+
+}
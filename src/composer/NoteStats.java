@@ -0,0 +1,113 @@
+/**
+ * Counts the notes that pass through it, without changing them
+ */
+
+package composer;
+import java.io.IOException;
+
+public class NoteStats extends NoteFilter
+{
+
+	private long noteCount = 0;
+	private long tickCount = 0;
+	private int lowestNote = Integer.MAX_VALUE;
+	private int highestNote = Integer.MIN_VALUE;
+	private int longestNote = 0;
+	private int largestChord = 0;   // the most notes that start on the same tick
+
+	private long chordTick = -1;   // the tick of the notes counted by chordSize
+	private int chordSize = 0;
+
+	/**
+	 * Creates a NoteStats that passes every note on to sink.
+	 *
+	 * @param sink		the NoteSink that receives the notes, or null to only count them
+	 */
+	public NoteStats(NoteSink sink)
+	{
+		super(sink);
+	}
+
+	public void note(long tick, int note, int length) throws IOException
+	{
+		noteCount++;
+		lowestNote = Math.min(lowestNote, note);
+		highestNote = Math.max(highestNote, note);
+		longestNote = Math.max(longestNote, length);
+
+		if (tick != chordTick)
+		{
+			chordTick = tick;
+			chordSize = 0;
+		}
+		largestChord = Math.max(largestChord, ++chordSize);
+
+		if (sink != null)
+			sink.note(tick, note, length);
+	}
+
+	public void advance(long tick) throws IOException
+	{
+		if (sink != null)
+			sink.advance(tick);
+	}
+
+	public void end(long tick) throws IOException
+	{
+		tickCount = tick;
+		if (sink != null)
+			sink.end(tick);
+	}
+
+	public long getNoteCount()
+	{
+		return noteCount;
+	}
+
+	/**
+	 * @return the length of the piece (in ticks), once it has ended
+	 */
+	public long getTickCount()
+	{
+		return tickCount;
+	}
+
+	/**
+	 * @return the lowest note value, or -1 if there were no notes
+	 */
+	public int getLowestNote()
+	{
+		return noteCount > 0 ? lowestNote : -1;
+	}
+
+	/**
+	 * @return the highest note value, or -1 if there were no notes
+	 */
+	public int getHighestNote()
+	{
+		return noteCount > 0 ? highestNote : -1;
+	}
+
+	/**
+	 * @return the length of the longest note (in ticks)
+	 */
+	public int getLongestNote()
+	{
+		return longestNote;
+	}
+
+	/**
+	 * @return the most notes that start on the same tick
+	 */
+	public int getLargestChord()
+	{
+		return largestChord;
+	}
+
+	public String toString()
+	{
+		return String.format("%d notes over %d ticks, notes %d to %d, longest note %d ticks, largest chord %d notes", noteCount, tickCount,
+				getLowestNote(), getHighestNote(), longestNote, largestChord);
+	}
+
+}
@@ -0,0 +1,386 @@
+/**
+ * Plays decoded notes through a MIDI Receiver as they arrive, while the rest of the piece is still being generated
+ */
+
+package composer;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.ShortMessage;
+
+public class ReceiverSink implements NoteSink, Closeable
+{
+
+	public static final double MICROS_PER_TICK = (double) TempoMap.DEFAULT_TEMPO / TempoMap.TARGET_RESOLUTION;   // 120 bpm
+	public static final long DEFAULT_LATENCY_MILLIS = 200;
+	public static final int DEFAULT_CAPACITY = 1024;
+
+	private static final long END = -1;   // the queued event that ends the piece
+	private static final long NONE = -2;   // returned by take() if no event arrived in time
+
+	private final Receiver receiver;
+	private final boolean realtime;
+	private final long latencyNanos;
+
+	// the notes passed to note() that have not been played yet, packed by pack(), in a ring buffer guarded by lock
+	private final long[] queue;
+	private int head = 0;
+	private int size = 0;
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition notEmpty = lock.newCondition();
+	private final Condition notFull = lock.newCondition();
+
+	// the ends of the notes that are playing, in a binary heap ordered by tick (only used by the player thread)
+	private long[] offs = new long[64];
+	private int offCount = 0;
+
+	private final Thread player;
+	private volatile Throwable error = null;   // why the player thread stopped early, or null
+	private volatile boolean closed = false;
+	private long originNanos = -1;   // the time at which tick 0 is played, set when the first note arrives
+	private volatile long maxLateNanos = 0;   // the most that any event was played after its time
+
+	/**
+	 * Creates a ReceiverSink and starts the thread that passes the notes to receiver. The instrument is first set to piano, as in the
+	 * MIDI files that midiFile() writes.
+	 * <br>
+	 * If realtime is true, each note on and note off event is sent at its time at 120 bpm, with a timestamp of -1 (as soon as it is
+	 * received), so receiver can be a synthesizer (such as the Receiver returned by MidiSystem.getReceiver()). The first note is
+	 * played latencyMillis after it arrives, which leaves room for the notes after it to be generated unevenly. A note that arrives
+	 * later than that is played immediately, and the rest of the piece is moved back by the same amount, so it is never played
+	 * more than latencyMillis behind the notes being generated.
+	 * <br>
+	 * If realtime is false, the events are sent as soon as they can be, each with its timestamp (in microseconds from the start of
+	 * the piece), so a RecordingReceiver or a Sequencer can collect them without waiting for the piece to play.
+	 *
+	 * @param receiver			the Receiver that the events are sent to
+	 * @param realtime			true to send each event at its time, false to send it at once with its timestamp
+	 * @param latencyMillis		how long after the first note arrives it is played (in milliseconds), if realtime is true
+	 * @param capacity			the number of notes that can be waiting to be played; note() blocks while this many are waiting,
+	 * 							so the notes are not generated too far ahead of the ones being played
+	 * @throws InvalidMidiDataException
+	 */
+	public ReceiverSink(Receiver receiver, boolean realtime, long latencyMillis, int capacity) throws InvalidMidiDataException
+	{
+		this.receiver = receiver;
+		this.realtime = realtime;
+		latencyNanos = TimeUnit.MILLISECONDS.toNanos(latencyMillis);
+		queue = new long[capacity];
+
+		receiver.send(new ShortMessage(ShortMessage.PROGRAM_CHANGE, 0, 0, 0), realtime ? -1 : 0);
+
+		player = new Thread(this::play, "ReceiverSink");
+		player.setDaemon(true);
+		player.start();
+	}
+
+	/**
+	 * This method queues a note to be played, waiting while the queue is full.
+	 */
+	public void note(long tick, int note, int length) throws IOException
+	{
+		put(pack(tick, note, length));
+	}
+
+	public void advance(long tick)
+	{
+	}
+
+	/**
+	 * This method waits until every note has been played and has ended, and the end of the piece has been reached.
+	 */
+	public void end(long tick) throws IOException
+	{
+		put(END);
+		put(pack(tick, 0, 0));   // the tick at which the piece ends
+		try
+		{
+			player.join();
+		}
+		catch (InterruptedException e)
+		{
+			close();
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while the end of the piece was being played", e);
+		}
+		if (error != null)
+			throw new IOException("The notes could not be played", error);
+	}
+
+	/**
+	 * This method stops playing at once, ending every note that is still playing.
+	 */
+	public void close()
+	{
+		closed = true;
+		player.interrupt();
+		try
+		{
+			player.join();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * @return the most that any event was played after its time (in microseconds), which does not include the latency before the
+	 * first note, or the time a late note moved the rest of the piece back by
+	 */
+	public long getMaxLateMicros()
+	{
+		return maxLateNanos / 1000;
+	}
+
+	/**
+	 * This method packs the tick (up to 2^40), note (up to 127) and length (up to 999) of a note into a long.
+	 */
+	private static long pack(long tick, int note, int length)
+	{
+		return tick << 24 | (long) note << 16 | length;
+	}
+
+	private void put(long event) throws IOException
+	{
+		lock.lock();
+		try
+		{
+			while (size == queue.length)
+			{
+				if (error != null || closed)
+					throw new IOException("The notes are no longer being played", error);
+				notFull.await(100, TimeUnit.MILLISECONDS);
+			}
+			if (error != null || closed)
+				throw new IOException("The notes are no longer being played", error);
+			queue[(head + size) % queue.length] = event;
+			size++;
+			notEmpty.signal();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting to queue a note", e);
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * This method returns the next queued event, waiting at most until deadline (a System.nanoTime() value, or Long.MAX_VALUE to
+	 * wait for as long as it takes), or returns NONE if there is still no event at deadline.
+	 */
+	private long take(long deadline) throws InterruptedException
+	{
+		lock.lock();
+		try
+		{
+			while (size == 0)
+			{
+				if (deadline == Long.MAX_VALUE)
+				{
+					notEmpty.await();
+					continue;
+				}
+				long wait = deadline - System.nanoTime();
+				if (wait <= 0)
+					return NONE;
+				notEmpty.awaitNanos(wait);
+			}
+			long event = queue[head];
+			head = (head + 1) % queue.length;
+			size--;
+			notFull.signal();
+			return event;
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * This method is run by the player thread. It takes each note from the queue, ends the notes that end before it, waits until its
+	 * time, and plays it. While the queue is empty, it still ends the notes that are playing on time.
+	 */
+	private void play()
+	{
+		try
+		{
+			while (true)
+			{
+				// without a realtime clock, the notes that are playing end as soon as the next note is known
+				long deadline = realtime && offCount > 0 ? timeOf(offs[0] >>> 8) : Long.MAX_VALUE;
+				long event = take(deadline);
+				if (event == NONE)   // no note arrived before the next end of a note
+				{
+					endNotes(offs[0] >>> 8);
+					continue;
+				}
+
+				if (event == END)
+				{
+					long endTick = take(Long.MAX_VALUE) >>> 24;
+					endNotes(Long.MAX_VALUE);
+					if (originNanos >= 0)
+						waitUntil(endTick);
+					return;
+				}
+
+				long tick = event >>> 24;
+				int note = (int) (event >>> 16) & 0xFF;
+				int length = (int) (event & 0xFFFF);
+
+				if (realtime && originNanos < 0)
+					originNanos = System.nanoTime() + latencyNanos - (long) (tick * MICROS_PER_TICK * 1000);
+
+				endNotes(tick);   // the notes that end at tick end before the notes that start at tick
+				waitUntil(tick);
+				receiver.send(new ShortMessage(ShortMessage.NOTE_ON, 0, note, MidiEventSink.VELOCITY), timestamp(tick));
+				pushOff((tick + length) << 8 | note);
+			}
+		}
+		catch (InterruptedException e)
+		{
+			// close() was called
+		}
+		catch (Throwable e)
+		{
+			error = e;
+		}
+		finally
+		{
+			// end every note that is still playing, so none of them hangs
+			try
+			{
+				for (int i = 0; i < offCount; i++)
+					sendOff(offs[i]);
+			}
+			catch (RuntimeException e)   // receiver was closed
+			{
+				if (error == null)
+					error = e;
+			}
+			offCount = 0;
+			lock.lock();
+			try
+			{
+				notFull.signalAll();
+			}
+			finally
+			{
+				lock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * This method sends the note off events of the notes that end at or before tick, in order, each at its time.
+	 */
+	private void endNotes(long tick) throws InterruptedException
+	{
+		while (offCount > 0 && (offs[0] >>> 8) <= tick)
+		{
+			long off = popOff();
+			waitUntil(off >>> 8);
+			sendOff(off);
+		}
+	}
+
+	private void sendOff(long off)
+	{
+		try
+		{
+			receiver.send(new ShortMessage(ShortMessage.NOTE_ON, 0, (int) (off & 0xFF), 0), timestamp(off >>> 8));
+		}
+		catch (InvalidMidiDataException e)
+		{
+			throw new IllegalStateException(e);   // the note was already sent in a note on event, so it is valid
+		}
+	}
+
+	/**
+	 * This method returns the time at which tick is played, as a System.nanoTime() value.
+	 */
+	private long timeOf(long tick)
+	{
+		return originNanos + (long) (tick * MICROS_PER_TICK * 1000);
+	}
+
+	/**
+	 * This method returns the timestamp of an event at tick: -1 (as soon as it is received) for a realtime ReceiverSink, and the
+	 * number of microseconds from the start of the piece otherwise.
+	 */
+	private long timestamp(long tick)
+	{
+		return realtime ? -1 : Math.round(tick * MICROS_PER_TICK);
+	}
+
+	/**
+	 * This method waits until the time of tick, if this ReceiverSink plays in real time. If the time has already passed by more than
+	 * the latency, the piece is moved back so that tick is played now.
+	 */
+	private void waitUntil(long tick) throws InterruptedException
+	{
+		if (!realtime)
+			return;
+
+		long late = System.nanoTime() - timeOf(tick);
+		if (late > latencyNanos)
+		{
+			originNanos += late;
+			late = 0;
+		}
+		if (late > 0)
+			maxLateNanos = Math.max(maxLateNanos, late);
+
+		long wait;
+		while ((wait = timeOf(tick) - System.nanoTime()) > 0)
+			TimeUnit.NANOSECONDS.sleep(wait);
+	}
+
+	private void pushOff(long off)
+	{
+		if (offCount == offs.length)
+			offs = Arrays.copyOf(offs, offCount * 2);
+
+		// sift the new end up the heap
+		int i = offCount++;
+		while (i > 0 && offs[(i - 1) / 2] > off)
+		{
+			offs[i] = offs[(i - 1) / 2];
+			i = (i - 1) / 2;
+		}
+		offs[i] = off;
+	}
+
+	private long popOff()
+	{
+		long first = offs[0];
+		long last = offs[--offCount];
+
+		// sift the last end down from the top of the heap
+		int i = 0;
+		while (2 * i + 1 < offCount)
+		{
+			int child = 2 * i + 1;
+			if (child + 1 < offCount && offs[child + 1] < offs[child])
+				child++;
+			if (offs[child] >= last)
+				break;
+			offs[i] = offs[child];
+			i = child;
+		}
+		offs[i] = last;
+		return first;
+	}
+
+}
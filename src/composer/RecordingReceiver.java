@@ -0,0 +1,64 @@
+/**
+ * Records the note events sent to it in memory, so a piece can be played without an audio device
+ */
+
+package composer;
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.ShortMessage;
+
+public class RecordingReceiver implements Receiver
+{
+
+	private final NoteEventBuffer events = new NoteEventBuffer();
+	private long firstNanos = -1;   // when the first event with a timestamp of -1 was received
+	private boolean closed = false;
+
+	/**
+	 * This method records a note on or note off event (other messages, such as the program change, are ignored). The tick of the
+	 * event is found from its timestamp at 120 bpm and 48 ticks per quarter note; an event with a timestamp of -1 is given the
+	 * time since the first such event instead.
+	 * <br>
+	 * NOTE:	note off events (status 128) are recorded as note on events with a velocity of 0, the way midiFile() writes them.
+	 *
+	 * @param message		the message that was sent
+	 * @param timeStamp		the time of the message (in microseconds), or -1
+	 */
+	public synchronized void send(MidiMessage message, long timeStamp)
+	{
+		if (closed)
+			throw new IllegalStateException("The receiver is closed");
+		if (!(message instanceof ShortMessage))
+			return;
+
+		ShortMessage shortMessage = (ShortMessage) message;
+		int command = shortMessage.getCommand();
+		if (command != ShortMessage.NOTE_ON && command != ShortMessage.NOTE_OFF)
+			return;
+
+		if (timeStamp < 0)
+		{
+			long now = System.nanoTime();
+			if (firstNanos < 0)
+				firstNanos = now;
+			timeStamp = (now - firstNanos) / 1000;
+		}
+		long tick = Math.round(timeStamp / ReceiverSink.MICROS_PER_TICK);
+		int velocity = command == ShortMessage.NOTE_OFF ? 0 : shortMessage.getData2();
+		events.add(tick, 144, shortMessage.getData1(), velocity);
+	}
+
+	public synchronized void close()
+	{
+		closed = true;
+	}
+
+	/**
+	 * @return the events recorded so far, in the order they were received
+	 */
+	public synchronized NoteEventBuffer getEvents()
+	{
+		return events;
+	}
+
+}
@@ -0,0 +1,281 @@
+/**
+ * Decodes the notes of a Standard MIDI File in a single streaming pass, without reading its tracks into memory first
+ */
+
+package composer;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import javax.sound.midi.InvalidMidiDataException;
+
+public class SmfDecoder
+{
+
+	private static final int MTHD = 0x4D546864;   // "MThd"
+	private static final int MTRK = 0x4D54726B;   // "MTrk"
+
+	private SmfDecoder()
+	{
+	}
+
+	/**
+	 * This method memory-maps a MIDI file and decodes it.
+	 *
+	 * @param file		the MIDI file to read
+	 * @param sink		the NoteSink that receives the notes
+	 * @return the number of note events that were kept
+	 * @throws IOException
+	 * @throws InvalidMidiDataException
+	 */
+	public static long decode(File file, NoteSink sink) throws IOException, InvalidMidiDataException
+	{
+		try (FileChannel channel = FileChannel.open(file.toPath()))
+		{
+			return decode(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), sink);
+		}
+	}
+
+	/**
+	 * This method passes the notes of a Standard MIDI File to sink, the same notes that textFile() writes. Each track is read by its own
+	 * SmfTrackReader, and the tracks are merged by a binary heap ordered by the tick and note value of their next event, in the same
+	 * order as a TrackMerger. Instead of building a TempoMap first, the tempo events are merged along with the note events, and the
+	 * time of each tick is found from the most recent tempo, which gives exactly the ticks of sortedTrack(). The note events are passed
+	 * to a TickEncoder as they are merged, so only the events of the current tick of each track, and the notes that have not ended
+	 * yet, are held in memory, however long the piece is.
+	 * <br>
+	 * NOTE:	a note that is never ended is only given its length at the end of the piece, so the notes after it are held until then
+	 *
+	 * @param data		the bytes of the file, from its position to its limit
+	 * @param sink		the NoteSink that receives the notes
+	 * @return the number of note events that were kept
+	 * @throws IOException
+	 * @throws InvalidMidiDataException
+	 */
+	public static long decode(ByteBuffer data, NoteSink sink) throws IOException, InvalidMidiDataException
+	{
+		int resolution;
+		TrackCursor[] cursors = new TrackCursor[16];
+		int trackCount = 0;
+		try
+		{
+			if (data.getInt() != MTHD)
+				throw new InvalidMidiDataException("Not a Standard MIDI File");
+
+			int headerLength = data.getInt();
+			if (headerLength < 6)
+				throw new InvalidMidiDataException("Header chunk is too short");
+			data.getShort();   // format (all tracks are merged, so the format does not matter)
+			data.getShort();   // number of tracks (every MTrk chunk is read instead)
+			resolution = data.getShort();
+			data.position(data.position() + headerLength - 6);
+
+			if (resolution <= 0)
+				throw new InvalidMidiDataException("SMPTE time division is not supported");
+
+			while (data.remaining() >= 8)
+			{
+				int type = data.getInt();
+				int length = data.getInt();
+				if (length < 0 || length > data.remaining())
+					throw new InvalidMidiDataException("Chunk is longer than the file");
+
+				int end = data.position() + length;
+				if (type == MTRK)
+				{
+					if (trackCount == cursors.length)
+						cursors = Arrays.copyOf(cursors, trackCount * 2);
+					cursors[trackCount++] = new TrackCursor(new SmfTrackReader(data, data.position(), end));
+				}
+				data.position(end);   // skip to the next chunk
+			}
+		}
+		catch (BufferUnderflowException | IllegalArgumentException e)
+		{
+			throw new InvalidMidiDataException("Unexpected end of file");
+		}
+
+		// the heap holds the indices of the tracks that still have events, ordered by their next event
+		int[] heap = new int[trackCount];
+		int heapSize = 0;
+		for (int t = 0; t < trackCount; t++)
+			if (cursors[t].fill())
+				siftUp(cursors, heap, heapSize++, t);
+
+		NoteAdapter adapter = new NoteAdapter(sink);
+		TickEncoder encoder = new TickEncoder(adapter);
+		long tempoTick = 0;   // the tick at which the current tempo starts
+		long tempoTime = 0;   // the time of tempoTick (in microseconds multiplied by resolution, as in a TempoMap)
+		int tempo = TempoMap.DEFAULT_TEMPO;
+		long originTime = -1;   // the time of the first note, which becomes tick 0
+		long lastTick = 0;
+		long kept = 0;
+
+		while (heapSize > 0)
+		{
+			int t = heap[0];
+			TrackCursor cursor = cursors[t];
+			long tick = cursor.tick;
+			int i = cursor.index;
+
+			if (cursor.kinds[i] == SmfTrackReader.TEMPO)
+			{
+				tempoTime += (tick - tempoTick) * tempo;
+				tempoTick = tick;
+				tempo = cursor.values[i];
+			}
+			else if (cursor.statuses[i] == 144 && cursor.pitches[i]-12 >= 21 && cursor.pitches[i]-12 <= 108)
+			{
+				long time = tempoTime + (tick - tempoTick) * tempo;
+				if (originTime < 0)
+					originTime = time;
+				lastTick = Math.floorDiv((time - originTime) * TempoMap.TARGET_RESOLUTION, (long) TempoMap.DEFAULT_TEMPO * resolution);
+
+				int note = cursor.pitches[i]-12;   // get note (note: subtract octave)
+				if (cursor.values[i] != 0)   // a velocity of 0 marks the end of a note
+					encoder.noteOn(lastTick, note);
+				else
+					encoder.noteOff(lastTick, note);
+				kept++;
+			}
+
+			// move on to the next event of the track, and remove the track from the heap if it has none left
+			if (!cursor.next())
+				heap[0] = heap[--heapSize];
+			if (heapSize > 0)
+				siftDown(cursors, heap, heapSize, 0);
+		}
+
+		encoder.end(lastTick);
+		adapter.end();
+		return kept;
+	}
+
+	/**
+	 * This method returns true if the next event of track a comes before the next event of track b, in order of tick, then note value
+	 * (with tempo events first), then the index of the track.
+	 */
+	private static boolean before(TrackCursor[] cursors, int a, int b)
+	{
+		TrackCursor cursorA = cursors[a];
+		TrackCursor cursorB = cursors[b];
+		if (cursorA.tick != cursorB.tick)
+			return cursorA.tick < cursorB.tick;
+
+		int pitchA = cursorA.pitches[cursorA.index];
+		int pitchB = cursorB.pitches[cursorB.index];
+		if (pitchA != pitchB)
+			return pitchA < pitchB;
+
+		return a < b;
+	}
+
+	private static void siftUp(TrackCursor[] cursors, int[] heap, int i, int t)
+	{
+		while (i > 0 && before(cursors, t, heap[(i-1)/2]))
+		{
+			heap[i] = heap[(i-1)/2];
+			i = (i-1)/2;
+		}
+		heap[i] = t;
+	}
+
+	private static void siftDown(TrackCursor[] cursors, int[] heap, int heapSize, int i)
+	{
+		int t = heap[i];
+		while (2*i + 1 < heapSize)
+		{
+			int child = 2*i + 1;
+			if (child + 1 < heapSize && before(cursors, heap[child+1], heap[child]))
+				child++;
+			if (!before(cursors, heap[child], t))
+				break;
+			heap[i] = heap[child];
+			i = child;
+		}
+		heap[i] = t;
+	}
+
+	/**
+	 * Holds the events of the current tick of a track, in order of increasing note value, so the first remaining event is always the
+	 * smallest event of the track (as the events of each track are sorted by a TrackMerger).
+	 */
+	private static class TrackCursor
+	{
+
+		private final SmfTrackReader reader;
+		private int nextKind;   // the kind of the event that the reader has read past the current tick, or END
+
+		private long tick;   // the tick of the events being held
+		private int[] kinds = new int[8];
+		private int[] statuses = new int[8];
+		private int[] pitches = new int[8];   // -1 for a tempo event
+		private int[] values = new int[8];   // the velocity of a note event, or the tempo of a tempo event
+		private int size = 0;
+		private int index = 0;   // the index of the next event
+
+		private TrackCursor(SmfTrackReader reader) throws InvalidMidiDataException
+		{
+			this.reader = reader;
+			nextKind = reader.next();
+		}
+
+		/**
+		 * This method moves on to the next event, reading the events of the next tick once the events of this tick have been used.
+		 *
+		 * @return false if the track has no more events
+		 */
+		private boolean next() throws InvalidMidiDataException
+		{
+			return ++index < size || fill();
+		}
+
+		/**
+		 * This method reads every event of the next tick, and puts them in order of increasing note value. Events with the same note
+		 * value keep their order, and tempo events come first, so the last tempo event of the tick is still the one that is used.
+		 */
+		private boolean fill() throws InvalidMidiDataException
+		{
+			if (nextKind == SmfTrackReader.END)
+				return false;
+
+			tick = reader.tick();
+			size = 0;
+			index = 0;
+			do
+			{
+				if (size == kinds.length)
+				{
+					kinds = Arrays.copyOf(kinds, size * 2);
+					statuses = Arrays.copyOf(statuses, size * 2);
+					pitches = Arrays.copyOf(pitches, size * 2);
+					values = Arrays.copyOf(values, size * 2);
+				}
+
+				// insertion sort, since there are only ever a few events per tick
+				int pitch = nextKind == SmfTrackReader.NOTE ? reader.pitch() : -1;
+				int j = size++;
+				for (; j > 0 && pitches[j-1] > pitch; j--)
+				{
+					kinds[j] = kinds[j-1];
+					statuses[j] = statuses[j-1];
+					pitches[j] = pitches[j-1];
+					values[j] = values[j-1];
+				}
+				kinds[j] = nextKind;
+				statuses[j] = nextKind == SmfTrackReader.NOTE ? reader.status() : 0xFF;
+				pitches[j] = pitch;
+				values[j] = nextKind == SmfTrackReader.NOTE ? reader.velocity() : reader.tempo();
+
+				nextKind = reader.next();
+			}
+			while (nextKind != SmfTrackReader.END && reader.tick() == tick);
+
+			return true;
+		}
+
+	}
+
+}
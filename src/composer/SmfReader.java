@@ -0,0 +1,178 @@
+/**
+ * Reads the note and tempo events of a Standard MIDI File directly from its bytes
+ */
+
+package composer;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import javax.sound.midi.InvalidMidiDataException;
+
+public class SmfReader
+{
+
+	private static final int MTHD = 0x4D546864;   // "MThd"
+	private static final int MTRK = 0x4D54726B;   // "MTrk"
+
+	private final ArrayList<NoteEventBuffer> tracks = new ArrayList<NoteEventBuffer>();   // kept between files, so their arrays are reused
+	private int trackCount = 0;
+	private int resolution = 0;
+
+	private long[] tempoTicks = new long[16];
+	private int[] tempos = new int[16];
+	private int tempoCount = 0;
+
+	/**
+	 * This method memory-maps a MIDI file and reads it. The note events of each track and the tempo events of the whole file replace
+	 * the ones from the previous file that was read.
+	 *
+	 * @param file		the MIDI file to read
+	 * @throws IOException
+	 * @throws InvalidMidiDataException
+	 */
+	public void read(File file) throws IOException, InvalidMidiDataException
+	{
+		try (FileChannel channel = FileChannel.open(file.toPath()))
+		{
+			read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		}
+	}
+
+	/**
+	 * This method reads the bytes of a Standard MIDI File. The MThd chunk holds the resolution, and each MTrk chunk holds the events of
+	 * a track, which are read by an SmfTrackReader. Only note on and note off events, and tempo meta events, are kept; the other events
+	 * are skipped over without being decoded.
+	 *
+	 * @param data		the bytes of the file, from its position to its limit
+	 * @throws InvalidMidiDataException
+	 */
+	public void read(ByteBuffer data) throws InvalidMidiDataException
+	{
+		trackCount = 0;
+		tempoCount = 0;
+
+		try
+		{
+			if (data.getInt() != MTHD)
+				throw new InvalidMidiDataException("Not a Standard MIDI File");
+
+			int headerLength = data.getInt();
+			if (headerLength < 6)
+				throw new InvalidMidiDataException("Header chunk is too short");
+			data.getShort();   // format (all tracks are merged, so the format does not matter)
+			data.getShort();   // number of tracks (every MTrk chunk is read instead)
+			int division = data.getShort();
+			data.position(data.position() + headerLength - 6);
+
+			if (division <= 0)
+				throw new InvalidMidiDataException("SMPTE time division is not supported");
+			resolution = division;
+
+			while (data.remaining() >= 8)
+			{
+				int type = data.getInt();
+				int length = data.getInt();
+				if (length < 0 || length > data.remaining())
+					throw new InvalidMidiDataException("Chunk is longer than the file");
+
+				int end = data.position() + length;
+				if (type == MTRK)
+					readTrack(data, end, nextTrack());
+				data.position(end);   // skip the rest of the chunk, and any chunks that are not tracks
+			}
+		}
+		catch (BufferUnderflowException | IllegalArgumentException e)
+		{
+			throw new InvalidMidiDataException("Unexpected end of file");
+		}
+	}
+
+	public int getResolution()
+	{
+		return resolution;
+	}
+
+	/**
+	 * @return the number of tracks in the file that was read
+	 */
+	public int getTrackCount()
+	{
+		return trackCount;
+	}
+
+	/**
+	 * @return the note events of track index
+	 */
+	public NoteEventBuffer getTrack(int index)
+	{
+		if (index >= trackCount)
+			throw new IndexOutOfBoundsException("Track " + index + " of " + trackCount);
+		return tracks.get(index);
+	}
+
+	/**
+	 * @return the note events of every track that contains a note (see NoteEventBuffer.noteFound())
+	 */
+	public List<NoteEventBuffer> getActiveTracks()
+	{
+		ArrayList<NoteEventBuffer> activeTracks = new ArrayList<NoteEventBuffer>();
+		for (int i = 0; i < trackCount; i++)
+			if (tracks.get(i).noteFound())
+				activeTracks.add(tracks.get(i));
+		return activeTracks;
+	}
+
+	/**
+	 * @return a TempoMap built from the tempo events of every track and the resolution of the file that was read
+	 */
+	public TempoMap getTempoMap()
+	{
+		long[] ticks = Arrays.copyOf(tempoTicks, tempoCount);
+		int[] values = Arrays.copyOf(tempos, tempoCount);
+		TempoMap.sortByTick(ticks, values, tempoCount);
+		return new TempoMap(resolution, TempoMap.TARGET_RESOLUTION, ticks, values, tempoCount);
+	}
+
+	private NoteEventBuffer nextTrack()
+	{
+		if (trackCount == tracks.size())
+			tracks.add(new NoteEventBuffer());
+
+		NoteEventBuffer track = tracks.get(trackCount++);
+		track.clear();
+		return track;
+	}
+
+	/**
+	 * This method reads the note events of a track chunk into track, and adds its tempo events to the tempos of the file.
+	 */
+	private void readTrack(ByteBuffer data, int end, NoteEventBuffer track) throws InvalidMidiDataException
+	{
+		SmfTrackReader reader = new SmfTrackReader(data, data.position(), end);
+		for (int kind = reader.next(); kind != SmfTrackReader.END; kind = reader.next())
+		{
+			if (kind == SmfTrackReader.NOTE)
+				track.add(reader.tick(), reader.status(), reader.pitch(), reader.velocity());
+			else
+				addTempo(reader.tick(), reader.tempo());
+		}
+	}
+
+	private void addTempo(long tick, int tempo)
+	{
+		if (tempoCount == tempoTicks.length)
+		{
+			tempoTicks = Arrays.copyOf(tempoTicks, tempoCount * 2);
+			tempos = Arrays.copyOf(tempos, tempoCount * 2);
+		}
+		tempoTicks[tempoCount] = tick;
+		tempos[tempoCount] = tempo;
+		tempoCount++;
+	}
+
+}
@@ -0,0 +1,134 @@
+/**
+ * Writes decoded notes straight to a MIDI file as they arrive, without collecting the events of the whole piece first
+ */
+
+package composer;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+public class SmfSink implements NoteSink, Closeable
+{
+
+	private final SmfWriter writer = new SmfWriter();
+
+	// the ends of the notes that have started, in a binary heap ordered by tick, then by the order the notes arrived in
+	private long[] offTicks = new long[64];
+	private long[] offKeys = new long[64];   // the number of the note in the order the notes arrived, shifted left by 7, and its note value
+	private int offCount = 0;
+	private long noteCount = 0;
+
+	/**
+	 * Creates an SmfSink that writes a MIDI file in the same format as midiFile(), with a note on event (velocity 50) and a note off
+	 * event (a note on event with velocity 0) for each note. Each note off event is held until the notes that start before it have been
+	 * written, so the events are written in the same order as the SmfWriter writes the events of a MidiEventSink, and the file is the
+	 * same, but only the notes that are still playing are held in memory.
+	 *
+	 * @param file			the file to write
+	 * @param trackName		the name of the track
+	 * @throws IOException
+	 */
+	public SmfSink(File file, String trackName) throws IOException
+	{
+		writer.start(file, trackName);
+	}
+
+	public void note(long tick, int note, int length) throws IOException
+	{
+		writeOffs(tick);
+		writer.event(tick, 144, note, MidiEventSink.VELOCITY);
+		pushOff(tick + length, noteCount++ << 7 | note);
+	}
+
+	/**
+	 * This method writes the note off events before tick, since no note that starts after this call can come before them.
+	 */
+	public void advance(long tick) throws IOException
+	{
+		writeOffs(tick - 1);
+	}
+
+	/**
+	 * This method writes the rest of the note off events, and ends the track at tick (or at the last note off event, if it is later).
+	 */
+	public void end(long tick) throws IOException
+	{
+		writeOffs(Long.MAX_VALUE);
+		writer.finish(tick);
+	}
+
+	/**
+	 * This method closes the file, if the piece has not been ended.
+	 */
+	public void close() throws IOException
+	{
+		writer.close();
+	}
+
+	/**
+	 * @return the number of notes that have been written
+	 */
+	public long getNoteCount()
+	{
+		return noteCount;
+	}
+
+	/**
+	 * This method writes every held note off event at or before tick, in order.
+	 */
+	private void writeOffs(long tick) throws IOException
+	{
+		while (offCount > 0 && offTicks[0] <= tick)
+		{
+			writer.event(offTicks[0], 144, (int) (offKeys[0] & 0x7F), 0);
+			popOff();
+		}
+	}
+
+	private boolean before(long tickA, long keyA, long tickB, long keyB)
+	{
+		return tickA < tickB || tickA == tickB && keyA < keyB;
+	}
+
+	private void pushOff(long tick, long key)
+	{
+		if (offCount == offTicks.length)
+		{
+			offTicks = Arrays.copyOf(offTicks, offCount * 2);
+			offKeys = Arrays.copyOf(offKeys, offCount * 2);
+		}
+
+		int i = offCount++;
+		while (i > 0 && before(tick, key, offTicks[(i-1)/2], offKeys[(i-1)/2]))
+		{
+			offTicks[i] = offTicks[(i-1)/2];
+			offKeys[i] = offKeys[(i-1)/2];
+			i = (i-1)/2;
+		}
+		offTicks[i] = tick;
+		offKeys[i] = key;
+	}
+
+	private void popOff()
+	{
+		long tick = offTicks[--offCount];
+		long key = offKeys[offCount];
+
+		int i = 0;
+		while (2*i + 1 < offCount)
+		{
+			int child = 2*i + 1;
+			if (child + 1 < offCount && before(offTicks[child+1], offKeys[child+1], offTicks[child], offKeys[child]))
+				child++;
+			if (!before(offTicks[child], offKeys[child], tick, key))
+				break;
+			offTicks[i] = offTicks[child];
+			offKeys[i] = offKeys[child];
+			i = child;
+		}
+		offTicks[i] = tick;
+		offKeys[i] = key;
+	}
+
+}
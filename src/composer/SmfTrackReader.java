@@ -0,0 +1,202 @@
+/**
+ * Reads the note and tempo events of one track chunk of a Standard MIDI File, one event at a time
+ */
+
+package composer;
+import java.nio.ByteBuffer;
+import javax.sound.midi.InvalidMidiDataException;
+
+public class SmfTrackReader
+{
+
+	public static final int END = 0;   // returned by next() once the end of the track has been reached
+	public static final int NOTE = 1;   // returned by next() for a note on or note off event
+	public static final int TEMPO = 2;   // returned by next() for a tempo meta event
+
+	private final ByteBuffer data;
+	private final int end;
+	private int position;
+	private long tick = 0;
+	private int runningStatus = -1;
+
+	private int status;
+	private int pitch;
+	private int velocity;
+	private int tempo;
+
+	/**
+	 * Creates an SmfTrackReader over the events of a track chunk. The bytes are read with absolute positions, so several readers can
+	 * read the tracks of the same file at the same time without changing its position.
+	 *
+	 * @param data		the bytes of the file
+	 * @param start		the position of the first event of the track (just after the length of the chunk)
+	 * @param end		the position of the end of the chunk
+	 */
+	public SmfTrackReader(ByteBuffer data, int start, int end)
+	{
+		this.data = data;
+		this.end = end;
+		position = start;
+	}
+
+	/**
+	 * This method reads up to and including the next note or tempo event of the track. Every event starts with its delta time (the
+	 * number of ticks since the previous event), stored as a variable-length quantity. Channel messages may leave out their status
+	 * byte if it is the same as the status byte of the previous channel message (running status), so a data byte where a status byte
+	 * is expected reuses the last status. The other events are skipped over without being decoded.
+	 *
+	 * @return NOTE or TEMPO for the kind of event that was read, or END if the track has no more events
+	 * @throws InvalidMidiDataException
+	 */
+	public int next() throws InvalidMidiDataException
+	{
+		try
+		{
+			while (position < end)
+			{
+				tick += readVariableLength();
+
+				int status = readByte();
+				int data1;
+				if (status < 0x80)   // running status: the byte that was read is the first data byte
+				{
+					if (runningStatus < 0)
+						throw new InvalidMidiDataException("Data byte without a status byte");
+					data1 = status;
+					status = runningStatus;
+				}
+				else if (status < 0xF0)
+				{
+					runningStatus = status;
+					data1 = readByte();
+				}
+				else
+				{
+					data1 = -1;
+				}
+
+				switch (status & 0xF0)
+				{
+					case 0x80:   // note off
+					case 0x90:   // note on
+						this.status = status;
+						pitch = data1;
+						velocity = readByte();
+						return NOTE;
+
+					case 0xA0:   // polyphonic key pressure
+					case 0xB0:   // control change
+					case 0xE0:   // pitch bend
+						skip(1);
+						break;
+
+					case 0xC0:   // program change
+					case 0xD0:   // channel pressure
+						break;
+
+					default:
+						if (status == 0xFF)   // meta event
+						{
+							int type = readByte();
+							int length = readVariableLength();
+							int dataStart = position;
+							skip(length);
+
+							if (type == 81 && length == 3)   // tempo event
+							{
+								tempo = (data.get(dataStart) & 0xFF) << 16 | (data.get(dataStart + 1) & 0xFF) << 8 | (data.get(dataStart + 2) & 0xFF);
+								return TEMPO;
+							}
+							else if (type == 47)   // end of track
+							{
+								position = end;
+								return END;
+							}
+						}
+						else if (status == 0xF0 || status == 0xF7)   // system exclusive event
+						{
+							skip(readVariableLength());
+						}
+						else
+						{
+							throw new InvalidMidiDataException("Invalid status byte " + status);
+						}
+				}
+			}
+			return END;
+		}
+		catch (IndexOutOfBoundsException e)
+		{
+			throw new InvalidMidiDataException("Unexpected end of file");
+		}
+	}
+
+	/**
+	 * @return the tick of the event that was read (in ticks of the file, from the start of the track)
+	 */
+	public long tick()
+	{
+		return tick;
+	}
+
+	/**
+	 * @return the status byte of the note event that was read
+	 */
+	public int status()
+	{
+		return status;
+	}
+
+	public int pitch()
+	{
+		return pitch;
+	}
+
+	public int velocity()
+	{
+		return velocity;
+	}
+
+	/**
+	 * @return the tempo of the tempo event that was read (in microseconds per quarter note)
+	 */
+	public int tempo()
+	{
+		return tempo;
+	}
+
+	/**
+	 * This method reads the next byte of the track. An event that runs past the end of the chunk is invalid, even if the file goes on,
+	 * since its last bytes would be read from the next chunk.
+	 */
+	private int readByte() throws InvalidMidiDataException
+	{
+		if (position >= end)
+			throw new InvalidMidiDataException("Event runs past the end of the track chunk");
+		return data.get(position++) & 0xFF;
+	}
+
+	private void skip(int length) throws InvalidMidiDataException
+	{
+		if (length > end - position)
+			throw new InvalidMidiDataException("Event runs past the end of the track chunk");
+		position += length;
+	}
+
+	/**
+	 * This method reads a variable-length quantity, which stores 7 bits in each byte, with the highest bit set on every byte but the last.
+	 */
+	private int readVariableLength() throws InvalidMidiDataException
+	{
+		int value = 0;
+		for (int i = 0; i < 4; i++)
+		{
+			int b = readByte();
+			value = (value << 7) | (b & 0x7F);
+			if (b < 0x80)
+				return value;
+		}
+		throw new InvalidMidiDataException("Variable-length quantity is longer than 4 bytes");
+	}
+
+}
@@ -0,0 +1,238 @@
+/**
+ * Writes a single piano track of note events as a Standard MIDI File
+ */
+
+package composer;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+public class SmfWriter implements Closeable
+{
+
+	public static final int RESOLUTION = 48;   // the resolution of the written files (in ticks per quarter note)
+	public static final int MAX_META_LENGTH = 0x0FFFFFFF;   // the most bytes of data a meta event can hold (a 4-byte variable-length quantity)
+
+	private long[] keys = new long[1024];   // kept between files, so it is only allocated once
+	private final ByteBuffer buffer = ByteBuffer.allocate(65536);
+	private FileChannel channel;   // the file being written, or null
+	private int trackLength;
+	private int runningStatus;
+	private long tick;   // the tick of the most recent event
+	private byte[] name;   // the name of the track, until it has been written
+
+	/**
+	 * This method writes events to file as a format 1 MIDI file with one track and a resolution of 48 ticks per quarter note. The events
+	 * are sorted by tick once, in a primitive array, and events with the same tick keep their order. The track starts with the note events
+	 * of tick 0, followed by the track name and a program change that sets the instrument to piano, then the rest of the note events, and
+	 * ends with an end of track event. This is the same file that MidiSystem.write() creates for a Track that the events were added to in
+	 * the same order.
+	 *
+	 * @param events		the note events to write, in any order
+	 * @param trackName		the name of the track
+	 * @param endTick		the tick of the end of the track (the end is moved later if there are events after it)
+	 * @param file			the file to write
+	 * @throws IOException
+	 */
+	public void write(NoteEventBuffer events, String trackName, long endTick, File file) throws IOException
+	{
+		int size = events.size();
+		if (keys.length < size)
+			keys = new long[Math.max(size, keys.length * 2)];
+
+		// each key holds the tick of an event in its upper bits and the index of the event in its lower 32 bits, so sorting the keys
+		// sorts the events by tick, keeping the order of events with the same tick
+		for (int i = 0; i < size; i++)
+			keys[i] = events.tick(i) << 32 | i;
+		Arrays.sort(keys, 0, size);
+
+		start(file, trackName);
+		try
+		{
+			for (int i = 0; i < size; i++)
+			{
+				int index = (int) keys[i];
+				event(events.tick(index), events.status(index), events.pitch(index), events.velocity(index));
+			}
+			finish(endTick);
+		}
+		finally
+		{
+			close();
+		}
+	}
+
+	/**
+	 * This method starts writing a MIDI file one event at a time, in the same format as write(). The events are then passed to event()
+	 * in order of tick, and finish() ends the file, so the events of a piece never have to be held in memory all at once.
+	 *
+	 * @param file			the file to write
+	 * @param trackName		the name of the track
+	 * @throws IOException
+	 * @throws IllegalArgumentException if trackName is longer than MAX_META_LENGTH bytes
+	 */
+	public void start(File file, String trackName) throws IOException
+	{
+		byte[] nameBytes = trackName.getBytes(StandardCharsets.UTF_8);
+		if (nameBytes.length > MAX_META_LENGTH)
+			throw new IllegalArgumentException("The track name is " + nameBytes.length + " bytes long, but a MIDI file can only hold "
+					+ MAX_META_LENGTH);
+
+		close();
+		channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		buffer.clear();
+		trackLength = 0;
+		runningStatus = -1;
+		tick = 0;
+		name = nameBytes;
+
+		// header chunk: format 1, 1 track, 48 ticks per quarter note
+		buffer.putInt(0x4D546864).putInt(6).putShort((short) 1).putShort((short) 1).putShort((short) RESOLUTION);
+
+		// track chunk, with a length that is filled in once the whole track has been written
+		buffer.putInt(0x4D54726B).putInt(0);
+	}
+
+	/**
+	 * This method writes a note event to the file that was started. The track name and the program change are written just before the
+	 * first event after tick 0.
+	 * <br>
+	 * PRECONDITION:	start() has been called, and tick is not before the tick of the previous event
+	 *
+	 * @param tick			the tick of the event
+	 * @param status		the status byte of the event
+	 * @param pitch			the MIDI number of the note
+	 * @param velocity		the velocity of the note (0 for the end of a note)
+	 * @throws IOException
+	 */
+	public void event(long tick, int status, int pitch, int velocity) throws IOException
+	{
+		if (tick < this.tick)
+			throw new IllegalArgumentException("Event at tick " + tick + " is before the previous event, at tick " + this.tick);
+		if (name != null && tick > 0)
+			writeTrackStart();
+
+		ensureSpace(16);
+		trackLength += writeVariableLength(tick - this.tick);
+		if (status != runningStatus)   // the status byte is left out if it is the same as the previous one (running status)
+		{
+			buffer.put((byte) status);
+			trackLength++;
+			runningStatus = status;
+		}
+		buffer.put((byte) pitch).put((byte) velocity);
+		trackLength += 2;
+		this.tick = tick;
+	}
+
+	/**
+	 * This method ends the track, writes the length of the track into its chunk, and closes the file.
+	 *
+	 * @param endTick		the tick of the end of the track (the end is moved later if there are events after it)
+	 * @throws IOException
+	 */
+	public void finish(long endTick) throws IOException
+	{
+		if (name != null)
+			writeTrackStart();
+
+		// set end of track
+		writeMeta(Math.max(endTick - tick, 0), 47, new byte[0]);
+
+		flushBuffer();
+		ByteBuffer length = ByteBuffer.allocate(4).putInt(0, trackLength);
+		channel.write(length, 18);
+		close();
+	}
+
+	/**
+	 * This method closes the file that was started, if it has not been finished.
+	 */
+	public void close() throws IOException
+	{
+		if (channel != null)
+		{
+			FileChannel open = channel;
+			channel = null;
+			open.close();
+		}
+	}
+
+	/**
+	 * This method writes the track name, and a program change that sets the instrument to piano.
+	 */
+	private void writeTrackStart() throws IOException
+	{
+		// set track name
+		writeMeta(0, 3, name);
+		name = null;
+
+		// set instrument to piano
+		ensureSpace(3);
+		trackLength += writeVariableLength(0) + 2;
+		buffer.put((byte) 192).put((byte) 0);
+		runningStatus = 192;
+	}
+
+	/**
+	 * This method writes a meta event. Its data can be longer than the buffer, so it is written in as many pieces as it needs.
+	 */
+	private void writeMeta(long delta, int type, byte[] data) throws IOException
+	{
+		ensureSpace(16);
+		trackLength += writeVariableLength(delta);
+		buffer.put((byte) 0xFF).put((byte) type);
+		trackLength += 2 + writeVariableLength(data.length);
+		for (int offset = 0; offset < data.length; )
+		{
+			if (!buffer.hasRemaining())
+				flushBuffer();
+			int count = Math.min(buffer.remaining(), data.length - offset);
+			buffer.put(data, offset, count);
+			offset += count;
+		}
+		trackLength += data.length;
+		runningStatus = 0xFF;   // the status byte of a meta event is always written, and the next event needs its own status byte
+	}
+
+	/**
+	 * This method writes a variable-length quantity, which stores 7 bits in each byte, with the highest bit set on every byte but the last.
+	 *
+	 * @return the number of bytes written
+	 */
+	private int writeVariableLength(long value)
+	{
+		int shift = 63;
+		while (shift > 0 && (value & (0x7FL << shift)) == 0)
+			shift -= 7;
+
+		int length = 1;
+		for (; shift > 0; shift -= 7)
+		{
+			buffer.put((byte) (((value >> shift) & 0x7F) | 0x80));
+			length++;
+		}
+		buffer.put((byte) (value & 0x7F));
+		return length;
+	}
+
+	private void ensureSpace(int bytes) throws IOException
+	{
+		if (buffer.remaining() < bytes)
+			flushBuffer();
+	}
+
+	private void flushBuffer() throws IOException
+	{
+		buffer.flip();
+		while (buffer.hasRemaining())
+			channel.write(buffer);
+		buffer.clear();
+	}
+
+}
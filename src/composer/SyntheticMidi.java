@@ -0,0 +1,307 @@
+/**
+ * Generates Standard MIDI Files of random notes from a seed, to test the conversions at sizes and in cases the training files do not cover
+ */
+
+package composer;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+public class SyntheticMidi
+{
+
+	public static final int LOWEST_PITCH = NoteAugmenter.LOWEST_NOTE + 12;   // the range of MIDI numbers that sortedTrack() keeps
+	public static final int HIGHEST_PITCH = NoteAugmenter.HIGHEST_NOTE + 12;
+
+	private int lowestPitch = LOWEST_PITCH;
+	private int highestPitch = HIGHEST_PITCH;
+	private int tracks = 2;
+	private int notesPerTrack = 1000;
+	private int polyphony = 4;
+	private int resolution = 480;
+	private double tempoDensity = 1.0 / 64;
+	private double overlapRate = 0;
+	private double missingOffRate = 0;
+
+	/**
+	 * This method sets the range of MIDI numbers of the notes (33 to 120 by default, which sortedTrack() keeps).
+	 */
+	public void setPitchRange(int lowestPitch, int highestPitch)
+	{
+		if (lowestPitch < 0 || highestPitch > 127 || lowestPitch > highestPitch)
+			throw new IllegalArgumentException("The range of MIDI numbers must be within 0 to 127");
+		this.lowestPitch = lowestPitch;
+		this.highestPitch = highestPitch;
+	}
+
+	/**
+	 * This method sets the number of tracks of notes (2 by default). Every file also has a track of tempo events before them.
+	 */
+	public void setTracks(int tracks)
+	{
+		if (tracks < 1 || tracks > 65534)
+			throw new IllegalArgumentException("There must be 1 to 65534 tracks of notes");
+		this.tracks = tracks;
+	}
+
+	/**
+	 * This method sets the number of notes in each track (1000 by default). A track plays about 2 notes per quarter note for each note of
+	 * polyphony, so 30,000 notes with a polyphony of 1 is about an hour long.
+	 */
+	public void setNotesPerTrack(int notesPerTrack)
+	{
+		if (notesPerTrack < 0)
+			throw new IllegalArgumentException("The number of notes cannot be negative");
+		this.notesPerTrack = notesPerTrack;
+	}
+
+	/**
+	 * This method sets the most notes that a track starts at the same time (4 by default). Each chord has 1 to polyphony notes.
+	 */
+	public void setPolyphony(int polyphony)
+	{
+		if (polyphony < 1)
+			throw new IllegalArgumentException("The polyphony must be at least 1");
+		this.polyphony = polyphony;
+	}
+
+	/**
+	 * This method sets the resolution of the files, in ticks per quarter note (480 by default).
+	 */
+	public void setResolution(int resolution)
+	{
+		if (resolution < 4 || resolution > 0x7FFF)
+			throw new IllegalArgumentException("The resolution must be 4 to 32767 ticks per quarter note");
+		this.resolution = resolution;
+	}
+
+	/**
+	 * This method sets the number of tempo changes per quarter note (1/64 by default, or one every 16 bars of 4/4), which are placed at
+	 * random ticks. A density of more than 1 gives several tempo changes in each quarter note.
+	 */
+	public void setTempoDensity(double tempoDensity)
+	{
+		if (tempoDensity < 0)
+			throw new IllegalArgumentException("The tempo density cannot be negative");
+		this.tempoDensity = tempoDensity;
+	}
+
+	/**
+	 * This method sets the chance that each note of a chord strikes a note of the previous chord again while it is still playing (0 by
+	 * default), so the first note off event after it ends both of them.
+	 */
+	public void setOverlapRate(double overlapRate)
+	{
+		this.overlapRate = overlapRate;
+	}
+
+	/**
+	 * This method sets the chance that a note has no note off event (0 by default), so it only ends when the same note is played again and
+	 * ended, or is given a length of 1 tick by the TickEncoder.
+	 */
+	public void setMissingOffRate(double missingOffRate)
+	{
+		this.missingOffRate = missingOffRate;
+	}
+
+	/**
+	 * This method writes a format 1 MIDI file of random notes to file. The same seed always gives the same file. The first track holds
+	 * the tempo events, and each of the other tracks holds chords of random notes on channel 0, in the range of MIDI numbers set by
+	 * setPitchRange(), ended by note on events with a velocity of 0, as in the training files. The note events use running status.
+	 *
+	 * @param file		the file to write
+	 * @param seed		the seed of the random notes
+	 * @return the number of notes in the file
+	 * @throws IOException
+	 */
+	public long write(File file, long seed) throws IOException
+	{
+		Random random = new Random(seed);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		// header chunk: format 1, the tempo track and the tracks of notes
+		writeInt(out, 0x4D546864);
+		writeInt(out, 6);
+		writeShort(out, 1);
+		writeShort(out, tracks + 1);
+		writeShort(out, resolution);
+
+		// create the tracks of notes first, since the tempo changes are spread over the length of the longest track
+		byte[][] noteTracks = new byte[tracks][];
+		long endTick = 0;
+		long notes = 0;
+		for (int track = 0; track < tracks; track++)
+		{
+			long[] events = new long[2 * notesPerTrack];
+			int count = 0;
+			long tick = 0;
+			// the notes of the previous chord, and the ones still playing when the current chord starts, which it can strike again
+			int[] previousPitches = new int[polyphony];
+			long[] previousEnds = new long[polyphony];
+			int previousCount = 0;
+			int[] pitches = new int[polyphony];
+			long[] ends = new long[polyphony];
+			int[] playing = new int[polyphony];
+			for (int n = 0; n < notesPerTrack; )
+			{
+				int playingCount = 0;
+				for (int p = 0; p < previousCount; p++)
+					if (previousEnds[p] > tick)
+						playing[playingCount++] = previousPitches[p];
+
+				int chord = 1 + random.nextInt(polyphony);
+				int c = 0;
+				for (; c < chord && n < notesPerTrack; c++, n++)
+				{
+					int pitch;
+					if (playingCount > 0 && random.nextDouble() < overlapRate)
+					{
+						// strike a note of the previous chord again while it is playing, at most once each
+						int p = random.nextInt(playingCount);
+						pitch = playing[p];
+						playing[p] = playing[--playingCount];
+					}
+					else
+					{
+						// a new note, drawn again if the chord already has it (unless every note of the range is in the chord)
+						do
+							pitch = lowestPitch + random.nextInt(highestPitch - lowestPitch + 1);
+						while (c <= highestPitch - lowestPitch && indexOf(pitches, c, pitch) >= 0);
+						int p = indexOf(playing, playingCount, pitch);   // a note of the previous chord struck again by chance
+						if (p >= 0)
+							playing[p] = playing[--playingCount];
+					}
+					long length = resolution / 4 * (1 + random.nextInt(8));   // a sixteenth note to a half note
+					events[count++] = pack(tick, true, pitch, 1 + random.nextInt(127));
+					if (random.nextDouble() >= missingOffRate)
+						events[count++] = pack(tick + length, false, pitch, 0);
+					pitches[c] = pitch;
+					ends[c] = tick + length;
+					endTick = Math.max(endTick, tick + length);
+				}
+				int[] swapPitches = previousPitches;
+				previousPitches = pitches;
+				pitches = swapPitches;
+				long[] swapEnds = previousEnds;
+				previousEnds = ends;
+				ends = swapEnds;
+				previousCount = c;
+				tick += resolution / 4 * (1 + random.nextInt(4));   // the next chord is a sixteenth note to a quarter note later
+			}
+			notes += notesPerTrack;
+
+			Arrays.sort(events, 0, count);   // in order of tick, with the ends of notes before the notes that start at the same tick
+			noteTracks[track] = noteTrack(events, count);
+		}
+
+		// the tempo track: a tempo at tick 0, then the tempo changes at random ticks
+		int changes = (int) Math.min(Math.round(endTick / (double) resolution * tempoDensity), Integer.MAX_VALUE - 1);
+		long[] changeTicks = new long[changes + 1];
+		for (int i = 1; i <= changes; i++)
+			changeTicks[i] = 1 + (long) (random.nextDouble() * Math.max(endTick, 1));
+		Arrays.sort(changeTicks);
+		ByteArrayOutputStream tempoTrack = new ByteArrayOutputStream();
+		long previous = 0;
+		for (long changeTick : changeTicks)
+		{
+			int tempo = 300000 + random.nextInt(700001);   // 60 to 200 bpm
+			writeVariableLength(tempoTrack, changeTick - previous);
+			tempoTrack.write(0xFF);
+			tempoTrack.write(0x51);
+			tempoTrack.write(3);
+			tempoTrack.write(tempo >> 16);
+			tempoTrack.write(tempo >> 8);
+			tempoTrack.write(tempo);
+			previous = changeTick;
+		}
+		writeTrack(out, tempoTrack.toByteArray());
+
+		for (byte[] noteTrack : noteTracks)
+			writeTrack(out, noteTrack);
+
+		Files.write(file.toPath(), out.toByteArray());
+		return notes;
+	}
+
+	/**
+	 * @return the index of value in the first count values, or -1 if it is not there
+	 */
+	private static int indexOf(int[] values, int count, int value)
+	{
+		for (int i = 0; i < count; i++)
+			if (values[i] == value)
+				return i;
+		return -1;
+	}
+
+	/**
+	 * This method packs the tick, kind, pitch and velocity of a note event into a long that sorts in order of tick, then note off events
+	 * before note on events, then pitch.
+	 */
+	private static long pack(long tick, boolean on, int pitch, int velocity)
+	{
+		return tick << 16 | (on ? 1 : 0) << 15 | pitch << 7 | velocity;
+	}
+
+	/**
+	 * This method returns the events of a track of notes, from sorted packed events, using running status.
+	 */
+	private static byte[] noteTrack(long[] events, int count)
+	{
+		ByteArrayOutputStream track = new ByteArrayOutputStream(count * 4);
+		long previous = 0;
+		for (int i = 0; i < count; i++)
+		{
+			long tick = events[i] >>> 16;
+			writeVariableLength(track, tick - previous);
+			if (i == 0)
+				track.write(0x90);   // note on, channel 0, which every event after it repeats
+			track.write((int) (events[i] >>> 7) & 0x7F);
+			track.write((int) events[i] & 0x7F);
+			previous = tick;
+		}
+		return track.toByteArray();
+	}
+
+	/**
+	 * This method writes a track chunk holding events, followed by an end of track event.
+	 */
+	private static void writeTrack(ByteArrayOutputStream out, byte[] events)
+	{
+		writeInt(out, 0x4D54726B);
+		writeInt(out, events.length + 4);
+		out.write(events, 0, events.length);
+		out.write(0);
+		out.write(0xFF);
+		out.write(0x2F);
+		out.write(0);
+	}
+
+	private static void writeVariableLength(ByteArrayOutputStream out, long value)
+	{
+		int shift = 0;
+		while (shift < 63 && value >>> (shift + 7) != 0)
+			shift += 7;
+		for (; shift > 0; shift -= 7)
+			out.write((int) (value >>> shift) & 0x7F | 0x80);
+		out.write((int) value & 0x7F);
+	}
+
+	private static void writeInt(ByteArrayOutputStream out, int value)
+	{
+		out.write(value >>> 24);
+		out.write(value >>> 16);
+		out.write(value >>> 8);
+		out.write(value);
+	}
+
+	private static void writeShort(ByteArrayOutputStream out, int value)
+	{
+		out.write(value >>> 8);
+		out.write(value);
+	}
+
+}
@@ -0,0 +1,282 @@
+/**
+ * Converts the ticks of a sequence with tempo changes into ticks of a sequence with a single tempo
+ */
+
+package composer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import javax.sound.midi.MetaMessage;
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.Track;
+
+public class TempoMap
+{
+
+	public static final int DEFAULT_TEMPO = 500000;   // the tempo of a MIDI file with no tempo events (120 bpm)
+	public static final int TARGET_RESOLUTION = 48;   // the resolution of the text files (in ticks per quarter note)
+
+	private final int resolution;
+	private final int targetResolution;
+	private final long[] ticks;   // the tick at which each tempo starts (the first is always 0)
+	private final int[] tempos;   // the tempo starting at each tick (in microseconds per quarter note)
+	private final long[] times;   // the time at which each tempo starts (in microseconds multiplied by resolution, so it is exact)
+
+	/**
+	 * Creates a TempoMap from a list of tempo changes. The tempo before the first change is 500,000 microseconds per quarter note.
+	 * If there are several changes on the same tick, the last one is used.
+	 * <br>
+	 * PRECONDITION:	changeTicks is arranged in increasing order
+	 *
+	 * @param resolution			the resolution of the source sequence (in ticks per quarter note)
+	 * @param targetResolution		the resolution of the ticks returned by targetTick() (in ticks per quarter note)
+	 * @param changeTicks			the tick of each tempo change
+	 * @param changeTempos			the tempo of each tempo change (in microseconds per quarter note)
+	 * @param count					the number of tempo changes
+	 */
+	public TempoMap(int resolution, int targetResolution, long[] changeTicks, int[] changeTempos, int count)
+	{
+		if (resolution <= 0 || targetResolution <= 0)
+			throw new IllegalArgumentException("Resolution must be positive");
+
+		this.resolution = resolution;
+		this.targetResolution = targetResolution;
+
+		long[] newTicks = new long[count + 1];
+		int[] newTempos = new int[count + 1];
+		long[] newTimes = new long[count + 1];
+		newTempos[0] = DEFAULT_TEMPO;
+
+		int size = 1;
+		for (int i = 0; i < count; i++)
+		{
+			if (changeTicks[i] == newTicks[size-1])   // replace the tempo if it starts on the same tick as the previous one
+			{
+				newTempos[size-1] = changeTempos[i];
+			}
+			else
+			{
+				newTicks[size] = changeTicks[i];
+				newTempos[size] = changeTempos[i];
+				newTimes[size] = newTimes[size-1] + (newTicks[size] - newTicks[size-1]) * newTempos[size-1];
+				size++;
+			}
+		}
+
+		ticks = Arrays.copyOf(newTicks, size);
+		tempos = Arrays.copyOf(newTempos, size);
+		times = Arrays.copyOf(newTimes, size);
+	}
+
+	/**
+	 * This method creates a TempoMap from the tempo events of every track in sequence, using the actual resolution of sequence.
+	 * Tempo meta messages have a status byte of 0xFF, or 255, and a type byte of 0x51, or 81. The tempo is stored as a series of 3 bytes.
+	 * The returned map converts ticks of sequence into ticks with a resolution of 48 ticks per quarter note, at 120 bpm.
+	 *
+	 * @param sequence		the sequence to read the tempos from
+	 * @return a TempoMap for sequence
+	 */
+	public static TempoMap of(Sequence sequence)
+	{
+		if (sequence.getDivisionType() != Sequence.PPQ)
+			throw new IllegalArgumentException("Only sequences with a PPQ division type are supported");
+
+		long[] changeTicks = new long[16];
+		int[] changeTempos = new int[16];
+		int count = 0;
+
+		for (Track track : sequence.getTracks())
+		{
+			for (int i = 0; i < track.size(); i++)
+			{
+				MidiMessage message = track.get(i).getMessage();
+				if (message.getStatus() == 255 && ((MetaMessage) message).getType() == 81 && message.getLength() == 6)
+				{
+					if (count == changeTicks.length)
+					{
+						changeTicks = Arrays.copyOf(changeTicks, count * 2);
+						changeTempos = Arrays.copyOf(changeTempos, count * 2);
+					}
+
+					byte[] data = ((MetaMessage) message).getData();
+					changeTicks[count] = track.get(i).getTick();
+					changeTempos[count] = (data[0] & 0xFF) << 16 | (data[1] & 0xFF) << 8 | (data[2] & 0xFF);
+					count++;
+				}
+			}
+		}
+
+		sortByTick(changeTicks, changeTempos, count);
+
+		return new TempoMap(sequence.getResolution(), TARGET_RESOLUTION, changeTicks, changeTempos, count);
+	}
+
+	/**
+	 * This method creates a TempoMap from a list of tempos in the format returned by FileConverter.tempos(). The target resolution is
+	 * the same as the source resolution, so the returned map only removes the tempo changes.
+	 *
+	 * @param tempos		an ArrayList storing int arrays of length 2, holding the tempo and the tick at which this tempo is set
+	 * @param resolution	the resolution of the sequence the tempos are from (in ticks per quarter note)
+	 * @return a TempoMap for tempos
+	 */
+	public static TempoMap of(ArrayList<int[]> tempos, int resolution)
+	{
+		long[] changeTicks = new long[tempos.size()];
+		int[] changeTempos = new int[tempos.size()];
+		for (int i = 0; i < tempos.size(); i++)
+		{
+			changeTempos[i] = tempos.get(i)[0];
+			changeTicks[i] = tempos.get(i)[1];
+		}
+
+		return new TempoMap(resolution, resolution, changeTicks, changeTempos, tempos.size());
+	}
+
+	public int getResolution()
+	{
+		return resolution;
+	}
+
+	public int getTargetResolution()
+	{
+		return targetResolution;
+	}
+
+	/**
+	 * @return the number of tempos in the map, including the default tempo at tick 0
+	 */
+	public int size()
+	{
+		return ticks.length;
+	}
+
+	/**
+	 * @return the tempo (in microseconds per quarter note) at tick
+	 */
+	public int tempoAt(long tick)
+	{
+		return tempos[indexOfTick(tick)];
+	}
+
+	/**
+	 * This method returns the time at which tick occurs, rounded down to the nearest microsecond.
+	 *
+	 * @param tick		a tick of the source sequence
+	 * @return the time of tick (in microseconds)
+	 */
+	public long microseconds(long tick)
+	{
+		return time(tick) / resolution;
+	}
+
+	/**
+	 * This method returns the tick of the source sequence that is being played at a given time.
+	 *
+	 * @param microseconds		the time (in microseconds)
+	 * @return the last tick that occurs at or before microseconds
+	 */
+	public long tickAt(long microseconds)
+	{
+		long time = microseconds * resolution;
+
+		// binary search for the last tempo that starts at or before time
+		int low = 0;
+		int high = times.length - 1;
+		while (low < high)
+		{
+			int mid = (low + high + 1) >>> 1;
+			if (times[mid] <= time)
+				low = mid;
+			else
+				high = mid - 1;
+		}
+
+		return ticks[low] + (time - times[low]) / tempos[low];
+	}
+
+	/**
+	 * This method converts a tick of the source sequence into a tick at the target resolution and a constant tempo of 120 bpm, rounded
+	 * down. Since the time of every tick is stored exactly, rounding only happens once, so it never builds up over a long piece.
+	 *
+	 * @param tick		a tick of the source sequence
+	 * @return the corresponding target tick
+	 */
+	public long targetTick(long tick)
+	{
+		return targetTick(tick, 0);
+	}
+
+	/**
+	 * This method converts a tick of the source sequence into a tick at the target resolution and a constant tempo of 120 bpm, measured
+	 * from originTick instead of from the start of the sequence.
+	 *
+	 * @param tick			a tick of the source sequence
+	 * @param originTick	the tick of the source sequence that becomes target tick 0
+	 * @return the corresponding target tick
+	 */
+	public long targetTick(long tick, long originTick)
+	{
+		return Math.floorDiv((time(tick) - time(originTick)) * targetResolution, (long) DEFAULT_TEMPO * resolution);
+	}
+
+	/**
+	 * This method converts a time into a tick at the target resolution and a constant tempo of 120 bpm, rounded down.
+	 *
+	 * @param microseconds		the time (in microseconds)
+	 * @return the corresponding target tick
+	 */
+	public long targetTickAt(long microseconds)
+	{
+		return Math.floorDiv(microseconds * targetResolution, DEFAULT_TEMPO);
+	}
+
+	/**
+	 * @return the time of tick, in microseconds multiplied by the resolution
+	 */
+	private long time(long tick)
+	{
+		int i = indexOfTick(tick);
+		return times[i] + (tick - ticks[i]) * tempos[i];
+	}
+
+	/**
+	 * This method uses binary search to find the index of the last tempo that starts at or before tick.
+	 */
+	private int indexOfTick(long tick)
+	{
+		int low = 0;
+		int high = ticks.length - 1;
+		while (low < high)
+		{
+			int mid = (low + high + 1) >>> 1;
+			if (ticks[mid] <= tick)
+				low = mid;
+			else
+				high = mid - 1;
+		}
+		return low;
+	}
+
+	/**
+	 * This method sorts the tempo changes by tick with insertion sort, keeping the order of changes with the same tick. Usually only
+	 * one track holds tempo events, so the changes are already in order and no events are moved.
+	 */
+	static void sortByTick(long[] changeTicks, int[] changeTempos, int count)
+	{
+		for (int j = 1; j < count; j++)
+		{
+			long tick = changeTicks[j];
+			int tempo = changeTempos[j];
+			int i = j;
+			while (i > 0 && tick < changeTicks[i-1])
+			{
+				changeTicks[i] = changeTicks[i-1];
+				changeTempos[i] = changeTempos[i-1];
+				i--;
+			}
+			changeTicks[i] = tick;
+			changeTempos[i] = tempo;
+		}
+	}
+
+}
@@ -0,0 +1,269 @@
+/**
+ * Validates and decodes text in the format created by FileConverter.textFile() in a single pass, as the text arrives
+ */
+
+package composer;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+public class TextDecoder
+{
+
+	private final NoteSink sink;   // receives the notes of the valid text (may be null)
+	private final StringBuilder valid;   // receives the valid text itself (may be null)
+	private final boolean restRuns;   // true if a tilde followed by 3 digits is read as a rest run
+
+	private int expect = -1;   // -1 for anything, 0 for space or exclamation mark, 1 for space, 2 for tilde or note, 3 for note
+	private long tick = 0;
+	private int advance = 1;   // the number of ticks the next space moves on by (more than 1 after a rest run such as "~012")
+
+	// the characters that have been read but not yet decoded, because they might be the start of a note (a note is 4 characters long)
+	private final char[] held = new char[4];
+	private int heldCount = 0;
+
+	/**
+	 * Creates a TextDecoder that passes the notes of the valid text to sink.
+	 *
+	 * @param sink		the NoteSink that receives the notes
+	 */
+	public TextDecoder(NoteSink sink)
+	{
+		this(sink, null);
+	}
+
+	/**
+	 * Creates a TextDecoder that passes the notes of the valid text to sink, and appends the valid text to valid.
+	 *
+	 * @param sink		the NoteSink that receives the notes (may be null)
+	 * @param valid		the StringBuilder that receives the valid text (may be null)
+	 */
+	public TextDecoder(NoteSink sink, StringBuilder valid)
+	{
+		this(sink, valid, false);
+	}
+
+	/**
+	 * Creates a TextDecoder that passes the notes of the valid text to sink, and appends the valid text to valid. If restRuns is true,
+	 * a tilde followed by 3 digits is read as a rest run (see TextSink(Writer, boolean)). Rest runs are only read when asked for,
+	 * since a tilde followed by digits in text written without them (for example, text generated by the machine learning program) is
+	 * just a single empty tick followed by invalid characters.
+	 *
+	 * @param sink			the NoteSink that receives the notes (may be null)
+	 * @param valid			the StringBuilder that receives the valid text (may be null)
+	 * @param restRuns		true to read rest runs
+	 */
+	public TextDecoder(NoteSink sink, StringBuilder valid, boolean restRuns)
+	{
+		this.sink = sink;
+		this.valid = valid;
+		this.restRuns = restRuns;
+	}
+
+	/**
+	 * @return the current tick, which is the number of spaces in the valid text so far (a space after a rest run counts as the
+	 * 				number of ticks in the run)
+	 */
+	public long getTick()
+	{
+		return tick;
+	}
+
+	/**
+	 * This method reads all the text from reader in large blocks, decodes it, and ends the text.
+	 *
+	 * @param reader	the Reader to read the text from
+	 * @throws IOException
+	 */
+	public void decode(Reader reader) throws IOException
+	{
+		char[] buffer = new char[65536];
+		int n;
+		while ((n = reader.read(buffer)) >= 0)
+			write(buffer, 0, n);
+		end();
+	}
+
+	/**
+	 * This method reads all the bytes from channel in large blocks, decodes them, and ends the text. Since the text format only uses
+	 * ASCII characters, each byte is decoded as one character, and any other bytes are simply invalid.
+	 *
+	 * @param channel	the channel to read the text from
+	 * @throws IOException
+	 */
+	public void decode(ReadableByteChannel channel) throws IOException
+	{
+		ByteBuffer buffer = ByteBuffer.allocate(65536);
+		while (channel.read(buffer) >= 0)
+		{
+			buffer.flip();
+			byte[] bytes = buffer.array();
+			for (int i = 0; i < buffer.limit(); i++)
+				write((char) (bytes[i] & 0xFF));
+			buffer.clear();
+		}
+		end();
+	}
+
+	/**
+	 * This method decodes a block of text. The text may be split anywhere, even in the middle of a note.
+	 *
+	 * @param chars		the array holding the text
+	 * @param offset	the index of the first character in chars
+	 * @param length	the number of characters
+	 * @throws IOException
+	 */
+	public void write(char[] chars, int offset, int length) throws IOException
+	{
+		for (int i = offset; i < offset + length; i++)
+			write(chars[i]);
+	}
+
+	/**
+	 * This method decodes a block of text. The text may be split anywhere, even in the middle of a note.
+	 *
+	 * @param text		the text to decode
+	 * @throws IOException
+	 */
+	public void write(CharSequence text) throws IOException
+	{
+		for (int i = 0; i < text.length(); i++)
+			write(text.charAt(i));
+	}
+
+	/**
+	 * This method decodes a single character.
+	 *
+	 * @param ch	the character to decode
+	 * @throws IOException
+	 */
+	public void write(char ch) throws IOException
+	{
+		held[heldCount++] = ch;
+		decodeHeld(false);
+	}
+
+	/**
+	 * This method ends the text. Any characters that were held because they might have been the start of a note are decoded (they
+	 * cannot be a note, since there are no more characters), and the sink is told that the piece has ended.
+	 *
+	 * @throws IOException
+	 */
+	public void end() throws IOException
+	{
+		decodeHeld(true);
+		if (sink != null)
+			sink.end(tick);
+	}
+
+	/**
+	 * This method decodes the held characters for as long as possible. If a character that is not ' ' or '!' is found, the next 3
+	 * characters are checked to see if they are digits (to see if a valid note or rest run has been found), so the characters are held
+	 * until either a character that is not a digit arrives or all 3 digits have arrived. When rest runs are read, a tilde followed by
+	 * 3 digits is a rest run, and a tilde on its own is a single empty tick.
+	 */
+	private void decodeHeld(boolean ended) throws IOException
+	{
+		while (heldCount > 0)
+		{
+			char ch = held[0];
+			int result;   // -1 for nothing, 0 for space, 1 for exclamation mark, 2 for tilde, 3 for note, 4 for rest run
+			int size = 1;   // the number of characters in the result
+
+			if (ch == ' ')
+			{
+				result = 0;
+			}
+			else if (ch == '!')
+			{
+				result = 1;
+			}
+			else if (ch == '~' && !restRuns)
+			{
+				result = 2;
+			}
+			else if (ch == '~' || ch >= 34 && ch <= 121)
+			{
+				int digits = 0;
+				while (digits + 1 < heldCount && isDigit(held[digits+1]))
+					digits++;
+
+				if (digits == 3)
+				{
+					result = ch == '~' ? 4 : 3;
+					size = 4;
+				}
+				else if (digits + 1 == heldCount && !ended)
+				{
+					return;   // every character after ch is a digit so far, so wait for the next character
+				}
+				else
+				{
+					result = ch == '~' ? 2 : -1;
+				}
+			}
+			else
+			{
+				result = -1;
+			}
+
+			accept(result);
+
+			// remove the decoded characters from the held characters
+			heldCount -= size;
+			System.arraycopy(held, size, held, 0, heldCount);
+		}
+	}
+
+	/**
+	 * This method adds the result that has been read to the valid text if it lines up with what was expected, and changes the
+	 * expectation based on the result.
+	 */
+	private void accept(int result) throws IOException
+	{
+		if (expect == -1 && result != -1 ||
+			 expect == 0 && (result == 0 || result == 1) ||
+			 expect == 1 && result == 0 ||
+			 expect == 2 && (result == 2 || result == 3 || result == 4) ||
+			 expect == 3 && result == 3)
+		{
+			if (valid != null)
+				valid.append(held, 0, result >= 3 ? 4 : 1);
+
+			if (result == 0)   // if the result was a space, move tick on (by more than 1 if it ends a rest run)
+			{
+				tick += advance;
+				if (sink != null)
+					sink.advance(tick);
+			}
+			else if (result == 3 && sink != null)   // if the result was a note, pass it to the sink
+			{
+				int note = held[0] - 13;
+				int length = (held[1] - '0') * 100 + (held[2] - '0') * 10 + (held[3] - '0');
+				sink.note(tick, note, length);
+			}
+
+			// if the result was a rest run, the space that ends it moves on by the number of ticks in the run
+			advance = result == 4 ? Math.max((held[1] - '0') * 100 + (held[2] - '0') * 10 + (held[3] - '0'), 1) : 1;
+		}
+
+		// change the expectation, based on the result
+		if (result == 0)   // if the result was a space, a note or tilde is expected
+			expect = 2;
+		else if (result == 1)   // if the result was an exclamation mark, a note is expected
+			expect = 3;
+		else if (result == 2 || result == 4)   // if the result was a tilde or a rest run, a space is expected
+			expect = 1;
+		else if (result == 3)   // if the result was a note, a space or exclamation mark is expected
+			expect = 0;
+		else   // if the result was nothing, anything is expected
+			expect = -1;
+	}
+
+	private static boolean isDigit(char ch)
+	{
+		return ch >= '0' && ch <= '9';
+	}
+
+}
@@ -5,37 +5,87 @@
 package composer;
 import java.io.File;
 import java.io.IOException;
-import javax.sound.midi.InvalidMidiDataException;
+import java.util.List;
 
 public class TextFileCreator
 {
 	
-	public static void main(String[] args) throws IOException, InvalidMidiDataException
+	public static void main(String[] args) throws IOException, InterruptedException
 	{
-		// create new FileConverter
-		FileConverter fileConverter = new FileConverter();
+		// the number of files converted at the same time can be given as an argument (all cores are used by default), and
+		// "--incremental" only converts the files that changed since the last run, "--rest-runs" writes each run of empty ticks as a
+		// single rest run, "--tokens" creates token files in "tok-training" instead of text files, "--metrics=<file>" writes a JSON
+		// summary of the time taken by each stage of each file, and "--index" writes a tick index next to each text file (a bar of ticks
+		// in each block, or "--index=<ticks>")
+		int threads = Runtime.getRuntime().availableProcessors();
+		boolean incremental = false;
+		boolean restRuns = false;
+		boolean tokens = false;
+		File metricsFile = null;
+		int indexTicks = 0;
+		for (String arg : args)
+		{
+			if (arg.equals("--incremental"))
+				incremental = true;
+			else if (arg.equals("--rest-runs"))
+				restRuns = true;
+			else if (arg.equals("--tokens"))
+				tokens = true;
+			else if (arg.equals("--index"))
+				indexTicks = TickIndex.DEFAULT_BLOCK_TICKS;
+			else if (arg.startsWith("--index="))
+				indexTicks = Integer.parseInt(arg.substring("--index=".length()));
+			else if (arg.startsWith("--metrics="))
+				metricsFile = new File(arg.substring("--metrics=".length()));
+			else
+				threads = Integer.parseInt(arg);
+		}
 		
-		// create new directory called "txt-training"
-		File textTraining = new File("txt-training");
+		// create new directory called "txt-training" (or "tok-training" for token files)
+		File textTraining = new File(tokens ? "tok-training" : "txt-training");
 		textTraining.mkdir();
 		
 		// access files in "midi-training" and store them in an array of Files
 		File midiTraining = new File("midi-training");
 		File[] midiFiles = midiTraining.listFiles();
+		if (midiFiles == null)
+		{
+			System.out.println("Folder \"midi-training\" not found.");
+			return;
+		}
+		
+		// create a text file for each MIDI file in "midi-training" using the textFile() FileConverter method, with a FileConverter for each thread
+		// in incremental mode, a manifest in "txt-training" records the source hash and converter version of each text file
+		String version = tokens ? "tokens-" + FileConverter.FORMAT_VERSION + "." + TokenVocabulary.VERSION
+				: (restRuns ? "text-rest-runs-" : "text-") + FileConverter.FORMAT_VERSION + (indexTicks > 0 ? "-index-" + indexTicks : "");
+		ConversionManifest manifest = incremental ? ConversionManifest.load(textTraining, version) : null;
 		
-		// create a text file for each MIDI file in "midi-training" using the textFile() FileConverter method
-		for (File midiFile : midiFiles)
+		BatchConverter batchConverter = new BatchConverter(threads);
+		long start = System.nanoTime();
+		BatchConverter.Conversion conversion = tokens ? BatchConverter.TOKENS : (restRuns ? BatchConverter.TEXT_REST_RUNS : BatchConverter.TEXT);
+		if (!tokens && indexTicks > 0)
 		{
-			try
-			{
-				File textFile = fileConverter.textFile(midiFile, textTraining);
-				textFile.createNewFile();
-			}
-			catch (Exception e)
-			{
-				System.out.println("File not compatible.");
-			}
+			boolean textRestRuns = restRuns;
+			int textIndexTicks = indexTicks;
+			conversion = (converter, input, folder) -> converter.textFile(input, folder, textRestRuns, textIndexTicks);
 		}
+		List<ConversionResult> results = batchConverter.convert(midiFiles, textTraining, conversion, manifest);
+		batchConverter.shutdown();
+		long wallNanos = System.nanoTime() - start;
+		
+		// remove the text files of MIDI files that no longer exist, and save the manifest
+		if (manifest != null)
+		{
+			int removed = manifest.removeStale(midiFiles);
+			if (removed > 0)
+				System.out.println(removed + " stale files removed.");
+			manifest.save();
+		}
+		
+		// print the time, number of events, or error of each file
+		BatchConverter.printReport(results, wallNanos);
+		if (metricsFile != null)
+			MetricsReport.write(results, wallNanos, metricsFile);
 	}
 	
 }
\ No newline at end of file
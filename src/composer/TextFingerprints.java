@@ -0,0 +1,275 @@
+/**
+ * Finds the fingerprints of a text file by winnowing the hashes of its runs of ticks, so that passages it shares with other files can be found
+ */
+
+package composer;
+import java.util.Arrays;
+
+public class TextFingerprints
+{
+
+	public static final int LENGTH_BUCKET = 4;   // the note lengths that are compared as the same, unless the text must match exactly
+	private static final long BASE = 0x9E3779B97F4A7C15L;   // the base of the rolling hash of each run of ticks (odd, so no bits are lost)
+
+	private final int kgram;
+
+	// the ticks of the text that have notes, each with its hash, its tick, and where its characters start and end in the text
+	private long[] hashes;
+	private long[] ticks;
+	private int[] starts;
+	private int[] ends;
+	private int size = 0;
+
+	// the fingerprints chosen by winnowing: the hash of a run of kgram ticks that have notes, and the index of its first tick
+	private long[] fingerprints;
+	private int[] positions;
+	private int fingerprintCount = 0;
+
+	/**
+	 * Finds the fingerprints of text. The ticks that have notes are found first, and each one is given a hash. If exact is true, the
+	 * hash covers the characters of the tick and the number of empty ticks before it, so only passages that give exactly the same
+	 * text match. If exact is false, it covers the notes of the tick and the number of empty ticks before it in the same way, but each
+	 * length only by its bucket of LENGTH_BUCKET ticks, so a passage with the same notes and rhythm also matches a repeat of it whose
+	 * lengths were rounded a tick or two differently by the tempo changes around it. The empty ticks are left out of the runs, since
+	 * long rests would otherwise match each other in every piece.
+	 * <br>
+	 * Every run of kgram of these ticks is given a rolling hash, and from every window of window runs in a row, the run with the smallest
+	 * hash is chosen as a fingerprint (the last one, if there are several). Since the same window always chooses the same run, two
+	 * texts that share a passage of at least kgram + window - 1 ticks with notes always share at least one fingerprint, but only about
+	 * 2 / (window + 1) of the runs are kept.
+	 * <br>
+	 * PRECONDITION:	text is in the format written by textFile(), with or without rest runs
+	 *
+	 * @param text		the characters of the text
+	 * @param length	the number of characters in text
+	 * @param kgram		the number of ticks with notes in each run
+	 * @param window	the number of runs in each window
+	 * @param exact		true to match the text exactly, false to match only the notes
+	 */
+	public TextFingerprints(byte[] text, int length, int kgram, int window, boolean exact)
+	{
+		if (kgram < 1 || window < 1)
+			throw new IllegalArgumentException("The runs and windows must be at least 1 long");
+		this.kgram = kgram;
+
+		int capacity = Math.max(length / 8, 16);
+		hashes = new long[capacity];
+		ticks = new long[capacity];
+		starts = new int[capacity];
+		ends = new int[capacity];
+		readTicks(text, length, exact);
+
+		fingerprints = new long[Math.max(2 * size / (window + 1), 16)];
+		positions = new int[fingerprints.length];
+		winnow(window);
+	}
+
+	/**
+	 * @return the number of ticks that have notes
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * @return the hash of the notes of tick index (the index-th tick that has notes)
+	 */
+	public long hash(int index)
+	{
+		return hashes[index];
+	}
+
+	/**
+	 * @return the tick of tick index, counted from the start of the text
+	 */
+	public long tick(int index)
+	{
+		return ticks[index];
+	}
+
+	/**
+	 * @return the number of characters before tick index
+	 */
+	public int start(int index)
+	{
+		return starts[index];
+	}
+
+	/**
+	 * @return the number of characters up to and including the space that ends tick index
+	 */
+	public int end(int index)
+	{
+		return ends[index];
+	}
+
+	public int getKgram()
+	{
+		return kgram;
+	}
+
+	public int getFingerprintCount()
+	{
+		return fingerprintCount;
+	}
+
+	/**
+	 * @return the hash of fingerprint i (the fingerprints are in order of position)
+	 */
+	public long fingerprint(int i)
+	{
+		return fingerprints[i];
+	}
+
+	/**
+	 * @return the index of the first tick of the run of fingerprint i
+	 */
+	public int position(int i)
+	{
+		return positions[i];
+	}
+
+	/**
+	 * This method finds each tick that has notes, and its hash. A tick is the characters up to the next space: "~" is an empty tick,
+	 * "~" followed by 3 digits is a rest run of that many empty ticks, and anything else holds the notes of the tick, separated by
+	 * exclamation marks, with the note as the first character of each.
+	 */
+	private void readTicks(byte[] text, int length, boolean exact)
+	{
+		long tick = 0;
+		long gap = 0;   // the number of empty ticks since the previous tick that has notes
+		int start = 0;
+		for (int i = 0; i < length; i++)
+		{
+			if (text[i] != ' ')
+				continue;
+
+			if (text[start] == '~')
+			{
+				long count = 1;
+				if (i - start == 4)   // a rest run
+					count = Math.max((text[start+1] - '0') * 100 + (text[start+2] - '0') * 10 + (text[start+3] - '0'), 1);
+				tick += count;
+				gap += count;
+			}
+			else if (i > start)
+			{
+				long hash = gap;
+				if (exact)
+				{
+					for (int j = start; j < i; j++)
+						hash = (hash ^ text[j]) * 0x100000001B3L;   // FNV-1a
+				}
+				else
+				{
+					// each note is a character followed by the digits of its length, and only the bucket of the length is hashed
+					for (int j = start; j < i; j++)
+					{
+						hash = (hash ^ text[j]) * 0x100000001B3L;
+						long noteLength = 0;
+						while (j + 1 < i && text[j+1] != '!')
+							noteLength = noteLength * 10 + (text[++j] - '0');
+						hash = (hash ^ (noteLength + LENGTH_BUCKET / 2) / LENGTH_BUCKET) * 0x100000001B3L;
+						j++;   // the exclamation mark before the next note
+					}
+				}
+				add(mix(hash), tick, start, i + 1);
+				tick++;
+				gap = 0;
+			}
+			start = i + 1;
+		}
+	}
+
+	private void add(long hash, long tick, int start, int end)
+	{
+		if (size == hashes.length)
+		{
+			hashes = Arrays.copyOf(hashes, size * 2);
+			ticks = Arrays.copyOf(ticks, size * 2);
+			starts = Arrays.copyOf(starts, size * 2);
+			ends = Arrays.copyOf(ends, size * 2);
+		}
+		hashes[size] = hash;
+		ticks[size] = tick;
+		starts[size] = start;
+		ends[size] = end;
+		size++;
+	}
+
+	/**
+	 * This method chooses the fingerprints, using the algorithm of Schleimer, Wilkerson and Aiken ("Winnowing: Local Algorithms for
+	 * Document Fingerprinting"). The hash of each run is rolled on from the hash of the run before it, by taking out its first tick and
+	 * adding the next one, and the smallest hash of the window is only searched for again once it has left the window.
+	 */
+	private void winnow(int window)
+	{
+		int runs = size - kgram + 1;
+		if (runs <= 0)
+			return;
+
+		long highPower = 1;   // BASE to the power of kgram - 1, which the first tick of a run is multiplied by
+		for (int j = 1; j < kgram; j++)
+			highPower *= BASE;
+
+		long[] runHashes = new long[runs];
+		long rolling = 0;
+		for (int j = 0; j < kgram; j++)
+			rolling = rolling * BASE + hashes[j];
+		runHashes[0] = mix(rolling);
+		for (int r = 1; r < runs; r++)
+		{
+			rolling = (rolling - hashes[r-1] * highPower) * BASE + hashes[r + kgram - 1];
+			runHashes[r] = mix(rolling);
+		}
+
+		int minimum = -1;   // the run with the smallest hash in the current window
+		for (int end = Math.min(window, runs) - 1; end < runs; end++)
+		{
+			int first = Math.max(end - window + 1, 0);
+			if (minimum < first)
+			{
+				// the smallest run has left the window, so search the whole window again (keeping the last of equal hashes)
+				minimum = first;
+				for (int r = first + 1; r <= end; r++)
+					if (Long.compareUnsigned(runHashes[r], runHashes[minimum]) <= 0)
+						minimum = r;
+				addFingerprint(runHashes[minimum], minimum);
+			}
+			else if (Long.compareUnsigned(runHashes[end], runHashes[minimum]) <= 0)
+			{
+				minimum = end;
+				addFingerprint(runHashes[minimum], minimum);
+			}
+		}
+	}
+
+	private void addFingerprint(long hash, int position)
+	{
+		if (fingerprintCount > 0 && positions[fingerprintCount-1] == position)
+			return;
+		if (fingerprintCount == fingerprints.length)
+		{
+			fingerprints = Arrays.copyOf(fingerprints, fingerprintCount * 2);
+			positions = Arrays.copyOf(positions, fingerprintCount * 2);
+		}
+		fingerprints[fingerprintCount] = hash;
+		positions[fingerprintCount] = position;
+		fingerprintCount++;
+	}
+
+	/**
+	 * This method mixes the bits of a hash (the finalizer of MurmurHash3), so every bit depends on every bit of the hash.
+	 */
+	static long mix(long hash)
+	{
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+
+}
@@ -0,0 +1,181 @@
+/**
+ * Writes ticks in the text format read by the machine learning program
+ */
+
+package composer;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+
+public class TextSink implements TickSink, Closeable
+{
+
+	public static final int MAX_REST_RUN = 999;   // the longest run of empty ticks written as a single rest run
+
+	private static final char[] RESTS = new char[2048];   // a run of "~ " that rests are copied from
+
+	static
+	{
+		for (int i = 0; i < RESTS.length; i += 2)
+		{
+			RESTS[i] = '~';
+			RESTS[i+1] = ' ';
+		}
+	}
+
+	private final Writer writer;
+	private final boolean restRuns;   // true if a run of empty ticks is written as a tilde followed by the number of ticks
+	private final char[] buffer = new char[8192];
+	private int position = 0;
+	private long written = 0;   // the number of characters written to writer so far
+	private boolean firstNote = true;   // true if no note has been written for the current tick yet
+
+	/**
+	 * Creates a TextSink that buffers the text and writes it to writer in large blocks, so writer does not need to be buffered.
+	 *
+	 * @param writer	the Writer that the text is written to
+	 */
+	public TextSink(Writer writer)
+	{
+		this(writer, false);
+	}
+
+	/**
+	 * Creates a TextSink that buffers the text and writes it to writer in large blocks, so writer does not need to be buffered. If
+	 * restRuns is true, a run of empty ticks is written as a tilde followed by the number of ticks padded to 3 digits and a space (for
+	 * example, "~012 " for 12 empty ticks) instead of a tilde and a space for every tick. Runs longer than 999 ticks are split.
+	 *
+	 * @param writer		the Writer that the text is written to
+	 * @param restRuns		true to write runs of empty ticks as rest runs
+	 */
+	public TextSink(Writer writer, boolean restRuns)
+	{
+		this.writer = writer;
+		this.restRuns = restRuns;
+	}
+
+	/**
+	 * This method writes a note as its ASCII character followed by its length padded to 3 digits. If the note is not the first
+	 * note of the tick, an exclamation mark is written before it.
+	 */
+	public void note(int note, long length) throws IOException
+	{
+		if (position + 24 > buffer.length)
+			flushBuffer();
+
+		if (!firstNote)
+			buffer[position++] = '!';
+		firstNote = false;
+
+		buffer[position++] = (char) (note + 13);   // convert note to a character
+
+		// write the digits of length from right to left, padding it with 0s to make it at least 3 characters
+		int digits = 3;
+		for (long rest = length / 1000; rest > 0; rest /= 10)
+			digits++;
+		for (int i = position + digits - 1; i >= position; i--)
+		{
+			buffer[i] = (char) ('0' + length % 10);
+			length /= 10;
+		}
+		position += digits;
+	}
+
+	public void endTick() throws IOException
+	{
+		if (position == buffer.length)
+			flushBuffer();
+
+		buffer[position++] = ' ';
+		firstNote = true;
+	}
+
+	/**
+	 * This method writes a tilde followed by a space for each empty tick. The characters are copied in blocks instead of one
+	 * tick at a time. In rest run mode, every run of up to 999 ticks is written as a single rest run instead.
+	 */
+	public void rests(long count) throws IOException
+	{
+		if (restRuns)
+		{
+			writeRestRuns(count);
+			return;
+		}
+
+		long remaining = count * 2;
+		while (remaining > 0)
+		{
+			if (buffer.length - position < 2)
+				flushBuffer();
+
+			int n = (int) Math.min(remaining, Math.min(RESTS.length, (buffer.length - position) & ~1));   // keep n even so every copy starts with a tilde
+			System.arraycopy(RESTS, 0, buffer, position, n);
+			position += n;
+			remaining -= n;
+		}
+	}
+
+	private void writeRestRuns(long count) throws IOException
+	{
+		while (count > 0)
+		{
+			if (position + 5 > buffer.length)
+				flushBuffer();
+
+			int run = (int) Math.min(count, MAX_REST_RUN);
+			buffer[position++] = '~';
+			if (run > 1)   // a single empty tick is still written as "~ ", which is shorter
+			{
+				buffer[position++] = (char) ('0' + run / 100);
+				buffer[position++] = (char) ('0' + run / 10 % 10);
+				buffer[position++] = (char) ('0' + run % 10);
+			}
+			buffer[position++] = ' ';
+			count -= run;
+		}
+	}
+
+	/**
+	 * @return the number of characters of text so far, including the ones that are still buffered
+	 */
+	public long getLength()
+	{
+		return written + position;
+	}
+
+	/**
+	 * @return true if runs of empty ticks are written as rest runs
+	 */
+	public boolean isRestRuns()
+	{
+		return restRuns;
+	}
+
+	/**
+	 * This method writes all the buffered text to the underlying Writer and flushes it.
+	 *
+	 * @throws IOException
+	 */
+	public void flush() throws IOException
+	{
+		flushBuffer();
+		writer.flush();
+	}
+
+	/**
+	 * This method writes all the buffered text to the underlying Writer and closes it.
+	 */
+	public void close() throws IOException
+	{
+		flushBuffer();
+		writer.close();
+	}
+
+	private void flushBuffer() throws IOException
+	{
+		writer.write(buffer, 0, position);
+		written += position;
+		position = 0;
+	}
+
+}
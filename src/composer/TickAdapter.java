@@ -0,0 +1,52 @@
+/**
+ * Passes the notes of a decoded piece on to a TickSink, one tick after the other
+ */
+
+package composer;
+import java.io.IOException;
+
+public class TickAdapter implements NoteSink
+{
+
+	private final TickSink sink;
+	private boolean noteInTick = false;   // true if a note has been passed for the current tick
+	private long lastTick = 0;
+
+	/**
+	 * Creates a TickAdapter that passes the notes it receives to sink.
+	 *
+	 * @param sink		the TickSink that receives the ticks
+	 */
+	public TickAdapter(TickSink sink)
+	{
+		this.sink = sink;
+	}
+
+	public void note(long tick, int note, int length) throws IOException
+	{
+		sink.note(note, length);
+		noteInTick = true;
+	}
+
+	/**
+	 * This method ends the current tick, and passes the ticks skipped over (after a rest run) as empty ticks.
+	 */
+	public void advance(long tick) throws IOException
+	{
+		long count = tick - lastTick;
+		if (noteInTick)
+		{
+			sink.endTick();
+			count--;
+		}
+		if (count > 0)
+			sink.rests(count);
+		noteInTick = false;
+		lastTick = tick;
+	}
+
+	public void end(long tick)
+	{
+	}
+
+}
@@ -0,0 +1,179 @@
+/**
+ * Encodes a chronological stream of note events into ticks in a single forward pass
+ */
+
+package composer;
+import java.io.IOException;
+import java.util.Arrays;
+
+public class TickEncoder
+{
+
+	private final TickSink sink;
+
+	// the notes that have been initialized but not yet passed to sink, stored in a ring buffer indexed by sequence number
+	private long[] noteTicks = new long[256];
+	private long[] noteLengths = new long[256];   // -1 if the end of the note has not been found yet
+	private int[] notes = new int[256];
+	private int[] nextOpen = new int[256];   // sequence number of the next open note with the same note value, or -1
+	private int mask = 255;
+	private int head = 0;   // sequence number of the first pending note
+	private int tail = 0;   // sequence number that the next note will be given
+
+	private final int[] openNotes = new int[128];   // for each note value, the sequence number of the most recent open note, or -1
+
+	private long tick = 0;   // tick of the most recent event
+	private long written = 0;   // all ticks before this tick have been passed to sink
+
+	/**
+	 * Creates a TickEncoder that passes the encoded ticks to sink.
+	 *
+	 * @param sink		the TickSink that receives the ticks
+	 */
+	public TickEncoder(TickSink sink)
+	{
+		this.sink = sink;
+		Arrays.fill(openNotes, -1);
+	}
+
+	/**
+	 * This method adds a note on event (a note with a velocity that is not 0) to the stream. The note is held until the
+	 * corresponding note end has been found, since the length of the note is written along with the note.
+	 * <br>
+	 * PRECONDITION:	events are added in chronological order, and events with the same tick are added in the order their notes
+	 * 					are to be written
+	 *
+	 * @param tick		the tick at which the note is initialized
+	 * @param note		the note value (the MIDI number of the note)
+	 * @throws IOException
+	 */
+	public void noteOn(long tick, int note) throws IOException
+	{
+		advance(tick);
+
+		if (tail - head > mask)
+			grow();
+
+		// add the note to the end of the pending notes, and to the front of the open notes with the same note value
+		int i = tail & mask;
+		noteTicks[i] = tick;
+		noteLengths[i] = -1;
+		notes[i] = note;
+		nextOpen[i] = openNotes[note];
+		openNotes[note] = tail;
+		tail++;
+	}
+
+	/**
+	 * This method adds a note end event (a note with a velocity of 0) to the stream. Every open note with the same note value
+	 * ends at this tick, so the lengths of all of them are found at once.
+	 * <br>
+	 * PRECONDITION:	events are added in chronological order
+	 *
+	 * @param tick		the tick at which the note ends
+	 * @param note		the note value (the MIDI number of the note)
+	 * @throws IOException
+	 */
+	public void noteOff(long tick, int note) throws IOException
+	{
+		advance(tick);
+
+		for (int seq = openNotes[note]; seq >= 0; seq = nextOpen[seq & mask])
+			noteLengths[seq & mask] = tick - noteTicks[seq & mask];
+		openNotes[note] = -1;
+	}
+
+	/**
+	 * This method ends the stream. Notes that were never ended are given a length of 1, and every tick up to and including
+	 * lastTick that has not been written yet is passed to the sink.
+	 *
+	 * @param lastTick		the last tick of the piece
+	 * @throws IOException
+	 */
+	public void end(long lastTick) throws IOException
+	{
+		for (int seq = head; seq < tail; seq++)
+			if (noteLengths[seq & mask] < 0)
+				noteLengths[seq & mask] = 1;
+		Arrays.fill(openNotes, -1);
+
+		tick = Long.MAX_VALUE;
+		flush();
+
+		if (lastTick >= written)
+			sink.rests(lastTick + 1 - written);
+		written = Math.max(written, lastTick + 1);
+	}
+
+	/**
+	 * This method moves the stream to a new tick. Once the tick of the stream has moved past the tick of the first pending notes,
+	 * no more notes can be added to that tick, so it can be written as soon as all of its notes have ended.
+	 */
+	private void advance(long newTick) throws IOException
+	{
+		if (newTick > tick)
+		{
+			tick = newTick;
+			flush();
+		}
+	}
+
+	/**
+	 * This method passes the ticks of the pending notes to the sink, stopping at the first tick that is not complete or that still
+	 * has a note whose end has not been found.
+	 */
+	private void flush() throws IOException
+	{
+		while (head < tail && noteTicks[head & mask] < tick)
+		{
+			long noteTick = noteTicks[head & mask];
+
+			// find the end of the tick, and make sure all the lengths in it are known
+			int end = head;
+			while (end < tail && noteTicks[end & mask] == noteTick)
+			{
+				if (noteLengths[end & mask] < 0)
+					return;
+				end++;
+			}
+
+			if (noteTick > written)
+				sink.rests(noteTick - written);
+
+			for (int seq = head; seq < end; seq++)
+				sink.note(notes[seq & mask], noteLengths[seq & mask]);
+			sink.endTick();
+
+			written = noteTick + 1;
+			head = end;
+		}
+	}
+
+	/**
+	 * This method doubles the capacity of the ring buffer, keeping every pending note at the index given by its sequence number.
+	 */
+	private void grow()
+	{
+		int capacity = (mask + 1) * 2;
+		int newMask = capacity - 1;
+
+		long[] newTicks = new long[capacity];
+		long[] newLengths = new long[capacity];
+		int[] newNotes = new int[capacity];
+		int[] newNext = new int[capacity];
+		for (int seq = head; seq < tail; seq++)
+		{
+			newTicks[seq & newMask] = noteTicks[seq & mask];
+			newLengths[seq & newMask] = noteLengths[seq & mask];
+			newNotes[seq & newMask] = notes[seq & mask];
+			newNext[seq & newMask] = nextOpen[seq & mask];
+		}
+
+		noteTicks = newTicks;
+		noteLengths = newLengths;
+		notes = newNotes;
+		nextOpen = newNext;
+		mask = newMask;
+	}
+
+}
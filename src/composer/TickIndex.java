@@ -0,0 +1,270 @@
+/**
+ * Stores where every block of ticks of a text file starts, so a window of whole ticks can be found without reading the text before it
+ */
+
+package composer;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+public class TickIndex
+{
+
+	public static final int MAGIC = 0x41494958;   // "AIIX"
+	public static final int VERSION = 1;
+	public static final String EXTENSION = ".ticks";   // the index of "name.txt" is written to "name.ticks"
+	public static final int DEFAULT_BLOCK_TICKS = 192;   // a bar of 4/4 at 48 ticks per quarter note
+
+	public static final int HEADER_BYTES = 16;   // the magic number, the version, the number of ticks in a block, and the number of blocks
+	public static final int ENTRY_BYTES = 20;   // the tick (8 bytes), character offset (8 bytes) and note count (4 bytes) of a block
+	private static final int BATCH_ENTRIES = 4096;   // the number of entries read or written at once
+
+	private final int blockTicks;
+
+	// the first tick, character offset and note count of every block, followed by an entry for the end of the text
+	private long[] ticks = new long[64];
+	private long[] offsets = new long[64];
+	private int[] notes = new int[64];
+	private int size = 0;   // the number of entries, including the entry for the end of the text once it has been added
+
+	/**
+	 * Creates an empty TickIndex.
+	 *
+	 * @param blockTicks	the number of ticks in each block
+	 */
+	public TickIndex(int blockTicks)
+	{
+		if (blockTicks < 1)
+			throw new IllegalArgumentException("blockTicks must be at least 1");
+
+		this.blockTicks = blockTicks;
+	}
+
+	/**
+	 * This method adds an entry for the next block (or for the end of the text, if it is the last entry).
+	 *
+	 * @param tick		the tick of the first tick that starts at or after the start of the block
+	 * @param offset	the number of characters of the text before that tick
+	 */
+	public void add(long tick, long offset)
+	{
+		if (size == ticks.length)
+		{
+			ticks = Arrays.copyOf(ticks, size * 2);
+			offsets = Arrays.copyOf(offsets, size * 2);
+			notes = Arrays.copyOf(notes, size * 2);
+		}
+
+		ticks[size] = tick;
+		offsets[size] = offset;
+		notes[size] = 0;
+		size++;
+	}
+
+	/**
+	 * This method counts a note in a block that has already been added.
+	 */
+	public void addNote(int block)
+	{
+		notes[block]++;
+	}
+
+	/**
+	 * This method adds the entries of other to the end of this index, as if the text of other followed the text of this index. Every
+	 * entry of other except its last (the end of its text) is added, with its offset moved by offset, followed by a new entry for the
+	 * end of both texts.
+	 * <br>
+	 * PRECONDITION:	other has the same number of ticks in each block, and the last entry of this index (if there is one) is its end,
+	 * 					which is replaced
+	 *
+	 * @param other		the index of the text that follows
+	 * @param offset	the number of characters before the text of other
+	 */
+	public void append(TickIndex other, long offset)
+	{
+		if (other.blockTicks != blockTicks)
+			throw new IllegalArgumentException("The indices have blocks of " + blockTicks + " and " + other.blockTicks + " ticks");
+
+		if (size > 0)
+			size--;
+		for (int i = 0; i < other.size; i++)
+		{
+			add(other.ticks[i], other.offsets[i] + offset);
+			notes[size - 1] = other.notes[i];
+		}
+	}
+
+	public int getBlockTicks()
+	{
+		return blockTicks;
+	}
+
+	/**
+	 * @return the number of blocks, not counting the entry for the end of the text
+	 */
+	public int getBlockCount()
+	{
+		return Math.max(size - 1, 0);
+	}
+
+	/**
+	 * @return the first tick of block (the first tick that starts at or after the start of the block), or the number of ticks in the
+	 * text if block is getBlockCount()
+	 */
+	public long tick(int block)
+	{
+		return ticks[block];
+	}
+
+	/**
+	 * @return the number of characters of the text before block, or the length of the text if block is getBlockCount()
+	 */
+	public long offset(int block)
+	{
+		return offsets[block];
+	}
+
+	/**
+	 * @return the number of notes that start in block
+	 */
+	public int noteCount(int block)
+	{
+		return notes[block];
+	}
+
+	/**
+	 * This method writes the index to file. It starts with a header of 4 big-endian integers: the magic number, the version, the number
+	 * of ticks in a block, and the number of blocks. The header is followed by an entry for every block and one for the end of the text,
+	 * each holding the first tick and character offset of the block as longs and the number of notes in the block as an integer.
+	 * Since every entry has the same size, the entry of any block can be read straight from its position (see CorpusWindows).
+	 *
+	 * @param file		the file to write the index to
+	 * @throws IOException
+	 */
+	public void write(File file) throws IOException
+	{
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING))
+		{
+			// the entries are written in batches, since the index of a large corpus can be more than 2 GB
+			ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + BATCH_ENTRIES * ENTRY_BYTES);
+			buffer.putInt(MAGIC).putInt(VERSION).putInt(blockTicks).putInt(getBlockCount());
+			for (int i = 0; i < size; i++)
+			{
+				if (buffer.remaining() < ENTRY_BYTES)
+					writeBuffer(buffer, channel);
+				buffer.putLong(ticks[i]).putLong(offsets[i]).putInt(notes[i]);
+			}
+			writeBuffer(buffer, channel);
+		}
+	}
+
+	private static void writeBuffer(ByteBuffer buffer, FileChannel channel) throws IOException
+	{
+		buffer.flip();
+		while (buffer.hasRemaining())
+			channel.write(buffer);
+		buffer.clear();
+	}
+
+	/**
+	 * This method reads an index written by write().
+	 *
+	 * @param file		the file to read the index from
+	 * @return the index in file
+	 * @throws IOException if file is not an index of this version
+	 */
+	public static TickIndex read(File file) throws IOException
+	{
+		try (FileChannel channel = FileChannel.open(file.toPath()))
+		{
+			long indexBytes = channel.size();
+			ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(indexBytes, HEADER_BYTES));
+			int blockCount = readHeader(header, indexBytes, file);
+
+			// the entries are read in batches, in the same way as they are written
+			TickIndex index = new TickIndex(header.getInt(8));
+			ByteBuffer data = ByteBuffer.allocate(BATCH_ENTRIES * ENTRY_BYTES);
+			long position = HEADER_BYTES;
+			for (int i = 0; i <= blockCount; )
+			{
+				data.clear();
+				data.limit((int) Math.min(data.capacity(), (blockCount + 1L - i) * ENTRY_BYTES));
+				while (data.hasRemaining())
+					if (channel.read(data, position + data.position()) < 0)
+						throw new IOException(file + " is not a complete tick index");
+				position += data.limit();
+				data.flip();
+				for (; data.hasRemaining(); i++)
+				{
+					index.add(data.getLong(), data.getLong());
+					index.notes[i] = data.getInt();
+				}
+			}
+			return index;
+		}
+	}
+
+	/**
+	 * This method checks the header of an index, leaving data positioned at the first entry, and returns the number of blocks.
+	 * <br>
+	 * PRECONDITION:	data is positioned at the start of the header
+	 *
+	 * @param data		the bytes of an index file
+	 * @param file		the file that data was read from, which is named if the header is not valid
+	 * @return the number of blocks in the index
+	 * @throws IOException if the header is not the header of this version of the format, or the file is too short
+	 */
+	public static int readHeader(ByteBuffer data, File file) throws IOException
+	{
+		return readHeader(data, data.remaining(), file);
+	}
+
+	/**
+	 * This method checks the header of an index in the same way as readHeader(ByteBuffer, File), when data may only hold the start of
+	 * the index, such as the header of an index that is too large to be mapped at once.
+	 *
+	 * @param data			the first bytes of an index file, positioned at the start of the header
+	 * @param indexBytes	the number of bytes in the index from the start of the header
+	 * @param file			the file that data was read from, which is named if the header is not valid
+	 * @return the number of blocks in the index
+	 * @throws IOException if the header is not the header of this version of the format, or the file is too short
+	 */
+	public static int readHeader(ByteBuffer data, long indexBytes, File file) throws IOException
+	{
+		if (data.remaining() < HEADER_BYTES || data.getInt() != MAGIC)
+			throw new IOException(file + " is not a tick index");
+		int version = data.getInt();
+		if (version != VERSION)
+			throw new IOException(file + " is version " + version + " of the tick index, not version " + VERSION);
+		data.getInt();   // the number of ticks in a block
+		int blockCount = data.getInt();
+		if (blockCount < 0 || indexBytes - HEADER_BYTES < (blockCount + 1L) * ENTRY_BYTES)
+			throw new IOException(file + " is not a complete tick index");
+		return blockCount;
+	}
+
+	/**
+	 * This method returns true if textFile has been changed since indexFile was written, so indexFile may be the index of an older
+	 * version of it, even if the length of the text is the same. The modification times are compared instead of the text, so the text
+	 * does not have to be read.
+	 */
+	public static boolean isOutOfDate(File indexFile, File textFile)
+	{
+		return indexFile.lastModified() < textFile.lastModified();
+	}
+
+	/**
+	 * @return the index file of textFile, which has the same name but with the extension of an index
+	 */
+	public static File indexFile(File textFile)
+	{
+		String name = textFile.getName();
+		int dot = name.lastIndexOf(".");
+		return new File(textFile.getParentFile(), (dot < 0 ? name : name.substring(0, dot)) + EXTENSION);
+	}
+
+}
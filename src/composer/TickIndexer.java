@@ -0,0 +1,93 @@
+/**
+ * Passes ticks on to a TextSink while recording a TickIndex of the text that it writes
+ */
+
+package composer;
+import java.io.IOException;
+
+public class TickIndexer implements TickSink
+{
+
+	private final TextSink sink;
+	private final TickIndex index;
+
+	private long tick = 0;   // the tick being written
+	private int blocks = 0;   // the number of blocks added to index
+	private boolean firstNote = true;   // true if no note has been passed on for the current tick yet
+
+	/**
+	 * Creates a TickIndexer that passes every tick on to sink, and records where each block of blockTicks ticks starts in its text.
+	 * <br>
+	 * PRECONDITION:	nothing has been written to sink yet
+	 *
+	 * @param sink			the TextSink that the ticks are written to
+	 * @param blockTicks	the number of ticks in each block of the index
+	 */
+	public TickIndexer(TextSink sink, int blockTicks)
+	{
+		this.sink = sink;
+		index = new TickIndex(blockTicks);
+	}
+
+	public void note(int note, long length) throws IOException
+	{
+		if (firstNote)
+			startTick();
+		firstNote = false;
+
+		index.addNote((int) (tick / index.getBlockTicks()));
+		sink.note(note, length);
+	}
+
+	public void endTick() throws IOException
+	{
+		sink.endTick();
+		tick++;
+		firstNote = true;
+	}
+
+	/**
+	 * This method passes the empty ticks on in parts that start a new block wherever they can. Without rest runs, each empty tick is a
+	 * "~ " of its own, so the ticks are split at the start of every block. In rest run mode, the ticks are split into runs of at most
+	 * 999 ticks, which is where the TextSink would split them anyway, so the text is the same, and a block that starts inside a run
+	 * starts at the end of the run instead.
+	 */
+	public void rests(long count) throws IOException
+	{
+		while (count > 0)
+		{
+			startTick();
+			long nextBlock = (long) blocks * index.getBlockTicks();
+			long part = Math.min(count, sink.isRestRuns() ? TextSink.MAX_REST_RUN : nextBlock - tick);
+			sink.rests(part);
+			tick += part;
+			count -= part;
+		}
+	}
+
+	/**
+	 * This method ends the index once every tick has been passed on, adding the blocks that start after the last tick written (which
+	 * end where the text ends) and the entry for the end of the text.
+	 *
+	 * @return the index of the text written to sink
+	 */
+	public TickIndex finish()
+	{
+		int blockTicks = index.getBlockTicks();
+		long blockCount = (tick + blockTicks - 1) / blockTicks;
+		for (; blocks < blockCount; blocks++)
+			index.add(tick, sink.getLength());
+		index.add(tick, sink.getLength());
+		return index;
+	}
+
+	/**
+	 * This method adds an entry for every block that starts at or before the tick about to be written, all of which start at this tick.
+	 */
+	private void startTick()
+	{
+		for (; (long) blocks * index.getBlockTicks() <= tick; blocks++)
+			index.add(tick, sink.getLength());
+	}
+
+}
@@ -0,0 +1,35 @@
+/**
+ * Receives the ticks of an encoded piece, one after the other
+ */
+
+package composer;
+import java.io.IOException;
+
+public interface TickSink
+{
+
+	/**
+	 * This method is called for every note that is initialized on the current tick, in the order the notes are to be written.
+	 *
+	 * @param note		the note value (the MIDI number of the note)
+	 * @param length	the length of the note (in MIDI ticks)
+	 * @throws IOException
+	 */
+	void note(int note, long length) throws IOException;
+
+	/**
+	 * This method is called once all the notes of the current tick have been passed to note(), and ends the tick.
+	 *
+	 * @throws IOException
+	 */
+	void endTick() throws IOException;
+
+	/**
+	 * This method is called for a run of consecutive ticks that have no notes initialized on them.
+	 *
+	 * @param count		the number of empty ticks (always at least 1)
+	 * @throws IOException
+	 */
+	void rests(long count) throws IOException;
+
+}
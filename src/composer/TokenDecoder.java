@@ -0,0 +1,99 @@
+/**
+ * Reads files in the binary token format (see TokenVocabulary) and passes their ticks to a TickSink
+ */
+
+package composer;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+public class TokenDecoder
+{
+
+	private TokenDecoder()
+	{
+	}
+
+	/**
+	 * This method memory-maps a token file and decodes it.
+	 *
+	 * @param file		the token file to read
+	 * @param sink		the TickSink that receives the ticks
+	 * @return the number of tokens that were decoded
+	 * @throws IOException
+	 */
+	public static long decode(File file, TickSink sink) throws IOException
+	{
+		try (FileChannel channel = FileChannel.open(file.toPath()))
+		{
+			return decode(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), sink);
+		}
+	}
+
+	/**
+	 * This method checks the header of a token file and passes every tick to sink. A pitch token followed by a duration token is a note,
+	 * a chord token must come between two notes of the same tick, and an advance token ends the tick. An advance token that has no
+	 * notes before it is an empty tick, and runs of empty ticks are passed to sink.rests() all at once.
+	 *
+	 * @param data		the bytes of the token file, from its position to its limit
+	 * @param sink		the TickSink that receives the ticks
+	 * @return the number of tokens that were decoded
+	 * @throws IOException if the header is not supported or the tokens are not in a valid order
+	 */
+	public static long decode(ByteBuffer data, TickSink sink) throws IOException
+	{
+		TokenVocabulary.readHeader(data);
+		if (data.remaining() % 2 != 0)
+			throw new IOException("Token file has an odd number of bytes");
+
+		long count = data.remaining() / 2;
+		long rests = 0;   // the number of empty ticks that have not been passed to sink yet
+		boolean noteInTick = false;   // true if a note has been passed for the current tick
+		boolean chord = false;   // true if the previous token was a chord token
+
+		while (data.hasRemaining())
+		{
+			int token = data.getShort() & 0xFFFF;
+
+			if (token == TokenVocabulary.ADVANCE && !chord)
+			{
+				if (noteInTick)
+					sink.endTick();
+				else
+					rests++;
+				noteInTick = false;
+			}
+			else if (token == TokenVocabulary.CHORD && noteInTick && !chord)
+			{
+				chord = true;
+			}
+			else if (TokenVocabulary.isPitch(token) && (chord || !noteInTick) && data.hasRemaining())
+			{
+				int duration = data.getShort() & 0xFFFF;
+				if (!TokenVocabulary.isDuration(duration))
+					throw new IOException("Pitch token not followed by a duration token at byte " + (data.position() - 2));
+
+				if (rests > 0)
+				{
+					sink.rests(rests);
+					rests = 0;
+				}
+				sink.note(TokenVocabulary.note(token), TokenVocabulary.length(duration));
+				noteInTick = true;
+				chord = false;
+			}
+			else
+			{
+				throw new IOException("Unexpected token " + token + " at byte " + (data.position() - 2));
+			}
+		}
+
+		if (chord)
+			throw new IOException("Token file ends with a chord token");
+		if (rests > 0)
+			sink.rests(rests);
+		return count;
+	}
+
+}
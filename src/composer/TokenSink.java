@@ -0,0 +1,96 @@
+/**
+ * Writes ticks in the binary token format (see TokenVocabulary)
+ */
+
+package composer;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+public class TokenSink implements TickSink, Closeable
+{
+
+	private final OutputStream out;
+	private final byte[] buffer = new byte[16384];
+	private int position = 0;
+	private boolean firstNote = true;   // true if no note has been written for the current tick yet
+	private long tokenCount = 0;
+
+	/**
+	 * Creates a TokenSink that writes the header of the format, and then buffers the tokens and writes them to out in large blocks,
+	 * so out does not need to be buffered.
+	 *
+	 * @param out	the OutputStream that the tokens are written to
+	 * @throws IOException
+	 */
+	public TokenSink(OutputStream out) throws IOException
+	{
+		this.out = out;
+		ByteBuffer header = TokenVocabulary.header();
+		out.write(header.array(), 0, header.limit());
+	}
+
+	/**
+	 * This method writes a note as a pitch token followed by a duration token. If the note is not the first note of the tick, a chord
+	 * token is written before it.
+	 */
+	public void note(int note, long length) throws IOException
+	{
+		if (!firstNote)
+			token(TokenVocabulary.CHORD);
+		firstNote = false;
+
+		token(TokenVocabulary.pitchToken(note));
+		token(TokenVocabulary.durationToken(length));
+	}
+
+	public void endTick() throws IOException
+	{
+		token(TokenVocabulary.ADVANCE);
+		firstNote = true;
+	}
+
+	/**
+	 * This method writes an advance token for each empty tick.
+	 */
+	public void rests(long count) throws IOException
+	{
+		for (long i = 0; i < count; i++)
+			token(TokenVocabulary.ADVANCE);
+	}
+
+	/**
+	 * @return the number of tokens written so far (not counting the header)
+	 */
+	public long getTokenCount()
+	{
+		return tokenCount;
+	}
+
+	/**
+	 * This method writes all the buffered tokens to the underlying OutputStream and closes it.
+	 */
+	public void close() throws IOException
+	{
+		flushBuffer();
+		out.close();
+	}
+
+	private void token(int token) throws IOException
+	{
+		if (position + 2 > buffer.length)
+			flushBuffer();
+
+		buffer[position++] = (byte) (token >> 8);
+		buffer[position++] = (byte) token;
+		tokenCount++;
+	}
+
+	private void flushBuffer() throws IOException
+	{
+		out.write(buffer, 0, position);
+		position = 0;
+	}
+
+}
@@ -0,0 +1,151 @@
+/**
+ * Describes the tokens of the binary format, which holds the same music as the text format as fixed-width integers
+ */
+
+package composer;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+public final class TokenVocabulary
+{
+
+	public static final int MAGIC = 0x41494354;   // "AICT"
+	public static final int VERSION = 1;
+
+	// every token is an unsigned 16-bit integer (big-endian), and these are the token ids
+	public static final int ADVANCE = 0;   // ends the current tick, like a space in the text format
+	public static final int CHORD = 1;   // separates two notes of the same tick, like an exclamation mark in the text format
+	public static final int FIRST_PITCH = 2;   // the id of the lowest note, followed by the ids of the other 87 notes
+	public static final int FIRST_DURATION = FIRST_PITCH + 88;   // the id of a length of 0, followed by the ids of lengths up to 999
+	public static final int SIZE = FIRST_DURATION + 1000;   // the number of tokens
+
+	public static final int LOWEST_NOTE = 21;   // the MIDI number of the lowest note on a piano
+	public static final int HIGHEST_NOTE = 108;   // the MIDI number of the highest note on a piano
+	public static final int MAX_DURATION = 999;   // the longest length a duration token can hold (the text format also only reads 3 digits)
+
+	private TokenVocabulary()
+	{
+	}
+
+	/**
+	 * @return the id of the token for the MIDI number note
+	 */
+	public static int pitchToken(int note)
+	{
+		if (note < LOWEST_NOTE || note > HIGHEST_NOTE)
+			throw new IllegalArgumentException("Note " + note + " is not on a piano keyboard");
+		return FIRST_PITCH + note - LOWEST_NOTE;
+	}
+
+	/**
+	 * This method returns the id of the token for a length. Lengths longer than MAX_DURATION are written as MAX_DURATION.
+	 *
+	 * @return the id of the token for length
+	 */
+	public static int durationToken(long length)
+	{
+		return FIRST_DURATION + (int) Math.min(Math.max(length, 0), MAX_DURATION);
+	}
+
+	public static boolean isPitch(int token)
+	{
+		return token >= FIRST_PITCH && token < FIRST_DURATION;
+	}
+
+	public static boolean isDuration(int token)
+	{
+		return token >= FIRST_DURATION && token < SIZE;
+	}
+
+	/**
+	 * @return the MIDI number of the note of a pitch token
+	 */
+	public static int note(int token)
+	{
+		return token - FIRST_PITCH + LOWEST_NOTE;
+	}
+
+	/**
+	 * @return the length of a duration token
+	 */
+	public static int length(int token)
+	{
+		return token - FIRST_DURATION;
+	}
+
+	/**
+	 * This method returns the text that a token stands for in the text format: a space, an exclamation mark, the character of a note
+	 * (its MIDI number plus 13), or a length padded to 3 digits. An empty tick is an ADVANCE token that follows another ADVANCE token
+	 * (or starts the file), and is written as a tilde followed by a space.
+	 *
+	 * @param token		the id of the token
+	 * @return the text of token
+	 */
+	public static String text(int token)
+	{
+		if (token == ADVANCE)
+			return " ";
+		if (token == CHORD)
+			return "!";
+		if (isPitch(token))
+			return String.valueOf((char) (note(token) + 13));
+		if (isDuration(token))
+			return String.format(Locale.ROOT, "%03d", length(token));
+		throw new IllegalArgumentException("Invalid token " + token);
+	}
+
+	/**
+	 * This method returns the header of the binary format. The header holds the magic number, the version, the length of the header
+	 * (in bytes, so the tokens can be memory-mapped from that offset), the number of tokens in the vocabulary, and the text of every
+	 * token in order of id (each as a byte holding its length followed by its ASCII characters). The header is padded with zeros to
+	 * a multiple of 4 bytes.
+	 *
+	 * @return the header, from position 0 to its limit
+	 */
+	public static ByteBuffer header()
+	{
+		byte[][] texts = new byte[SIZE][];
+		int length = 16;
+		for (int token = 0; token < SIZE; token++)
+		{
+			texts[token] = text(token).getBytes(StandardCharsets.US_ASCII);
+			length += 1 + texts[token].length;
+		}
+		length = (length + 3) & ~3;
+
+		ByteBuffer header = ByteBuffer.allocate(length);
+		header.putInt(MAGIC).putInt(VERSION).putInt(length).putInt(SIZE);
+		for (byte[] text : texts)
+			header.put((byte) text.length).put(text);
+		header.clear();
+		return header;
+	}
+
+	/**
+	 * This method reads and checks the header of the binary format, leaving data positioned at the first token.
+	 * <br>
+	 * PRECONDITION:	data is positioned at the start of the header
+	 *
+	 * @param data		the bytes of a token file
+	 * @throws IOException if the header is not the header of this version of the format
+	 */
+	public static void readHeader(ByteBuffer data) throws IOException
+	{
+		int start = data.position();
+		if (data.remaining() < 16 || data.getInt() != MAGIC)
+			throw new IOException("Not a token file");
+
+		int version = data.getInt();
+		int length = data.getInt();
+		int size = data.getInt();
+		if (version != VERSION || size != SIZE)
+			throw new IOException("Token file version " + version + " with " + size + " tokens is not supported");
+		if (length < 16 || length > data.limit() - start)
+			throw new IOException("Token file header is longer than the file");
+
+		data.position(start + length);
+	}
+
+}
@@ -0,0 +1,139 @@
+/**
+ * Merges the note events of several tracks into one chronological stream
+ */
+
+package composer;
+import java.util.List;
+
+public class TrackMerger
+{
+
+	private final NoteEventBuffer[] tracks;
+	private final int[] positions;   // the index of the next event of each track
+	private final int[] heap;   // a binary heap of the indices of the tracks that still have events, ordered by their next event
+	private int heapSize = 0;
+
+	/**
+	 * Creates a TrackMerger over tracks. The events of each track that have the same tick are first put in order of increasing
+	 * pitch (in place), so that the first remaining event of every track is always the smallest event of that track.
+	 * <br>
+	 * PRECONDITION:	each buffer in tracks has its events arranged in chronological order based on tick value
+	 *
+	 * @param tracks		the note events of the tracks to merge
+	 */
+	public TrackMerger(List<NoteEventBuffer> tracks)
+	{
+		this.tracks = tracks.toArray(new NoteEventBuffer[0]);
+		positions = new int[this.tracks.length];
+		heap = new int[this.tracks.length];
+
+		for (int t = 0; t < this.tracks.length; t++)
+		{
+			this.tracks[t].sortByPitch();
+			if (this.tracks[t].size() > 0)
+			{
+				heap[heapSize] = t;
+				siftUp(heapSize++);
+			}
+		}
+	}
+
+	/**
+	 * This method merges tracks in a single pass and returns all of their events in one buffer. The events are arranged in order of
+	 * tick, then pitch, then the index of their track, and events from the same track with the same tick and pitch keep their order.
+	 * <br>
+	 * PRECONDITION:	each buffer in tracks has its events arranged in chronological order based on tick value
+	 *
+	 * @param tracks		the note events of the tracks to merge
+	 * @return a buffer holding the events of all the tracks
+	 */
+	public static NoteEventBuffer merge(List<NoteEventBuffer> tracks)
+	{
+		int size = 0;
+		for (NoteEventBuffer track : tracks)
+			size += track.size();
+
+		NoteEventBuffer events = new NoteEventBuffer(size);
+		TrackMerger merger = new TrackMerger(tracks);
+		while (merger.hasNext())
+			merger.next(events);
+
+		return events;
+	}
+
+	/**
+	 * @return true if any of the tracks has events that have not been merged yet
+	 */
+	public boolean hasNext()
+	{
+		return heapSize > 0;
+	}
+
+	/**
+	 * This method removes the smallest remaining event from the tracks and adds it to the end of events.
+	 *
+	 * @param events		the buffer that the event is added to
+	 */
+	public void next(NoteEventBuffer events)
+	{
+		int t = heap[0];
+		events.add(tracks[t], positions[t]++);
+
+		// if the track has no more events, replace it with the last track in the heap
+		if (positions[t] == tracks[t].size())
+			heap[0] = heap[--heapSize];
+		siftDown(0);
+	}
+
+	/**
+	 * This method returns true if the next event of track a comes before the next event of track b.
+	 */
+	private boolean before(int a, int b)
+	{
+		NoteEventBuffer trackA = tracks[a];
+		NoteEventBuffer trackB = tracks[b];
+		long tickA = trackA.tick(positions[a]);
+		long tickB = trackB.tick(positions[b]);
+
+		if (tickA != tickB)
+			return tickA < tickB;
+
+		int pitchA = trackA.pitch(positions[a]);
+		int pitchB = trackB.pitch(positions[b]);
+		if (pitchA != pitchB)
+			return pitchA < pitchB;
+
+		return a < b;
+	}
+
+	private void siftUp(int i)
+	{
+		int t = heap[i];
+		while (i > 0 && before(t, heap[(i-1)/2]))
+		{
+			heap[i] = heap[(i-1)/2];
+			i = (i-1)/2;
+		}
+		heap[i] = t;
+	}
+
+	private void siftDown(int i)
+	{
+		if (heapSize == 0)
+			return;
+
+		int t = heap[i];
+		while (2*i + 1 < heapSize)
+		{
+			int child = 2*i + 1;
+			if (child + 1 < heapSize && before(heap[child+1], heap[child]))
+				child++;
+			if (!before(heap[child], t))
+				break;
+			heap[i] = heap[child];
+			i = child;
+		}
+		heap[i] = t;
+	}
+
+}
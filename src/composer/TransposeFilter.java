@@ -0,0 +1,44 @@
+/**
+ * Transposes the notes that pass through it, leaving out the notes that move out of range
+ */
+
+package composer;
+import java.io.IOException;
+
+public class TransposeFilter extends NoteFilter
+{
+
+	private final int semitones;
+	private long droppedCount = 0;
+
+	/**
+	 * Creates a TransposeFilter that moves every note by semitones. A note that would move below 21 or above 108 is left out, as a
+	 * NoteAugmenter leaves it out of a transposed variant.
+	 *
+	 * @param sink			the NoteSink that receives the transposed notes
+	 * @param semitones		the number of semitones to move each note by (negative to move it down)
+	 */
+	public TransposeFilter(NoteSink sink, int semitones)
+	{
+		super(sink);
+		this.semitones = semitones;
+	}
+
+	public void note(long tick, int note, int length) throws IOException
+	{
+		int transposed = note + semitones;
+		if (transposed >= NoteAugmenter.LOWEST_NOTE && transposed <= NoteAugmenter.HIGHEST_NOTE)
+			sink.note(tick, transposed, length);
+		else
+			droppedCount++;
+	}
+
+	/**
+	 * @return the number of notes that were left out because they moved out of range
+	 */
+	public long getDroppedCount()
+	{
+		return droppedCount;
+	}
+
+}